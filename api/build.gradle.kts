@@ -2,6 +2,7 @@ plugins {
     id("org.springframework.boot") version "3.0.5"
     id("io.spring.dependency-management") version "1.1.0"
     kotlin("jvm") version "1.8.20"
+    id("me.champeau.jmh") version "0.7.1"
 }
 
 val slf4jVersion = "2.0.7"
@@ -79,10 +80,27 @@ dependencies {
     testImplementation("org.testcontainers:r2dbc")
 }
 
+jmh {
+    jvmArgs.addAll("--enable-preview", "-Xmx4g")
+    profilers.add("gc")
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+    includes.addAll(providers.gradleProperty("jmhIncludes").map { listOf(it) }.orElse(listOf()))
+}
+
 tasks {
     compileKotlin {
         enabled = false
     }
+
+    compileJmhJava {
+        options.compilerArgs.addAll(listOf(
+            "-Xlint:preview",
+            "--enable-preview",
+        ))
+    }
 }
 
 fun gprCredentialWith(propertyNamed: String, orEnvVarNamed: String) = project.findProperty(propertyNamed) as String?
@@ -0,0 +1,86 @@
+package org.accula.api.clone.suffixarray;
+
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorBenchmark.RetainedHeap;
+import org.accula.api.token.SyntheticCorpus;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenProvider;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import reactor.core.publisher.Flux;
+
+import java.lang.ref.Reference;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The same corpus and queries as in {@code SuffixTreeCloneDetectorBenchmark} to compare the engines.
+ * {@link #build} includes the index construction, which the suffix array engine defers until the first query.
+ *
+ * @author Anton Lamtev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SuffixArrayCloneDetectorBenchmark {
+    private static final String QUERIED_REF = "student0";
+
+    @Param({"50", "200"})
+    int studentCount;
+    @Param({"20"})
+    int methodCount;
+
+    List<List<Token<String>>> methods;
+    SuffixArrayCloneDetector<String> detector;
+
+    @Setup
+    public void setUp() {
+        methods = new TokenProvider<>(List.of(new JavaTokenProvider<String>()))
+            .tokensByMethods(Flux.fromIterable(SyntheticCorpus.java(studentCount, methodCount)))
+            .collectList()
+            .block();
+        detector = build();
+    }
+
+    @Benchmark
+    public SuffixArrayCloneDetector<String> build() {
+        final var detector = new SuffixArrayCloneDetector<String>("benchmark");
+        detector.addTokensBatch(methods);
+        detector.cloneClasses(cloneClass -> false).blockLast();
+        return detector;
+    }
+
+    @Benchmark
+    public List<CloneClass<String>> cloneClasses() {
+        return detector.cloneClasses(cloneClass -> true, cloneClass -> true).collectList().block();
+    }
+
+    @Benchmark
+    public List<CloneClass<String>> cloneClassesOfRef() {
+        return detector.cloneClasses(QUERIED_REF::equals, cloneClass -> true, cloneClass -> true).collectList().block();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void retainedHeap(final RetainedHeap retainedHeap) {
+        final var before = usedHeap();
+        final var detector = build();
+        retainedHeap.retainedBytes = usedHeap() - before;
+        Reference.reachabilityFence(detector);
+    }
+
+    private static long usedHeap() {
+        final var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
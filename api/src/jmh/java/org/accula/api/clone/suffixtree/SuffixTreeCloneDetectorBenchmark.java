@@ -0,0 +1,136 @@
+package org.accula.api.clone.suffixtree;
+
+import com.suhininalex.suffixtree.Node;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.token.SyntheticCorpus;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenProvider;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+import reactor.core.publisher.Flux;
+
+import java.lang.ref.Reference;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Suffix tree filling and clone class queries over the tokenized synthetic corpus.
+ * Run with the gc profiler to get the allocation rate,
+ * {@link #retainedHeap} reports the heap retained by a filled detector as the {@code retainedBytes} counter.
+ *
+ * @author Anton Lamtev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SuffixTreeCloneDetectorBenchmark {
+    private static final String QUERIED_REF = "student0";
+
+    @Param({"50", "200"})
+    int studentCount;
+    @Param({"20"})
+    int methodCount;
+
+    List<List<Token<String>>> methods;
+    SuffixTreeCloneDetector<String> detector;
+    List<Node> cloneClassNodes;
+
+    @Setup
+    public void setUp() {
+        methods = new TokenProvider<>(List.of(new JavaTokenProvider<String>()))
+            .tokensByMethods(Flux.fromIterable(SyntheticCorpus.java(studentCount, methodCount)))
+            .collectList()
+            .block();
+        detector = fill();
+        cloneClassNodes = detector
+            .cloneClasses(cloneClass -> true, cloneClass -> true)
+            .toStream()
+            .map(cloneClass -> ((SuffixTreeCloneClass<String>) cloneClass).node())
+            .toList();
+    }
+
+    @TearDown
+    public void tearDown() {
+        detector.dispose();
+    }
+
+    @Benchmark
+    public SuffixTreeCloneDetector<String> addTokens() {
+        final var detector = new SuffixTreeCloneDetector<String>("benchmark");
+        for (final var method : methods) {
+            detector.addTokens(method);
+        }
+        detector.dispose();
+        return detector;
+    }
+
+    @Benchmark
+    public SuffixTreeCloneDetector<String> addTokensBatch() {
+        final var detector = fill();
+        detector.dispose();
+        return detector;
+    }
+
+    @Benchmark
+    public List<CloneClass<String>> cloneClasses() {
+        return detector.cloneClasses(cloneClass -> true, cloneClass -> true).collectList().block();
+    }
+
+    @Benchmark
+    public List<CloneClass<String>> cloneClassesOfRef() {
+        return detector.cloneClasses(QUERIED_REF::equals, cloneClass -> true, cloneClass -> true).collectList().block();
+    }
+
+    @Benchmark
+    public void clones(final Blackhole blackhole) {
+        for (final var node : cloneClassNodes) {
+            blackhole.consume(new SuffixTreeCloneClass<String>(node).clones());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    public void retainedHeap(final RetainedHeap retainedHeap) {
+        final var before = usedHeap();
+        final var detector = fill();
+        retainedHeap.retainedBytes = usedHeap() - before;
+        detector.dispose();
+        Reference.reachabilityFence(detector);
+    }
+
+    private SuffixTreeCloneDetector<String> fill() {
+        final var detector = new SuffixTreeCloneDetector<String>("benchmark");
+        detector.addTokensBatch(methods);
+        return detector;
+    }
+
+    private static long usedHeap() {
+        final var runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; ++i) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class RetainedHeap {
+        public long retainedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            retainedBytes = 0L;
+        }
+    }
+}
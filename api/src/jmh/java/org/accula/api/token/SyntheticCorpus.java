@@ -0,0 +1,174 @@
+package org.accula.api.token;
+
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic corpus of student solutions used by the benchmarks.
+ * Every student implements the same set of methods: each method is a base statement sequence
+ * shared by all the students, with some statements dropped, some extra statements inserted
+ * and the variables renamed per student, so the corpus is full of near-miss clones like a real course is.
+ * The Kotlin methods take turns to be functions, property getters, init blocks and lambdas,
+ * as all of them are tokenized as methods.
+ *
+ * @author Anton Lamtev
+ */
+public final class SyntheticCorpus {
+    private static final long SEED = 0x41434355L;
+    private static final int MIN_STATEMENT_COUNT = 8;
+    private static final int MAX_STATEMENT_COUNT = 24;
+    private static final double DROP_PROBABILITY = 0.15;
+    private static final double INSERT_PROBABILITY = 0.1;
+    private static final int MAX_LITERAL = 100;
+    private static final String[] JAVA_STATEMENTS = {
+        "int %1$s = %2$d;",
+        "%1$s += %2$d * %1$s;",
+        "if (%1$s > %2$d) { %1$s = %1$s - 1; } else { %1$s++; }",
+        "for (int i = 0; i < %2$d; ++i) { %1$s += i; }",
+        "while (%1$s < %2$d) { %1$s *= 2; }",
+        "System.out.println(%1$s);",
+        "%1$s = Math.max(%1$s, %2$d);",
+        "final var %1$sList = new ArrayList<Integer>(); %1$sList.add(%1$s + %2$d);",
+    };
+    private static final String[] KOTLIN_STATEMENTS = {
+        "var %1$s = %2$d",
+        "%1$s += %2$d * %1$s",
+        "if (%1$s > %2$d) { %1$s = %1$s - 1 } else { %1$s++ }",
+        "for (i in 0 until %2$d) { %1$s += i }",
+        "while (%1$s < %2$d) { %1$s *= 2 }",
+        "println(%1$s)",
+        "%1$s = maxOf(%1$s, %2$d)",
+        "val %1$sList = ArrayList<Int>(); %1$sList.add(%1$s + %2$d)",
+    };
+
+    private SyntheticCorpus() {
+    }
+
+    /**
+     * @return a file per student with the ref being the student name
+     */
+    public static List<FileEntity<String>> java(final int studentCount, final int methodCount) {
+        return files(studentCount, methodCount, Language.JAVA);
+    }
+
+    /**
+     * @return a file per student with the ref being the student name
+     */
+    public static List<FileEntity<String>> kotlin(final int studentCount, final int methodCount) {
+        return files(studentCount, methodCount, Language.KOTLIN);
+    }
+
+    private static List<FileEntity<String>> files(final int studentCount, final int methodCount, final Language language) {
+        final var methods = new ArrayList<int[][]>(methodCount);
+        for (int method = 0; method < methodCount; ++method) {
+            methods.add(baseMethod(new Random(SEED + method)));
+        }
+        final var files = new ArrayList<FileEntity<String>>(studentCount);
+        for (int student = 0; student < studentCount; ++student) {
+            final var random = new Random(SEED * 31 + student);
+            final var content = new StringBuilder();
+            language.classHeader(content, student);
+            for (int method = 0; method < methodCount; ++method) {
+                final var variable = "v" + student + "m" + method;
+                language.methodHeader(content, method, variable);
+                for (final var statement : methods.get(method)) {
+                    if (random.nextDouble() < INSERT_PROBABILITY) {
+                        language.statement(content, randomStatement(random), variable);
+                    }
+                    if (random.nextDouble() >= DROP_PROBABILITY) {
+                        language.statement(content, statement, variable);
+                    }
+                }
+                language.methodFooter(content, method, variable);
+            }
+            content.append("}\n");
+            files.add(new FileEntity<>("student" + student, "Solution" + student + language.extension, content.toString(),
+                LineSet.all()));
+        }
+        return files;
+    }
+
+    private static int[][] baseMethod(final Random random) {
+        final var statementCount = MIN_STATEMENT_COUNT + random.nextInt(MAX_STATEMENT_COUNT - MIN_STATEMENT_COUNT + 1);
+        final var statements = new int[statementCount][];
+        for (int i = 0; i < statementCount; ++i) {
+            statements[i] = randomStatement(random);
+        }
+        return statements;
+    }
+
+    private static int[] randomStatement(final Random random) {
+        // The first template declares a variable, so it is reserved for the method header
+        return new int[]{1 + random.nextInt(JAVA_STATEMENTS.length - 1), random.nextInt(MAX_LITERAL)};
+    }
+
+    private enum Language {
+        JAVA(".java", JAVA_STATEMENTS) {
+            @Override
+            void classHeader(final StringBuilder content, final int student) {
+                content.append("import java.util.ArrayList;\n\npublic class Solution").append(student).append(" {\n");
+            }
+
+            @Override
+            void methodHeader(final StringBuilder content, final int method, final String variable) {
+                content.append("    public int method").append(method).append("() {\n");
+                statement(content, new int[]{0, method}, variable);
+            }
+
+            @Override
+            void methodFooter(final StringBuilder content, final int method, final String variable) {
+                content.append("        return ").append(variable).append(";\n    }\n\n");
+            }
+        },
+        KOTLIN(".kt", KOTLIN_STATEMENTS) {
+            @Override
+            void classHeader(final StringBuilder content, final int student) {
+                content.append("class Solution").append(student).append(" {\n");
+            }
+
+            @Override
+            void methodHeader(final StringBuilder content, final int method, final String variable) {
+                final var header = switch (method % 4) {
+                    case 0 -> "    fun method%d(): Int {\n";
+                    case 1 -> "    val property%d: Int\n        get() {\n";
+                    case 2 -> "    init {\n";
+                    default -> "    val lambda%d: () -> Int = {\n";
+                };
+                content.append(header.formatted(method));
+                statement(content, new int[]{0, method}, variable);
+            }
+
+            @Override
+            void methodFooter(final StringBuilder content, final int method, final String variable) {
+                final var footer = switch (method % 4) {
+                    case 0, 1 -> "        return %s\n    }\n\n";
+                    case 2 -> "        println(%s)\n    }\n\n";
+                    default -> "        %s\n    }\n\n";
+                };
+                content.append(footer.formatted(variable));
+            }
+        };
+
+        final String extension;
+        final String[] statements;
+
+        Language(final String extension, final String[] statements) {
+            this.extension = extension;
+            this.statements = statements;
+        }
+
+        abstract void classHeader(StringBuilder content, int student);
+
+        abstract void methodHeader(StringBuilder content, int method, String variable);
+
+        abstract void methodFooter(StringBuilder content, int method, String variable);
+
+        void statement(final StringBuilder content, final int[] statement, final String variable) {
+            content.append("        ").append(statements[statement[0]].formatted(variable, statement[1])).append('\n');
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package org.accula.api.token;
+
+import org.accula.api.code.FileEntity;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.accula.api.token.kotlin.KotlinTokenProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tokenization of the whole synthetic corpus by a single language token provider.
+ * Run with the gc profiler to get the allocation rate.
+ *
+ * @author Anton Lamtev
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class TokenProviderBenchmark {
+    @Param({"20", "100"})
+    int studentCount;
+    @Param({"20"})
+    int methodCount;
+
+    final JavaTokenProvider<String> javaTokenProvider = new JavaTokenProvider<>();
+    final KotlinTokenProvider<String> kotlinTokenProvider = new KotlinTokenProvider<>();
+    List<FileEntity<String>> javaFiles;
+    List<FileEntity<String>> kotlinFiles;
+
+    @Setup
+    public void setUp() {
+        javaFiles = SyntheticCorpus.java(studentCount, methodCount);
+        kotlinFiles = SyntheticCorpus.kotlin(studentCount, methodCount);
+    }
+
+    @Benchmark
+    public void javaTokensByMethods(final Blackhole blackhole) {
+        tokensByMethods(javaTokenProvider, javaFiles, blackhole);
+    }
+
+    @Benchmark
+    public void kotlinTokensByMethods(final Blackhole blackhole) {
+        tokensByMethods(kotlinTokenProvider, kotlinFiles, blackhole);
+    }
+
+    private static void tokensByMethods(final LanguageTokenProvider<String> tokenProvider,
+                                        final List<FileEntity<String>> files,
+                                        final Blackhole blackhole) {
+        for (final var file : files) {
+            tokenProvider.tokensByMethods(file).forEach(blackhole::consume);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.accula.api;
 
+import org.accula.api.config.TokenizerWarmUpListener;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import reactor.tools.agent.ReactorDebugAgent;
@@ -8,6 +9,8 @@ import reactor.tools.agent.ReactorDebugAgent;
 public class AcculaApiApplication {
     public static void main(final String[] args) {
         ReactorDebugAgent.init();
-        SpringApplication.run(AcculaApiApplication.class, args);
+        final var application = new SpringApplication(AcculaApiApplication.class);
+        application.addListeners(new TokenizerWarmUpListener());
+        application.run(args);
     }
 }
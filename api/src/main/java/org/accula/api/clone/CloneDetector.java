@@ -7,6 +7,9 @@ import org.accula.api.code.FileEntity;
 import org.accula.api.code.FileFilter;
 import org.accula.api.db.model.CodeLanguage;
 import org.accula.api.db.model.Snapshot;
+import org.accula.api.token.TokenCache;
+import org.accula.api.token.TokenizationPool;
+import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
@@ -25,6 +28,23 @@ public interface CloneDetector {
 
     Mono<Void> fill(Flux<FileEntity<Snapshot>> files);
 
+    /**
+     * Checks whether all the files of the snapshot have already been added to the detector,
+     * so they do not need to be loaded and tokenized again
+     */
+    boolean isIndexed(Snapshot snapshot);
+
+    /**
+     * Estimated heap size taken by the detector in bytes
+     */
+    long estimatedSize();
+
+    /**
+     * Releases the resources held by the detector keeping its persisted state,
+     * so the detector can be restored later
+     */
+    void release();
+
     interface ConfigProvider extends Supplier<Mono<Config>> {
         @Override
         Mono<Config> get();
@@ -39,5 +59,24 @@ public interface CloneDetector {
         List<CodeLanguage> languages;
         FileFilter languageFilter;
         LongPredicate excludedSourceAuthors;
+        /**
+         * Maximal number of tokens inserted, deleted or modified between two exact clones to stitch them
+         * into a near-miss one, zero disables the near-miss clone detection
+         */
+        int gappedCloneMaxGap;
+        /**
+         * Minimal token count of the exact clones stitched into the near-miss ones
+         */
+        int gappedCloneFragmentMinTokenCount;
+        /**
+         * Cache of the tokens of the files by their blob ids, {@code null} to tokenize each file
+         */
+        @Nullable
+        TokenCache tokenCache;
+        /**
+         * Threads the files are tokenized on, {@code null} for the common parallel scheduler
+         */
+        @Nullable
+        TokenizationPool tokenizationPool;
     }
 }
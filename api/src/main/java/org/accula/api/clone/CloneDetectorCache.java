@@ -0,0 +1,247 @@
+package org.accula.api.clone;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+import org.reactivestreams.Publisher;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Cache of the per-project clone detectors bounded by their total estimated size.
+ * <p>
+ * When the budget is exceeded after a detector use, the least recently used detectors not being in use
+ * are released until the total size fits into the budget. The most recently used detector is never released,
+ * so a single project exceeding the budget is not restored over and over again.
+ * A released detector is created again by the factory on the next access, restoring its state from the persisted form.
+ * <p>
+ * A removed or evicted detector stays in the cache until it is released, and the uses of its project wait for that
+ * before a new detector is created, so two detectors of a project never have its persisted state open at once.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class CloneDetectorCache {
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Function<Long, Mono<CloneDetector>> factory;
+    private final LongSupplier budget;
+
+    /**
+     * @param factory creates the detector of the project with the specified id
+     * @param budget  total estimated size of the detectors in bytes
+     */
+    public CloneDetectorCache(final Function<Long, Mono<CloneDetector>> factory, final LongSupplier budget) {
+        this.factory = factory;
+        this.budget = budget;
+    }
+
+    /**
+     * Uses the detector of the project, it is not released until the returned publisher terminates.
+     * If the previous detector of the project is being released, the use waits until it is.
+     */
+    public <R> Flux<R> use(final Long projectId, final Function<CloneDetector, ? extends Publisher<R>> use) {
+        return Flux.defer(() -> {
+            final var entry = entries.computeIfAbsent(projectId, Entry::new);
+            if (!entry.acquire()) {
+                return entry.released.asMono().thenMany(use(projectId, use));
+            }
+            return entry.detector
+                .flatMapMany(use)
+                .doFinally(signal -> release(entry));
+        });
+    }
+
+    /**
+     * Removes the detector of the project from the cache, so the next access creates a new one.
+     * The removed detector is released once it is no longer in use, right away if it is not,
+     * and no new detector of the project is created until then.
+     *
+     * @param onReleased called once the removed detector is released, before a new one is created,
+     *                   e.g. to delete the persisted state of the detector
+     */
+    public void remove(final Long projectId, final Runnable onReleased) {
+        final var entry = entries.get(projectId);
+        if (entry == null) {
+            onReleased.run();
+            return;
+        }
+        if (!entry.remove(onReleased)) {
+            // Released meanwhile, so the detector created since is removed instead
+            entry.released.asMono().subscribe(null, null, () -> remove(projectId, onReleased));
+        }
+    }
+
+    private void release(final Entry entry) {
+        final boolean removed;
+        synchronized (entry) {
+            --entry.activeUses;
+            removed = entry.removed && entry.activeUses == 0;
+        }
+        if (removed) {
+            entry.close();
+        } else {
+            evictIfNeeded();
+        }
+    }
+
+    private synchronized void evictIfNeeded() {
+        // Access times and sizes are captured once, since they may change while the candidates are being sorted
+        final var candidates = entries
+            .values()
+            .stream()
+            .filter(entry -> !entry.isRemoved())
+            .map(entry -> new Candidate(entry, entry.lastAccessTime(), entry.estimatedSize()))
+            .sorted(Comparator.comparingLong(Candidate::lastAccessTime))
+            .toList();
+        final var budget = this.budget.getAsLong();
+        var totalSize = candidates
+            .stream()
+            .mapToLong(Candidate::size)
+            .sum();
+        for (int i = 0; i < candidates.size() - 1 && totalSize > budget; ++i) {
+            final var candidate = candidates.get(i);
+            if (!candidate.entry().evict()) {
+                continue;
+            }
+            totalSize -= candidate.size();
+            candidate.entry().close();
+            log.info("Released clone detector of project with id={} taking {} bytes, {} bytes left in use",
+                candidate.entry().projectId, candidate.size(), totalSize);
+        }
+    }
+
+    private record Candidate(Entry entry, long lastAccessTime, long size) {
+    }
+
+    private final class Entry {
+        final Long projectId;
+        final Mono<CloneDetector> detector;
+        /**
+         * Emits completion once the detector is released and the entry is gone from the cache
+         */
+        final Sinks.Empty<Void> released = Sinks.empty();
+        /**
+         * Callbacks of the removals, called once the detector is released
+         */
+        final List<Runnable> onReleased = new ArrayList<>();
+        @Nullable
+        volatile CloneDetector loaded;
+        long lastAccessTime;
+        int activeUses;
+        /**
+         * Set once the entry is removed or evicted, no use may acquire the entry afterwards
+         */
+        boolean removed;
+        /**
+         * Set once the callbacks are run, no callback may be added to the entry afterwards
+         */
+        boolean closed;
+
+        Entry(final Long projectId) {
+            this.projectId = projectId;
+            this.detector = factory
+                .apply(projectId)
+                .doOnNext(created -> loaded = created)
+                .doOnError(e -> entries.remove(projectId, this))
+                .cache();
+        }
+
+        synchronized boolean acquire() {
+            if (removed) {
+                return false;
+            }
+            ++activeUses;
+            lastAccessTime = System.nanoTime();
+            return true;
+        }
+
+        synchronized long lastAccessTime() {
+            return lastAccessTime;
+        }
+
+        synchronized boolean isRemoved() {
+            return removed;
+        }
+
+        long estimatedSize() {
+            final var detector = loaded;
+            return detector != null ? detector.estimatedSize() : 0L;
+        }
+
+        /**
+         * @return whether the entry has been evicted by this call, it is closed by the caller then
+         */
+        synchronized boolean evict() {
+            if (removed || activeUses > 0 || loaded == null) {
+                return false;
+            }
+            removed = true;
+            return true;
+        }
+
+        /**
+         * @return whether the callback is going to be called, {@code false} if the entry has already been released
+         */
+        boolean remove(final Runnable onReleased) {
+            final boolean idle;
+            synchronized (this) {
+                if (closed) {
+                    return false;
+                }
+                this.onReleased.add(onReleased);
+                if (removed) {
+                    // Is being released or will be once no longer in use
+                    return true;
+                }
+                removed = true;
+                idle = activeUses == 0;
+            }
+            if (idle) {
+                close();
+            }
+            return true;
+        }
+
+        /**
+         * Releases the detector, calls the callbacks and only then lets a new detector of the project be created
+         */
+        void close() {
+            detector
+                .doOnNext(CloneDetector::release)
+                .doOnError(e -> log.error("Failed to create clone detector of project with id={}", projectId, e))
+                .onErrorResume(e -> Mono.empty())
+                .subscribe(null, null, this::runCallbacks);
+        }
+
+        private void runCallbacks() {
+            while (true) {
+                final List<Runnable> callbacks;
+                synchronized (this) {
+                    if (onReleased.isEmpty()) {
+                        closed = true;
+                        break;
+                    }
+                    callbacks = List.copyOf(onReleased);
+                    onReleased.clear();
+                }
+                for (final var callback : callbacks) {
+                    try {
+                        callback.run();
+                    } catch (RuntimeException e) {
+                        log.error("Failed to handle release of clone detector of project with id={}", projectId, e);
+                    }
+                }
+            }
+            entries.remove(projectId, this);
+            released.tryEmitEmpty();
+        }
+    }
+}
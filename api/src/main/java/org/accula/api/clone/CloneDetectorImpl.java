@@ -2,27 +2,35 @@ package org.accula.api.clone;
 
 import com.google.common.collect.Sets;
 import lombok.extern.slf4j.Slf4j;
-import org.accula.api.clone.suffixtree.Clone;
-import org.accula.api.clone.suffixtree.CloneClass;
+import org.accula.api.clone.engine.Clone;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.clone.engine.CloneEngine;
+import org.accula.api.clone.engine.DeduplicatingCloneEngine;
+import org.accula.api.clone.journal.TokenJournal;
+import org.accula.api.clone.structural.StructuralCloneIndex;
 import org.accula.api.clone.suffixtree.SuffixTreeCloneDetector;
 import org.accula.api.code.FileEntity;
 import org.accula.api.code.FileFilter;
 import org.accula.api.db.model.GithubRepo;
 import org.accula.api.db.model.Snapshot;
+import org.accula.api.token.LanguageTokenProvider;
+import org.accula.api.token.LanguageTokenProviders;
 import org.accula.api.token.Token;
 import org.accula.api.token.TokenProvider;
-import org.accula.api.token.java.JavaTokenProvider;
-import org.accula.api.token.kotlin.KotlinTokenProvider;
+import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
 import static java.util.function.BinaryOperator.minBy;
 
@@ -32,15 +40,78 @@ import static java.util.function.BinaryOperator.minBy;
 @Slf4j
 public final class CloneDetectorImpl implements CloneDetector {
     private static final int CHEAP_CHECK_CLONE_COUNT_THRESHOLD = 10;
+    private static final int INSERTION_BATCH_METHOD_COUNT = 512;
+    /**
+     * Order of the snapshots, the earliest of which is the source of a clone
+     */
+    static final Comparator<Snapshot> SOURCE_ORDER = Comparator
+        .comparing((Snapshot snapshot) -> snapshot.commit().date())
+        .thenComparing(snapshot -> snapshot.pullInfo() != null ? snapshot.pullInfo().number() : 0);
     private final GithubRepo.Identity projectId;
     //FIXME: avoid blocking
-    private final SuffixTreeCloneDetector<Token<Snapshot>, Snapshot> suffixTreeCloneDetector;
+    private final CloneEngine<Snapshot> cloneEngine;
+    /**
+     * {@code null} unless the structural clones are detected, so neither the blocks are hashed nor the methods are retained
+     */
+    @Nullable
+    private final StructuralCloneIndex<Snapshot> structuralIndex;
     private final ConfigProvider configProvider;
+    @Nullable
+    private final TokenJournal<Snapshot> journal;
 
     public CloneDetectorImpl(final GithubRepo.Identity projectId, final ConfigProvider configProvider) {
+        this(projectId, configProvider, null);
+    }
+
+    public CloneDetectorImpl(final GithubRepo.Identity projectId,
+                             final ConfigProvider configProvider,
+                             @Nullable final TokenJournal<Snapshot> journal) {
+        this(projectId, configProvider, journal, new DeduplicatingCloneEngine<>(new SuffixTreeCloneDetector<>(projectId.toString())));
+    }
+
+    public CloneDetectorImpl(final GithubRepo.Identity projectId,
+                             final ConfigProvider configProvider,
+                             @Nullable final TokenJournal<Snapshot> journal,
+                             final CloneEngine<Snapshot> cloneEngine) {
+        this(projectId, configProvider, journal, cloneEngine, false);
+    }
+
+    /**
+     * Creates the detector restoring all the methods checkpointed in the journal
+     * and journaling all the methods added afterwards
+     *
+     * @param cloneEngine      the index the methods are added to and the clone classes are found in
+     * @param structuralClones whether the statements and code blocks differing in the order of their statements only
+     *                         are reported as clones
+     */
+    public CloneDetectorImpl(final GithubRepo.Identity projectId,
+                             final ConfigProvider configProvider,
+                             @Nullable final TokenJournal<Snapshot> journal,
+                             final CloneEngine<Snapshot> cloneEngine,
+                             final boolean structuralClones) {
         this.projectId = projectId;
-        this.suffixTreeCloneDetector = new SuffixTreeCloneDetector<>(projectId.toString());
+        this.cloneEngine = cloneEngine;
+        this.structuralIndex = structuralClones ? new StructuralCloneIndex<>() : null;
         this.configProvider = configProvider;
+        this.journal = journal;
+        if (journal != null) {
+            final var batches = new ArrayList<List<List<Token<Snapshot>>>>();
+            final var methodCount = journal.replay(method -> {
+                if (batches.isEmpty() || batches.get(batches.size() - 1).size() == INSERTION_BATCH_METHOD_COUNT) {
+                    batches.add(new ArrayList<>(INSERTION_BATCH_METHOD_COUNT));
+                }
+                batches.get(batches.size() - 1).add(method);
+            });
+            if (cloneEngine.parallelism() > 1) {
+                batches.parallelStream().forEach(cloneEngine::addTokensBatch);
+            } else {
+                batches.forEach(cloneEngine::addTokensBatch);
+            }
+            if (structuralIndex != null) {
+                batches.forEach(structuralIndex::addAll);
+            }
+            log.info("[{}] Restored {} methods from journal", projectId, methodCount);
+        }
     }
 
     @Override
@@ -48,7 +119,7 @@ public final class CloneDetectorImpl implements CloneDetector {
         final Predicate<Clone<Snapshot>> cloneMatcher = clone -> pullSnapshot.pullInfo().equals(clone.ref().pullInfo());
         return configProvider
             .get()
-            .flatMapMany(config -> readClonesFromSuffixTreeForPull(pullSnapshot, config, cloneMatcher));
+            .flatMapMany(config -> readClonesForPull(pullSnapshot, config, cloneMatcher));
     }
 
     @Override
@@ -59,7 +130,7 @@ public final class CloneDetectorImpl implements CloneDetector {
         final Predicate<Clone<Snapshot>> cloneMatcher = clone -> snapshotSet.contains(clone.ref());
         return addFilesToSuffixTree(files)
             .then(configProvider.get())
-            .flatMapMany(config -> readClonesFromSuffixTreeForPull(pullSnapshot, config, cloneMatcher));
+            .flatMapMany(config -> readClonesForPull(pullSnapshot, config, cloneMatcher));
     }
 
     @Override
@@ -67,68 +138,229 @@ public final class CloneDetectorImpl implements CloneDetector {
         return addFilesToSuffixTree(files);
     }
 
+    @Override
+    public boolean isIndexed(final Snapshot snapshot) {
+        return journal != null && journal.isCheckpointed(snapshot);
+    }
+
+    @Override
+    public long estimatedSize() {
+        return cloneEngine.estimatedSize() + (structuralIndex != null ? structuralIndex.estimatedSize() : 0L);
+    }
+
+    @Override
+    public void release() {
+        cloneEngine.dispose();
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("[{}] Failed to close journal", projectId, e);
+        }
+    }
+
+    /**
+     * Methods are buffered into batches of {@link #INSERTION_BATCH_METHOD_COUNT} methods, the last one may be smaller,
+     * and each batch is added to the clone engine under a single lock acquisition.
+     * Up to the engine parallelism batches are added in parallel.
+     * The batches are cut by size only, since a timed buffer emits regardless of the demand
+     * and fails with an overflow once the insertion falls behind the tokenization.
+     */
     private Mono<Void> addFilesToSuffixTree(final Flux<FileEntity<Snapshot>> files) {
-        return tokensByMethods(files)
-                .flatMap(method ->
-                        Mono.fromSupplier(() -> suffixTreeCloneDetector.addTokens(method)))
-                .then();
+        final var refs = ConcurrentHashMap.<Snapshot>newKeySet();
+        return tokensByMethods(files.doOnNext(file -> refs.add(file.ref())))
+                .buffer(INSERTION_BATCH_METHOD_COUNT)
+                .flatMap(batch -> Mono
+                        .fromRunnable(() -> addTokens(batch))
+                        .subscribeOn(Schedulers.parallel()),
+                    cloneEngine.parallelism())
+                .then(Mono.fromRunnable(() -> checkpoint(refs)));
+    }
+
+    private void addTokens(final List<List<Token<Snapshot>>> batch) {
+        cloneEngine.addTokensBatch(batch);
+        if (structuralIndex != null) {
+            structuralIndex.addAll(batch);
+        }
+        if (journal != null) {
+            journal.appendAll(batch);
+        }
+    }
+
+    private void checkpoint(final Set<Snapshot> refs) {
+        if (journal == null || refs.isEmpty()) {
+            return;
+        }
+        journal.checkpoint(refs);
     }
 
     private Flux<List<Token<Snapshot>>> tokensByMethods(final Flux<FileEntity<Snapshot>> files) {
         return configProvider
             .get()
             .flatMapMany(config -> {
-                final var tokenProviders = config
-                    .languages()
-                    .stream()
-                    .map(language -> switch (language) {
-                        case JAVA -> new JavaTokenProvider<Snapshot>();
-                        case KOTLIN -> new KotlinTokenProvider<Snapshot>();
-                    })
-                    .toList();
+                final var tokenProviders = new ArrayList<LanguageTokenProvider<Snapshot>>();
+                for (final var language : config.languages()) {
+                    final var tokenProvider = LanguageTokenProviders.<Snapshot>find(language.name().toLowerCase(Locale.ROOT));
+                    if (tokenProvider == null) {
+                        log.warn("No token provider found for language {}", language);
+                        continue;
+                    }
+                    tokenProviders.add(tokenProvider);
+                }
                 if (tokenProviders.isEmpty()) {
                     log.warn("No token providers configured");
                     return Mono.empty();
                 }
-                return new TokenProvider<>(tokenProviders).tokensByMethods(files)
+                final var tokenProvider = new TokenProvider<>(
+                    tokenProviders,
+                    config.tokenCache(),
+                    config.tokenizationPool(),
+                    structuralIndex != null
+                );
+                return tokenProvider.tokensByMethods(files)
                     .filter(methodTokens -> methodTokens.size() >= config.cloneMinTokenCount());
             });
     }
 
+    private Flux<CodeClone> readClonesForPull(final Snapshot pullSnapshot,
+                                              final Config config,
+                                              final Predicate<Clone<Snapshot>> cloneMatcher) {
+        return readClonesFromSuffixTreeForPull(pullSnapshot, config, cloneMatcher)
+            .concatWith(readGappedClonesForPull(pullSnapshot, config, cloneMatcher))
+            .concatWith(readStructuralClonesForPull(pullSnapshot, config, cloneMatcher));
+    }
+
+    /**
+     * The clone classes are found sequentially, since the engine traversal holds its locks,
+     * while the expensive check, the source selection and the clone conversion are done in parallel on all the cores.
+     * Each clone class is indexed in the engine order, the indexes within each rail are increasing,
+     * so merging the rails by the index yields the same order of the clones as a sequential evaluation would.
+     */
     private Flux<CodeClone> readClonesFromSuffixTreeForPull(final Snapshot pullSnapshot,
                                                             final Config config,
                                                             final Predicate<Clone<Snapshot>> cloneMatcher) {
-        return Flux.fromStream(() -> suffixTreeCloneDetector
-            .cloneClasses(cloneClass -> isGoodCloneClassForPullCheapCheck(cloneClass, pullSnapshot, config.cloneMinTokenCount()),
+        return cloneEngine
+            .cloneClasses(snapshot -> Objects.equals(snapshot.pullInfo(), pullSnapshot.pullInfo()),
+                          config.cloneMinTokenCount(),
+                          cloneClass -> isGoodCloneClassForPullCheapCheck(cloneClass, pullSnapshot, config.cloneMinTokenCount()),
+                          cloneClass -> true)
+            .index()
+            .parallel()
+            .runOn(Schedulers.parallel())
+            .filter(cloneClass -> isGoodCloneClassForPullExpensiveCheck(cloneClass.getT2(), pullSnapshot, config.filter(), projectId))
+            .map(cloneClass -> new IndexedCodeClones(cloneClass.getT1(),
+                                                     codeClones(cloneClass.getT2(), pullSnapshot, config, cloneMatcher)))
+            .ordered(Comparator.comparingLong(IndexedCodeClones::index))
+            .flatMapIterable(IndexedCodeClones::clones)
+            .subscribeOn(Schedulers.parallel());
+    }
+
+    /**
+     * The exact clones shorter than {@code cloneMinTokenCount} but at least {@code gappedCloneFragmentMinTokenCount} long
+     * are checked the same way as the reported ones, and the pairs of them are stitched by {@link GappedClones}
+     */
+    private Flux<CodeClone> readGappedClonesForPull(final Snapshot pullSnapshot,
+                                                    final Config config,
+                                                    final Predicate<Clone<Snapshot>> cloneMatcher) {
+        final var fragmentMinTokenCount = config.gappedCloneFragmentMinTokenCount();
+        if (config.gappedCloneMaxGap() <= 0 || fragmentMinTokenCount <= 0 || fragmentMinTokenCount >= config.cloneMinTokenCount()) {
+            return Flux.empty();
+        }
+        return cloneEngine
+            .cloneClasses(snapshot -> Objects.equals(snapshot.pullInfo(), pullSnapshot.pullInfo()),
+                          fragmentMinTokenCount,
+                          cloneClass -> cloneClass.length() < config.cloneMinTokenCount()
+                                        && isGoodCloneClassForPullCheapCheck(cloneClass, pullSnapshot, fragmentMinTokenCount),
                           cloneClass -> isGoodCloneClassForPullExpensiveCheck(cloneClass, pullSnapshot, config.filter(), projectId))
+            .flatMapIterable(cloneClass -> gappedClonePairs(cloneClass, pullSnapshot, config, cloneMatcher))
+            .collectList()
+            .flatMapIterable(pairs -> GappedClones.stitch(pairs, config.gappedCloneMaxGap(), config.cloneMinTokenCount()))
+            .subscribeOn(Schedulers.parallel());
+    }
+
+    /**
+     * The blocks of the same structure found by the {@link StructuralCloneIndex} are checked the same way as the exact clones
+     */
+    private Flux<CodeClone> readStructuralClonesForPull(final Snapshot pullSnapshot,
+                                                        final Config config,
+                                                        final Predicate<Clone<Snapshot>> cloneMatcher) {
+        if (structuralIndex == null) {
+            return Flux.empty();
+        }
+        return structuralIndex
+            .cloneClasses(snapshot -> Objects.equals(snapshot.pullInfo(), pullSnapshot.pullInfo()), config.cloneMinTokenCount())
+            .filter(cloneClass -> isGoodCloneClassForPullCheapCheck(cloneClass, pullSnapshot, config.cloneMinTokenCount()))
+            .filter(cloneClass -> isGoodCloneClassForPullExpensiveCheck(cloneClass, pullSnapshot, config.filter(), projectId))
+            .flatMapIterable(cloneClass -> codeClones(cloneClass, pullSnapshot, config, cloneMatcher))
+            .subscribeOn(Schedulers.parallel());
+    }
+
+    private static List<CodeClone> codeClones(final CloneClass<Snapshot> cloneClass,
+                                              final Snapshot pullSnapshot,
+                                              final Config config,
+                                              final Predicate<Clone<Snapshot>> cloneMatcher) {
+        return clonePairs(cloneClass, pullSnapshot, config, cloneMatcher)
             .stream()
-            .flatMap(cloneClass -> {
-                final var clones = cloneClass.clones();
-                final var source = clones
-                    .stream()
-                    .reduce(minBy(
-                        Comparator.comparing((Clone<Snapshot> clone) -> clone.ref().commit().date())
-                            .thenComparing(clone -> clone.ref().pullInfo() != null ? clone.ref().pullInfo().number() : 0)
-                    ))
-                    .orElseThrow(IllegalStateException::new);
-
-                if (source.ref().sha().equals(pullSnapshot.sha())) {
-                    return Stream.empty();
-                }
-                if (source.ref().repo().equals(pullSnapshot.repo())) {
-                    return Stream.empty();
-                }
-                if (config.excludedSourceAuthors().test(source.ref().repo().owner().id())) {
-                    return Stream.empty();
+            .map(pair -> convert(pair.source(), pair.target()))
+            .toList();
+    }
+
+    private static List<GappedClones.Pair> clonePairs(final CloneClass<Snapshot> cloneClass,
+                                                      final Snapshot pullSnapshot,
+                                                      final Config config,
+                                                      final Predicate<Clone<Snapshot>> cloneMatcher) {
+        final var clones = cloneClass.clones();
+        final var source = clones
+            .stream()
+            .reduce(minBy(Comparator.comparing(Clone::ref, SOURCE_ORDER)))
+            .orElseThrow(IllegalStateException::new);
+
+        if (!isGoodSource(source, pullSnapshot, config)) {
+            return List.of();
+        }
+
+        return clones
+            .stream()
+            .filter(clone -> authorIsDifferentFromSource(clone, source))
+            .filter(cloneMatcher)
+            .map(clone -> new GappedClones.Pair(source, clone))
+            .toList();
+    }
+
+    /**
+     * Unlike an exact clone, a fragment is paired with its occurrences in all the earlier methods, not only in the earliest one:
+     * the fragments of a gapped clone may also occur in unrelated older methods, while a chain is stitched
+     * of the fragments of the same source method only. The earliest source of each chain is chosen by {@link GappedClones}.
+     */
+    private static List<GappedClones.Pair> gappedClonePairs(final CloneClass<Snapshot> cloneClass,
+                                                            final Snapshot pullSnapshot,
+                                                            final Config config,
+                                                            final Predicate<Clone<Snapshot>> cloneMatcher) {
+        final var clones = cloneClass.clones();
+        final var targets = clones
+            .stream()
+            .filter(cloneMatcher)
+            .toList();
+        final var pairs = new ArrayList<GappedClones.Pair>();
+        for (final var source : clones) {
+            if (!isGoodSource(source, pullSnapshot, config)) {
+                continue;
+            }
+            for (final var target : targets) {
+                if (SOURCE_ORDER.compare(source.ref(), target.ref()) < 0 && authorIsDifferentFromSource(target, source)) {
+                    pairs.add(new GappedClones.Pair(source, target));
                 }
+            }
+        }
+        return pairs;
+    }
 
-                return clones
-                    .stream()
-                    .filter(clone -> authorIsDifferentFromSource(clone, source))
-                    .filter(cloneMatcher)
-                    .map(clone -> convert(source, clone));
-            }))
-            .subscribeOn(Schedulers.parallel());
+    private static boolean isGoodSource(final Clone<Snapshot> source, final Snapshot pullSnapshot, final Config config) {
+        return !source.ref().sha().equals(pullSnapshot.sha())
+               && !source.ref().repo().equals(pullSnapshot.repo())
+               && !config.excludedSourceAuthors().test(source.ref().repo().owner().id());
     }
 
     private static CodeClone convert(final Clone<Snapshot> source, final Clone<Snapshot> target) {
@@ -223,6 +455,9 @@ public final class CloneDetectorImpl implements CloneDetector {
         return false;
     }
 
+    private record IndexedCodeClones(long index, List<CodeClone> clones) {
+    }
+
     private static boolean authorIsDifferentFromSource(final Clone<Snapshot> possibleClone, final Clone<Snapshot> source) {
         final var cloneSnapshot = possibleClone.ref();
         final var sourceSnapshot = source.ref();
@@ -0,0 +1,167 @@
+package org.accula.api.clone;
+
+import org.accula.api.clone.engine.Clone;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.db.model.Snapshot;
+import org.accula.api.token.Token;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Near-miss (Type-3) clones stitched of the exact clones too short to be reported on their own.
+ * <p>
+ * The short clone pairs are grouped by the pair of their source and target methods, and within each method pair
+ * the consecutive ones separated by at most {@code maxGap} inserted, deleted or modified tokens in both methods
+ * are greedily chained in the order of their positions in the target method. A fragment may occur at several positions
+ * of the source method, so a pair continues any of the chains still open, not only the last one. A chain of several clones
+ * matching at least {@code minTokenCount} tokens in total is reported as a single clone spanning
+ * from the start of its first clone to the end of its last one.
+ * <p>
+ * The fragments are paired with all the candidate source methods, so the same target span may be stitched
+ * with several sources, in which case only the earliest source is reported, as for the exact clones.
+ * The cost is linear in the number of the short clone pairs besides sorting them, no pairwise comparison
+ * of the methods is done.
+ *
+ * @author Anton Lamtev
+ */
+final class GappedClones {
+    private GappedClones() {
+    }
+
+    static List<CodeClone> stitch(final List<Pair> pairs, final int maxGap, final int minTokenCount) {
+        final var pairsByMethods = new LinkedHashMap<Methods, List<Pair>>();
+        for (final var pair : pairs) {
+            pairsByMethods.computeIfAbsent(Methods.of(pair), methods -> new ArrayList<>()).add(pair);
+        }
+        final var clones = new ArrayList<CodeClone>();
+        for (final var methodPairs : pairsByMethods.values()) {
+            methodPairs.sort(Comparator
+                .comparingInt((Pair pair) -> pair.target().position())
+                .thenComparingInt(pair -> pair.source().position()));
+            final var openChains = new ArrayList<List<Pair>>();
+            for (final var pair : methodPairs) {
+                List<Pair> continued = null;
+                for (final var it = openChains.iterator(); it.hasNext(); ) {
+                    final var chain = it.next();
+                    final var last = chain.get(chain.size() - 1);
+                    // The pairs are sorted by the target position, so the chain ended too far behind is never continued
+                    if (pair.target().position() - last.targetEnd() > maxGap) {
+                        addIfLongEnough(chain, minTokenCount, clones);
+                        it.remove();
+                    } else if (continued == null && isContinuation(last, pair, maxGap)) {
+                        continued = chain;
+                    }
+                }
+                if (continued != null) {
+                    continued.add(pair);
+                } else {
+                    openChains.add(new ArrayList<>(List.of(pair)));
+                }
+            }
+            for (final var chain : openChains) {
+                addIfLongEnough(chain, minTokenCount, clones);
+            }
+        }
+        return earliestSources(clones);
+    }
+
+    private static List<CodeClone> earliestSources(final List<CodeClone> clones) {
+        final var clonesByTarget = new LinkedHashMap<CodeClone.Snippet, CodeClone>();
+        for (final var clone : clones) {
+            clonesByTarget.merge(clone.target(), clone, (fst, snd) ->
+                CloneDetectorImpl.SOURCE_ORDER.compare(snd.source().snapshot(), fst.source().snapshot()) < 0 ? snd : fst);
+        }
+        return List.copyOf(clonesByTarget.values());
+    }
+
+    /**
+     * The next clone may overlap the last one, e.g. if the inserted tokens end with the same token as the last clone,
+     * the next clone is extended backwards by it
+     */
+    private static boolean isContinuation(final Pair last, final Pair next, final int maxGap) {
+        final var targetGap = next.target().position() - last.targetEnd();
+        final var sourceGap = next.source().position() - last.sourceEnd();
+        return next.target().position() > last.target().position()
+               && next.source().position() > last.source().position()
+               && targetGap <= maxGap
+               && sourceGap <= maxGap;
+    }
+
+    private static void addIfLongEnough(final List<Pair> chain, final int minTokenCount, final List<CodeClone> clones) {
+        // A single clone is an exact one, it is reported on its own if it is long enough
+        if (chain.size() < 2) {
+            return;
+        }
+        // The chain is sorted by the target position, the overlapping tokens are counted once
+        var tokenCount = 0;
+        var coveredEnd = 0;
+        var sourceLast = chain.get(0);
+        var targetLast = chain.get(0);
+        for (final var pair : chain) {
+            tokenCount += Math.max(0, pair.targetEnd() - Math.max(pair.target().position(), coveredEnd));
+            coveredEnd = Math.max(coveredEnd, pair.targetEnd());
+            if (pair.targetEnd() > targetLast.targetEnd()) {
+                targetLast = pair;
+            }
+            if (pair.sourceEnd() > sourceLast.sourceEnd()) {
+                sourceLast = pair;
+            }
+        }
+        if (tokenCount < minTokenCount) {
+            return;
+        }
+        final var first = chain.get(0);
+        clones.add(CodeClone.builder()
+            .source(snippet(first.source(), sourceLast.source()))
+            .target(snippet(first.target(), targetLast.target()))
+            .build());
+    }
+
+    private static CodeClone.Snippet snippet(final Clone<Snapshot> first, final Clone<Snapshot> last) {
+        return CodeClone.Snippet.builder()
+            .snapshot(first.ref())
+            .file(first.filename())
+            .method(first.method())
+            .lines(LineRange.of(first.start().lines().from(), last.end().lines().to()))
+            .build();
+    }
+
+    /**
+     * Exact clone of the target in the source
+     */
+    record Pair(Clone<Snapshot> source, Clone<Snapshot> target) {
+        int length() {
+            return target.parent().length();
+        }
+
+        int sourceEnd() {
+            return source.position() + length();
+        }
+
+        int targetEnd() {
+            return target.position() + length();
+        }
+    }
+
+    /**
+     * An origin is shared by all the tokens of a method, so the overloaded methods of a file are told apart by identity
+     */
+    private record Methods(Token.Origin<Snapshot> source, Token.Origin<Snapshot> target) {
+        static Methods of(final Pair pair) {
+            return new Methods(pair.source().start().origin(), pair.target().start().origin());
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof Methods methods && source == methods.source && target == methods.target;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(source) + System.identityHashCode(target);
+        }
+    }
+}
@@ -1,4 +1,4 @@
-package org.accula.api.clone.suffixtree;
+package org.accula.api.clone.engine;
 
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
@@ -15,6 +15,10 @@ public class Clone<Ref> {
     CloneClass<Ref> parent;
     Token<Ref> start;
     Token<Ref> end;
+    /**
+     * Index of the start token in its method
+     */
+    int position;
     @Getter(lazy = true)
     LineRange lines = LineRange.of(start.lines().from(), end.lines().to());
 
@@ -0,0 +1,28 @@
+package org.accula.api.clone.engine;
+
+import java.util.List;
+
+/**
+ * Maximal repeated token sequence along with all its occurrences (clones)
+ *
+ * @author Anton Lamtev
+ */
+public interface CloneClass<Ref> {
+    /**
+     * Token count of each clone
+     */
+    int length();
+
+    List<Clone<Ref>> clones();
+
+    /**
+     * Whether the clones are preceded by different tokens, or some of them by none.
+     * Otherwise, all the clones extended by their common preceding token form another clone class with the same clone count,
+     * each clone of this one being a suffix of a clone of that superclass, so this clone class is of no interest.
+     */
+    boolean leftMaximal();
+
+    default int cloneCount() {
+        return clones().size();
+    }
+}
@@ -0,0 +1,61 @@
+package org.accula.api.clone.engine;
+
+import org.accula.api.token.Token;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Index of method token sequences finding the clone classes among them
+ *
+ * @author Anton Lamtev
+ */
+public interface CloneEngine<Ref> {
+    /**
+     * Number of batches that can be added in parallel
+     */
+    int parallelism();
+
+    /**
+     * @return ids of the added sequences in the same order
+     */
+    long[] addTokensBatch(List<List<Token<Ref>>> batch);
+
+    /**
+     * Lazily emits the left maximal clone classes matching both filters. The candidates are found on demand,
+     * so the memory taken by a query does not depend on the number of clone classes.
+     * The clones of the emitted clone classes are already collected, so the expensive filter and the subscriber
+     * may access them without any synchronization.
+     */
+    Flux<CloneClass<Ref>> cloneClasses(Predicate<CloneClass<Ref>> cheapFilter, Predicate<CloneClass<Ref>> expensiveFilter);
+
+    /**
+     * Emits the same clone classes as {@link #cloneClasses(Predicate, Predicate)} does, but only those
+     * containing at least one clone of a ref matching {@code refFilter}
+     * and having at least {@code minLength} tokens (shorter clone classes may be emitted as well)
+     */
+    Flux<CloneClass<Ref>> cloneClasses(Predicate<Ref> refFilter,
+                                       int minLength,
+                                       Predicate<CloneClass<Ref>> cheapFilter,
+                                       Predicate<CloneClass<Ref>> expensiveFilter);
+
+    /**
+     * Estimated heap size taken by the engine in bytes
+     */
+    long estimatedSize();
+
+    /**
+     * Releases the resources (e.g. timers) that otherwise keep the engine reachable forever
+     */
+    void dispose();
+
+    /**
+     * Engines of the per-project detectors, which receive the pulls continuously.
+     * The suffix array engine is rebuilt by a query after any addition, so it is used for the temporary detectors only.
+     */
+    enum Kind {
+        SUFFIX_TREE,
+        FINGERPRINT,
+    }
+}
@@ -0,0 +1,323 @@
+package org.accula.api.clone.engine;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.accula.api.token.Token;
+import org.accula.api.util.Sync;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * Clone engine inserting each distinct method token sequence into the underlying engine only once.
+ * <p>
+ * The unchanged methods of the consecutive commits of a pull are the same token sequences,
+ * so only the first occurrence of a sequence is inserted, and the others are kept aside as its duplicates.
+ * Each clone of a duplicated method found by the underlying engine is accompanied by the clones
+ * at the same positions of its duplicates. The duplicated methods themselves, which the underlying engine
+ * can no longer see as repeated, are emitted as whole method clone classes after all the others,
+ * unless the underlying engine has already emitted the same clone class.
+ * Thus the clone classes are the same as if all the methods were inserted.
+ *
+ * @author Anton Lamtev
+ */
+public final class DeduplicatingCloneEngine<Ref> implements CloneEngine<Ref> {
+    /**
+     * A token with its line range and a reference to it retained by the duplicate only
+     */
+    private static final long ESTIMATED_BYTES_PER_DUPLICATE_TOKEN = 56L;
+    private static final long ESTIMATED_BYTES_PER_METHOD = 64L;
+    private final CloneEngine<Ref> engine;
+    private final Sync sync = new Sync();
+    /**
+     * Tokens are equal if their types are, so the lists of tokens are equal if the normalized sequences are
+     */
+    private final Map<List<Token<Ref>>, Method<Ref>> methodsByTokens = new HashMap<>();
+    private final Map<Token.Origin<Ref>, Method<Ref>> duplicatedMethodsByOrigin = new IdentityHashMap<>();
+    private long duplicateTokenCount;
+
+    public DeduplicatingCloneEngine(final CloneEngine<Ref> engine) {
+        this.engine = engine;
+    }
+
+    @Override
+    public int parallelism() {
+        return engine.parallelism();
+    }
+
+    /**
+     * Only the distinct sequences are passed to the underlying engine outside the lock.
+     *
+     * @return ids of the first occurrences for the duplicates,
+     *     or {@code -1} if the first occurrence is being added concurrently
+     */
+    @Override
+    public long[] addTokensBatch(final List<List<Token<Ref>>> batch) {
+        final var methods = new ArrayList<Method<Ref>>(batch.size());
+        final var distinctMethods = new ArrayList<Method<Ref>>();
+        sync.write(() -> {
+            for (final var tokens : batch) {
+                var method = tokens.isEmpty() ? null : methodsByTokens.get(tokens);
+                if (method == null) {
+                    method = new Method<>(tokens);
+                    if (!tokens.isEmpty()) {
+                        methodsByTokens.put(tokens, method);
+                    }
+                    distinctMethods.add(method);
+                } else if (method.addDuplicate(tokens)) {
+                    duplicatedMethodsByOrigin.put(method.origin(), method);
+                    duplicateTokenCount += tokens.size();
+                }
+                methods.add(method);
+            }
+            return null;
+        });
+        if (!distinctMethods.isEmpty()) {
+            final var distinctIds = engine.addTokensBatch(distinctMethods.stream().map(Method::tokens).toList());
+            sync.write(() -> {
+                for (int i = 0; i < distinctIds.length; ++i) {
+                    distinctMethods.get(i).id = distinctIds[i];
+                }
+                return null;
+            });
+        }
+        return sync.read(() -> methods.stream().mapToLong(method -> method.id).toArray());
+    }
+
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return Flux.defer(() -> {
+            if (sync.read(duplicatedMethodsByOrigin::isEmpty)) {
+                return engine.cloneClasses(cheapFilter, expensiveFilter);
+            }
+            final var duplicatedMethods = sync.read(() -> duplicatedMethods(ref -> true, 0));
+            final var covered = ConcurrentHashMap.<Method<Ref>>newKeySet();
+            return withWholeMethodCloneClasses(
+                engine.cloneClasses(cloneClass -> !continuesInDuplicates(cloneClass) && cheapFilter.test(expand(cloneClass, covered)),
+                                    cloneClass -> true),
+                duplicatedMethods,
+                covered,
+                cheapFilter,
+                expensiveFilter
+            );
+        });
+    }
+
+    /**
+     * The methods of the refs having a duplicate of a ref matching {@code refFilter} are queried as well,
+     * and the clone classes having no clones of the matching refs after the expansion are dropped
+     */
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter,
+                                              final int minLength,
+                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return Flux.defer(() -> {
+            if (sync.read(duplicatedMethodsByOrigin::isEmpty)) {
+                return engine.cloneClasses(refFilter, minLength, cheapFilter, expensiveFilter);
+            }
+            final var duplicatedMethods = sync.read(() -> duplicatedMethods(refFilter, minLength));
+            final var duplicatedRefs = new HashSet<Ref>();
+            duplicatedMethods.forEach(method -> duplicatedRefs.add(method.origin().ref()));
+            final var covered = ConcurrentHashMap.<Method<Ref>>newKeySet();
+            final Predicate<CloneClass<Ref>> matchingCheapFilter = cloneClass -> hasCloneOf(cloneClass, refFilter)
+                                                                                 && cheapFilter.test(cloneClass);
+            return withWholeMethodCloneClasses(
+                engine.cloneClasses(ref -> refFilter.test(ref) || duplicatedRefs.contains(ref),
+                                    minLength,
+                                    cloneClass -> !continuesInDuplicates(cloneClass)
+                                                  && matchingCheapFilter.test(expand(cloneClass, covered)),
+                                    cloneClass -> true),
+                duplicatedMethods,
+                covered,
+                matchingCheapFilter,
+                expensiveFilter
+            );
+        });
+    }
+
+    @Override
+    public long estimatedSize() {
+        return engine.estimatedSize()
+               + sync.read(() -> methodsByTokens.size() * ESTIMATED_BYTES_PER_METHOD
+                                 + duplicateTokenCount * ESTIMATED_BYTES_PER_DUPLICATE_TOKEN);
+    }
+
+    @Override
+    public void dispose() {
+        engine.dispose();
+    }
+
+    /**
+     * The clone classes passed the cheap filter are expanded again, since the underlying engine emits its own ones
+     */
+    private Flux<CloneClass<Ref>> withWholeMethodCloneClasses(final Flux<CloneClass<Ref>> cloneClasses,
+                                                              final List<Method<Ref>> duplicatedMethods,
+                                                              final Set<Method<Ref>> covered,
+                                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return cloneClasses
+            .map(cloneClass -> expand(cloneClass, new HashSet<>()))
+            .filter(expensiveFilter)
+            .concatWith(Flux.defer(() -> Flux
+                .fromIterable(duplicatedMethods)
+                .filter(method -> !covered.contains(method))
+                .map(method -> sync.read(method::wholeMethodCloneClass))
+                .filter(cheapFilter)
+                .filter(expensiveFilter)));
+    }
+
+    /**
+     * @param covered the duplicated methods, the whole method clone class of which turns out to be found
+     *                by the underlying engine, are added to
+     */
+    private CloneClass<Ref> expand(final CloneClass<Ref> cloneClass, final Set<Method<Ref>> covered) {
+        return sync.read(() -> {
+            if (duplicatedMethodsByOrigin.isEmpty()) {
+                return cloneClass;
+            }
+            final var length = cloneClass.length();
+            final var clones = cloneClass.clones();
+            final var starts = new ArrayList<Token<Ref>>(clones.size());
+            final var ends = new ArrayList<Token<Ref>>(clones.size());
+            final var positions = new IntArrayList(clones.size());
+            var expanded = false;
+            for (final var clone : clones) {
+                starts.add(clone.start());
+                ends.add(clone.end());
+                positions.add(clone.position());
+                final var method = duplicatedMethodsByOrigin.get(clone.start().origin());
+                if (method == null) {
+                    continue;
+                }
+                expanded = true;
+                if (clone.position() == 0 && length == method.tokens.size()) {
+                    covered.add(method);
+                }
+                for (final var duplicate : method.duplicates) {
+                    starts.add(duplicate.get(clone.position()));
+                    ends.add(duplicate.get(clone.position() + length - 1));
+                    positions.add(clone.position());
+                }
+            }
+            if (!expanded) {
+                return cloneClass;
+            }
+            return new DuplicatedCloneClass<>(length, cloneClass.leftMaximal(), starts, ends, positions);
+        });
+    }
+
+    /**
+     * A clone of a duplicated method not reaching its end is followed by the same token in all the duplicates,
+     * so it would be a part of a longer clone class if all the methods were inserted, and not a clone class of its own
+     */
+    private boolean continuesInDuplicates(final CloneClass<Ref> cloneClass) {
+        return sync.read(() -> {
+            if (duplicatedMethodsByOrigin.isEmpty()) {
+                return false;
+            }
+            final var length = cloneClass.length();
+            for (final var clone : cloneClass.clones()) {
+                final var method = duplicatedMethodsByOrigin.get(clone.start().origin());
+                if (method != null && clone.position() + length < method.tokens.size()) {
+                    return true;
+                }
+            }
+            return false;
+        });
+    }
+
+    private List<Method<Ref>> duplicatedMethods(final Predicate<Ref> refFilter, final int minLength) {
+        final var methods = new ArrayList<Method<Ref>>();
+        for (final var method : duplicatedMethodsByOrigin.values()) {
+            if (method.tokens.size() >= minLength && method.hasOccurrenceOf(refFilter)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    private static <Ref> boolean hasCloneOf(final CloneClass<Ref> cloneClass, final Predicate<Ref> refFilter) {
+        for (final var clone : cloneClass.clones()) {
+            if (refFilter.test(clone.ref())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Distinct token sequence along with its duplicates
+     */
+    private static final class Method<Ref> {
+        final List<Token<Ref>> tokens;
+        final List<List<Token<Ref>>> duplicates = new ArrayList<>(1);
+        long id = -1L;
+
+        Method(final List<Token<Ref>> tokens) {
+            this.tokens = tokens;
+        }
+
+        List<Token<Ref>> tokens() {
+            return tokens;
+        }
+
+        Token.Origin<Ref> origin() {
+            return tokens.get(0).origin();
+        }
+
+        /**
+         * @return {@code false} if the same method has already been added, e.g. the same file of the same ref
+         */
+        boolean addDuplicate(final List<Token<Ref>> duplicate) {
+            if (isSameMethod(tokens, duplicate)) {
+                return false;
+            }
+            for (final var existing : duplicates) {
+                if (isSameMethod(existing, duplicate)) {
+                    return false;
+                }
+            }
+            duplicates.add(duplicate);
+            return true;
+        }
+
+        boolean hasOccurrenceOf(final Predicate<Ref> refFilter) {
+            if (refFilter.test(origin().ref())) {
+                return true;
+            }
+            for (final var duplicate : duplicates) {
+                if (refFilter.test(duplicate.get(0).ref())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        CloneClass<Ref> wholeMethodCloneClass() {
+            final var starts = new ArrayList<Token<Ref>>(duplicates.size() + 1);
+            final var ends = new ArrayList<Token<Ref>>(duplicates.size() + 1);
+            starts.add(tokens.get(0));
+            ends.add(tokens.get(tokens.size() - 1));
+            for (final var duplicate : duplicates) {
+                starts.add(duplicate.get(0));
+                ends.add(duplicate.get(duplicate.size() - 1));
+            }
+            return new DuplicatedCloneClass<>(tokens.size(), true, starts, ends, new IntArrayList(new int[starts.size()]));
+        }
+
+        private static <Ref> boolean isSameMethod(final List<Token<Ref>> method, final List<Token<Ref>> other) {
+            final var first = method.get(0);
+            final var otherFirst = other.get(0);
+            return first.origin().equals(otherFirst.origin()) && first.lines().equals(otherFirst.lines());
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package org.accula.api.clone.engine;
+
+import it.unimi.dsi.fastutil.ints.IntList;
+import org.accula.api.token.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Clone class of the underlying engine along with the same clones of the duplicated methods
+ * (see {@link DeduplicatingCloneEngine})
+ *
+ * @author Anton Lamtev
+ */
+final class DuplicatedCloneClass<Ref> implements CloneClass<Ref> {
+    private final int length;
+    private final boolean leftMaximal;
+    private final List<Clone<Ref>> clones;
+
+    /**
+     * @param starts    start tokens of the clones
+     * @param ends      end tokens of the clones
+     * @param positions indexes of the start tokens of the clones in their methods
+     */
+    DuplicatedCloneClass(final int length,
+                         final boolean leftMaximal,
+                         final List<Token<Ref>> starts,
+                         final List<Token<Ref>> ends,
+                         final IntList positions) {
+        this.length = length;
+        this.leftMaximal = leftMaximal;
+        final var clones = new ArrayList<Clone<Ref>>(starts.size());
+        for (int i = 0; i < starts.size(); ++i) {
+            clones.add(new Clone<>(this, starts.get(i), ends.get(i), positions.getInt(i)));
+        }
+        this.clones = clones;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public List<Clone<Ref>> clones() {
+        return clones;
+    }
+
+    @Override
+    public boolean leftMaximal() {
+        return leftMaximal;
+    }
+
+    @Override
+    public String toString() {
+        return "DuplicatedCloneClass(length=%d, cloneCount=%d)".formatted(length, clones.size());
+    }
+}
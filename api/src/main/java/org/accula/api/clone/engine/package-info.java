@@ -0,0 +1,4 @@
+@NonNullApi
+package org.accula.api.clone.engine;
+
+import org.accula.api.annotation.NonNullApi;
@@ -0,0 +1,311 @@
+package org.accula.api.clone.fingerprint;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import lombok.extern.slf4j.Slf4j;
+import org.accula.api.clone.journal.RefCodec;
+import org.accula.api.clone.journal.TokenJournal;
+import org.accula.api.token.Token;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+import static org.accula.api.clone.fingerprint.FingerprintCloneDetector.DEFAULT_KGRAM_LENGTH;
+import static org.accula.api.clone.fingerprint.FingerprintCloneDetector.DEFAULT_WINDOW_LENGTH;
+
+/**
+ * Fingerprint index of the methods of all the projects, whose token journals are kept in the store directory.
+ * <p>
+ * Only the winnowed {@link Fingerprints} of the methods are kept in memory along with the offsets
+ * of the method records in the project journals. The methods themselves stay on disk, and only the candidates
+ * sharing fingerprints with the queried methods are read back, so neither the project trees nor the project tokens
+ * are loaded to search the clones across the projects.
+ * <p>
+ * The postings of a project are kept in immutable runs sorted by the fingerprint taking 16 bytes per posting.
+ * Each refresh reads only the records appended to the project journal since the previous one through a long-lived
+ * {@link TokenJournal.View}, appends a run of the methods checkpointed since then,
+ * and the runs are merged into one once there are too many of them.
+ * The projects are refreshed by the writers of their journals, while the queries never read the journals whole,
+ * except for the first query of a project not indexed since the start yet.
+ * <p>
+ * A single shared fingerprint is a single common k-gram, which is common to lots of unrelated methods,
+ * so a method is a candidate only if it shares at least {@code minSharedFingerprints} fingerprints with the queried ones.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class CrossProjectCloneIndex<Ref> {
+    public static final int DEFAULT_MIN_SHARED_FINGERPRINTS = 2;
+    private static final String JOURNAL_EXTENSION = ".tokens";
+    private static final int MAX_RUN_COUNT = 8;
+    private final Path storePath;
+    private final RefCodec<Ref> codec;
+    private final int kgramLength;
+    private final int windowLength;
+    private final int minSharedFingerprints;
+    private final Map<Long, Segment> segments = new ConcurrentHashMap<>();
+
+    public CrossProjectCloneIndex(final Path storePath, final RefCodec<Ref> codec) {
+        this(storePath, codec, DEFAULT_KGRAM_LENGTH, DEFAULT_WINDOW_LENGTH, DEFAULT_MIN_SHARED_FINGERPRINTS);
+    }
+
+    public CrossProjectCloneIndex(final Path storePath,
+                                  final RefCodec<Ref> codec,
+                                  final int kgramLength,
+                                  final int windowLength,
+                                  final int minSharedFingerprints) {
+        if (minSharedFingerprints < 1) {
+            throw new IllegalArgumentException("minSharedFingerprints MUST be positive, actual: " + minSharedFingerprints);
+        }
+        this.storePath = storePath;
+        this.codec = codec;
+        this.kgramLength = kgramLength;
+        this.windowLength = windowLength;
+        this.minSharedFingerprints = minSharedFingerprints;
+    }
+
+    public Path journalPath(final Long projectId) {
+        return storePath.resolve(projectId + JOURNAL_EXTENSION);
+    }
+
+    /**
+     * Minimal length of the clones guaranteed to be found: the clone must contain {@code minSharedFingerprints}
+     * disjoint windows, each of which selects a fingerprint. Fewer distinct fingerprints are shared only
+     * if the clone repeats its own k-grams.
+     */
+    public int guaranteedLength() {
+        return Fingerprints.guaranteedLength(kgramLength, windowLength) + (minSharedFingerprints - 1) * windowLength;
+    }
+
+    /**
+     * Indexes the methods checkpointed in the project journal since the previous refresh.
+     * Only the records appended since are read, unless the journal has been replaced, e.g. compacted,
+     * in which case the project is indexed anew.
+     */
+    public void refresh(final Long projectId) throws IOException {
+        final var segment = segments.computeIfAbsent(projectId, __ -> new Segment());
+        synchronized (segment) {
+            segment.refresh(journalPath(projectId));
+        }
+    }
+
+    /**
+     * Forgets the project, e.g. because its journal has been deleted
+     */
+    public void invalidate(final Long projectId) {
+        segments.remove(projectId);
+    }
+
+    /**
+     * Reads the methods of the refs matching the filter from the project journal, and the methods of the other projects
+     * matching the filter sharing at least {@code minSharedFingerprints} fingerprints with them from their journals.
+     * The journals are not refreshed, so only the methods indexed by the moment are found.
+     */
+    public Candidates<Ref> candidates(final Long projectId,
+                                      final Predicate<Ref> refFilter,
+                                      final Predicate<Long> projectFilter) throws IOException {
+        final var queriedSegment = segment(projectId);
+        final List<List<Token<Ref>>> queried;
+        synchronized (queriedSegment) {
+            queried = queriedSegment.methods(refFilter);
+        }
+        final var fingerprintSet = new LongOpenHashSet();
+        for (final var method : queried) {
+            fingerprintSet.addAll(LongArrayList.wrap(Fingerprints.of(method, kgramLength, windowLength)));
+        }
+        final var fingerprints = fingerprintSet.toLongArray();
+        Arrays.sort(fingerprints);
+
+        final var others = new ArrayList<List<Token<Ref>>>();
+        var projectCount = 0;
+        for (final var otherProjectId : projectIds()) {
+            if (otherProjectId.equals(projectId) || !projectFilter.test(otherProjectId)) {
+                continue;
+            }
+            ++projectCount;
+            final var segment = segment(otherProjectId);
+            synchronized (segment) {
+                segment.addMethodsSharing(fingerprints, others);
+            }
+        }
+        log.info("[{}] Selected {} candidate methods of {} other projects for {} queried methods",
+            projectId, others.size(), projectCount, queried.size());
+        return new Candidates<>(queried, others);
+    }
+
+    /**
+     * @return segment of the project, which is indexed if it has not been yet since the start
+     */
+    private Segment segment(final Long projectId) throws IOException {
+        final var segment = segments.get(projectId);
+        if (segment != null) {
+            return segment;
+        }
+        refresh(projectId);
+        return segments.computeIfAbsent(projectId, __ -> new Segment());
+    }
+
+    private List<Long> projectIds() throws IOException {
+        if (!Files.isDirectory(storePath)) {
+            return List.of();
+        }
+        try (var paths = Files.list(storePath)) {
+            return paths
+                .map(path -> path.getFileName().toString())
+                .filter(filename -> filename.endsWith(JOURNAL_EXTENSION))
+                .map(filename -> filename.substring(0, filename.length() - JOURNAL_EXTENSION.length()))
+                .filter(id -> !id.isEmpty() && id.chars().allMatch(Character::isDigit))
+                .map(Long::valueOf)
+                .toList();
+        }
+    }
+
+    /**
+     * @param queried methods of the queried refs
+     * @param others  methods of the other projects sharing enough fingerprints with the queried ones
+     */
+    public record Candidates<Ref>(List<List<Token<Ref>>> queried, List<List<Token<Ref>>> others) {
+    }
+
+    /**
+     * Postings of a project along with the view of its journal, both are accessed under the lock of the segment
+     */
+    private final class Segment {
+        private final LongSet indexedOffsets = new LongOpenHashSet();
+        private List<Run> runs = List.of();
+        /**
+         * All the methods before are either indexed, or will never be, since their refs are not checkpointed
+         * and will be dropped by the next compaction
+         */
+        private long indexedLength;
+        @Nullable
+        private TokenJournal.View<Ref> view;
+
+        void refresh(final Path journalPath) throws IOException {
+            var current = view;
+            if (current == null || !current.refresh()) {
+                // The offsets of the replaced journal are no longer valid
+                current = TokenJournal.view(journalPath, codec);
+                view = current;
+                indexedOffsets.clear();
+                runs = List.of();
+                indexedLength = 0L;
+            }
+            final var fingerprints = new LongArrayList();
+            final var offsets = new LongArrayList();
+            current.forEachCheckpointedMethod(indexedLength, (method, offset) -> {
+                if (!indexedOffsets.add(offset)) {
+                    return;
+                }
+                for (final var fingerprint : Fingerprints.of(method, kgramLength, windowLength)) {
+                    fingerprints.add(fingerprint);
+                    offsets.add(offset);
+                }
+            });
+            // The methods of the refs not checkpointed yet are indexed by a refresh after they are
+            indexedLength = current.firstUncheckpointedMethodOffset(indexedLength);
+            for (final var it = indexedOffsets.iterator(); it.hasNext(); ) {
+                if (it.nextLong() < indexedLength) {
+                    it.remove();
+                }
+            }
+            if (fingerprints.isEmpty()) {
+                return;
+            }
+            final var updated = new ArrayList<>(runs);
+            updated.add(Run.of(fingerprints.toLongArray(), offsets.toLongArray()));
+            runs = updated.size() > MAX_RUN_COUNT ? List.of(Run.merge(updated)) : List.copyOf(updated);
+        }
+
+        List<List<Token<Ref>>> methods(final Predicate<Ref> refFilter) {
+            return view == null ? List.of() : view.methods(refFilter);
+        }
+
+        /**
+         * Adds the methods having at least {@code minSharedFingerprints} of the sorted fingerprints in the journal order
+         */
+        void addMethodsSharing(final long[] fingerprints, final List<List<Token<Ref>>> methods) {
+            if (view == null) {
+                return;
+            }
+            final var sharedCounts = new Long2IntOpenHashMap();
+            for (final var run : runs) {
+                run.countShared(fingerprints, sharedCounts);
+            }
+            final var offsets = new LongArrayList();
+            for (final var entry : sharedCounts.long2IntEntrySet()) {
+                if (entry.getIntValue() >= minSharedFingerprints) {
+                    offsets.add(entry.getLongKey());
+                }
+            }
+            final var sorted = offsets.toLongArray();
+            Arrays.sort(sorted);
+            for (final var offset : sorted) {
+                final var method = view.method(offset);
+                if (method != null) {
+                    methods.add(method);
+                }
+            }
+        }
+    }
+
+    private record Run(long[] fingerprints, long[] offsets) {
+        static Run of(final long[] fingerprints, final long[] offsets) {
+            it.unimi.dsi.fastutil.Arrays.quickSort(
+                0,
+                fingerprints.length,
+                (fst, snd) -> Long.compare(fingerprints[fst], fingerprints[snd]),
+                (fst, snd) -> {
+                    final var fingerprint = fingerprints[fst];
+                    fingerprints[fst] = fingerprints[snd];
+                    fingerprints[snd] = fingerprint;
+                    final var offset = offsets[fst];
+                    offsets[fst] = offsets[snd];
+                    offsets[snd] = offset;
+                }
+            );
+            return new Run(fingerprints, offsets);
+        }
+
+        static Run merge(final List<Run> runs) {
+            final var fingerprints = new LongArrayList();
+            final var offsets = new LongArrayList();
+            for (final var run : runs) {
+                fingerprints.addElements(fingerprints.size(), run.fingerprints);
+                offsets.addElements(offsets.size(), run.offsets);
+            }
+            return of(fingerprints.toLongArray(), offsets.toLongArray());
+        }
+
+        /**
+         * Both the queried fingerprints and the run are sorted, so they are merge joined
+         * counting the fingerprints shared by each method
+         */
+        void countShared(final long[] queried, final Long2IntMap sharedCounts) {
+            var i = 0;
+            var j = 0;
+            while (i < queried.length && j < fingerprints.length) {
+                final var comparison = Long.compare(queried[i], fingerprints[j]);
+                if (comparison < 0) {
+                    ++i;
+                } else if (comparison > 0) {
+                    ++j;
+                } else {
+                    sharedCounts.mergeInt(offsets[j], 1, Integer::sum);
+                    ++j;
+                }
+            }
+        }
+    }
+}
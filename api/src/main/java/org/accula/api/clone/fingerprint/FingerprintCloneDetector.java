@@ -0,0 +1,204 @@
+package org.accula.api.clone.fingerprint;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.clone.engine.CloneEngine;
+import org.accula.api.clone.suffixtree.SuffixTreeCloneDetector;
+import org.accula.api.token.Token;
+import org.accula.api.util.Sync;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Fingerprint index based clone detector.
+ * <p>
+ * Instead of a suffix tree of the whole project, only the winnowed {@link Fingerprints} of each method
+ * are indexed. A query first selects the candidate methods sharing at least one fingerprint with the methods
+ * of the matching refs, and only those are compared exactly in a temporary suffix tree.
+ * Every occurrence of a clone of at least {@link Fingerprints#guaranteedLength} tokens shares a fingerprint
+ * with the queried method, so the temporary tree contains all of them, and its clone classes of that length
+ * and their left maximality are exactly the same as of the suffix tree of the whole project.
+ * Shorter clone classes may miss some of their occurrences in the temporary tree, so a query for them
+ * is clamped to the guaranteed length rather than made as expensive as a tree of all the methods.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class FingerprintCloneDetector<Ref> implements CloneEngine<Ref> {
+    public static final int DEFAULT_KGRAM_LENGTH = 10;
+    public static final int DEFAULT_WINDOW_LENGTH = 12;
+    /**
+     * Rough upper estimate: a token reference per token, and a fingerprint with its posting per a few tokens
+     */
+    private static final long ESTIMATED_BYTES_PER_TOKEN = 24L;
+    private final String id;
+    private final int kgramLength;
+    private final int windowLength;
+    private final int guaranteedLength;
+    private final Sync sync = new Sync();
+    private final List<List<Token<Ref>>> sequences = new ArrayList<>();
+    private final List<long[]> fingerprintsBySequence = new ArrayList<>();
+    private final Long2ObjectOpenHashMap<IntArrayList> sequenceIndexesByFingerprint = new Long2ObjectOpenHashMap<>();
+    private final Map<Ref, IntArrayList> sequenceIndexesByRef = new HashMap<>();
+    private long tokenCount;
+
+    public FingerprintCloneDetector(final String id) {
+        this(id, DEFAULT_KGRAM_LENGTH, DEFAULT_WINDOW_LENGTH);
+    }
+
+    public FingerprintCloneDetector(final String id, final int kgramLength, final int windowLength) {
+        if (kgramLength < 1 || windowLength < 1) {
+            throw new IllegalArgumentException("kgramLength and windowLength MUST be positive, actual: %d, %d"
+                .formatted(kgramLength, windowLength));
+        }
+        this.id = id;
+        this.kgramLength = kgramLength;
+        this.windowLength = windowLength;
+        this.guaranteedLength = Fingerprints.guaranteedLength(kgramLength, windowLength);
+    }
+
+    /**
+     * All the postings are appended under a single write lock, so the batches added in parallel would only contend for it
+     */
+    @Override
+    public int parallelism() {
+        return 1;
+    }
+
+    public long addTokens(final List<Token<Ref>> tokens) {
+        return addTokensBatch(List.of(tokens))[0];
+    }
+
+    /**
+     * @return indexes of the added sequences in the order of addition
+     */
+    @Override
+    public long[] addTokensBatch(final List<List<Token<Ref>>> batch) {
+        final var fingerprints = batch
+            .stream()
+            .map(tokens -> Fingerprints.of(tokens, kgramLength, windowLength))
+            .toList();
+        return sync.write(() -> {
+            final var sequenceIndexes = new long[batch.size()];
+            for (int i = 0; i < sequenceIndexes.length; ++i) {
+                final var tokens = batch.get(i);
+                final var sequenceIndex = sequences.size();
+                sequences.add(tokens);
+                fingerprintsBySequence.add(fingerprints.get(i));
+                sequenceIndexes[i] = sequenceIndex;
+                tokenCount += tokens.size();
+                for (final var fingerprint : fingerprints.get(i)) {
+                    sequenceIndexesByFingerprint.computeIfAbsent(fingerprint, __ -> new IntArrayList(1)).add(sequenceIndex);
+                }
+                if (!tokens.isEmpty()) {
+                    sequenceIndexesByRef.computeIfAbsent(tokens.get(0).ref(), ref -> new IntArrayList()).add(sequenceIndex);
+                }
+            }
+            return sequenceIndexes;
+        });
+    }
+
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> filter) {
+        return cloneClasses(it -> true, filter);
+    }
+
+    /**
+     * Builds the temporary tree of all the methods, which is as expensive as building the tree from scratch
+     */
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return Flux.using(
+            () -> temporaryTree(sync.read(() -> List.copyOf(sequences))),
+            tree -> tree.cloneClasses(cheapFilter, expensiveFilter),
+            SuffixTreeCloneDetector::dispose
+        );
+    }
+
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter,
+                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return cloneClasses(refFilter, 1, cheapFilter, expensiveFilter);
+    }
+
+    /**
+     * Only the clone classes of at least {@link Fingerprints#guaranteedLength} tokens are emitted
+     * however small {@code minLength} is
+     */
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter,
+                                              final int minLength,
+                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        final var clampedMinLength = Math.max(minLength, guaranteedLength);
+        return Flux.using(
+            () -> temporaryTree(candidates(refFilter)),
+            tree -> tree.cloneClasses(refFilter,
+                                      clampedMinLength,
+                                      cloneClass -> cloneClass.length() >= clampedMinLength && cheapFilter.test(cloneClass),
+                                      expensiveFilter),
+            SuffixTreeCloneDetector::dispose
+        );
+    }
+
+    @Override
+    public long estimatedSize() {
+        return sync.read(() -> tokenCount) * ESTIMATED_BYTES_PER_TOKEN;
+    }
+
+    /**
+     * There is nothing to release, the temporary trees are disposed right after the queries
+     */
+    @Override
+    public void dispose() {
+    }
+
+    /**
+     * The sequences of the matching refs and the ones sharing at least a fingerprint with them
+     */
+    private List<List<Token<Ref>>> candidates(final Predicate<Ref> refFilter) {
+        return sync.read(() -> {
+            final var candidateIndexes = new IntOpenHashSet();
+            var queriedCount = 0;
+            for (final var entry : sequenceIndexesByRef.entrySet()) {
+                if (!refFilter.test(entry.getKey())) {
+                    continue;
+                }
+                final var sequenceIndexes = entry.getValue();
+                for (int i = 0; i < sequenceIndexes.size(); ++i) {
+                    final var sequenceIndex = sequenceIndexes.getInt(i);
+                    ++queriedCount;
+                    candidateIndexes.add(sequenceIndex);
+                    for (final var fingerprint : fingerprintsBySequence.get(sequenceIndex)) {
+                        candidateIndexes.addAll(sequenceIndexesByFingerprint.get(fingerprint));
+                    }
+                }
+            }
+            log.info("[{}] Selected {} candidate methods for {} queried methods out of {}",
+                id, candidateIndexes.size(), queriedCount, sequences.size());
+            // Sorted to be added to the temporary tree in the order of addition, as they would be added to a single tree
+            final var sortedIndexes = candidateIndexes.toIntArray();
+            Arrays.sort(sortedIndexes);
+            final var candidates = new ArrayList<List<Token<Ref>>>(sortedIndexes.length);
+            for (final var sequenceIndex : sortedIndexes) {
+                candidates.add(sequences.get(sequenceIndex));
+            }
+            return candidates;
+        });
+    }
+
+    private SuffixTreeCloneDetector<Ref> temporaryTree(final List<List<Token<Ref>>> sequences) {
+        final var tree = new SuffixTreeCloneDetector<Ref>(id);
+        tree.addTokensBatch(sequences);
+        return tree;
+    }
+}
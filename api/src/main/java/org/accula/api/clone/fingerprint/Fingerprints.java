@@ -0,0 +1,90 @@
+package org.accula.api.clone.fingerprint;
+
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.accula.api.token.Token;
+
+import java.util.List;
+
+/**
+ * Winnowing (as in MOSS) over the Rabin-Karp hashes of the token type k-grams.
+ * <p>
+ * Of each window of {@code windowLength} consecutive k-gram hashes the rightmost minimal one is selected.
+ * Any two sequences sharing a subsequence of at least {@code kgramLength + windowLength - 1} tokens
+ * contain a whole equal window, so they share at least the fingerprint selected of that window.
+ *
+ * @author Anton Lamtev
+ */
+public final class Fingerprints {
+    private static final long BASE = 0x9E3779B97F4A7C15L;
+
+    private Fingerprints() {
+    }
+
+    /**
+     * Minimal length of the common subsequence guaranteed to be detected by the shared fingerprints
+     */
+    public static int guaranteedLength(final int kgramLength, final int windowLength) {
+        return kgramLength + windowLength - 1;
+    }
+
+    /**
+     * @return distinct fingerprints of the token sequence, empty if it is shorter than {@code kgramLength}
+     */
+    public static <Ref> long[] of(final List<Token<Ref>> tokens, final int kgramLength, final int windowLength) {
+        if (kgramLength < 1 || windowLength < 1) {
+            throw new IllegalArgumentException("kgramLength and windowLength MUST be positive, actual: %d, %d"
+                .formatted(kgramLength, windowLength));
+        }
+        final var hashes = kgramHashes(tokens, kgramLength);
+        if (hashes.length == 0) {
+            return hashes;
+        }
+        final var fingerprints = new LongOpenHashSet();
+        // Indexes of the current window hashes, the hashes are increasing from the head to the tail
+        final var window = new int[hashes.length];
+        var head = 0;
+        var tail = 0;
+        var lastSelected = -1;
+        for (int i = 0; i < hashes.length; ++i) {
+            while (tail > head && hashes[window[tail - 1]] >= hashes[i]) {
+                --tail;
+            }
+            window[tail++] = i;
+            if (window[head] <= i - windowLength) {
+                ++head;
+            }
+            final var windowIsFull = i >= windowLength - 1;
+            final var isLast = i == hashes.length - 1;
+            if ((windowIsFull || isLast) && window[head] != lastSelected) {
+                lastSelected = window[head];
+                fingerprints.add(hashes[lastSelected]);
+            }
+        }
+        return fingerprints.toLongArray();
+    }
+
+    private static <Ref> long[] kgramHashes(final List<Token<Ref>> tokens, final int kgramLength) {
+        final var tokenCount = tokens.size();
+        if (tokenCount < kgramLength) {
+            return new long[0];
+        }
+        var highestPower = 1L;
+        for (int i = 1; i < kgramLength; ++i) {
+            highestPower *= BASE;
+        }
+        final var hashes = new long[tokenCount - kgramLength + 1];
+        var hash = 0L;
+        for (int i = 0; i < tokenCount; ++i) {
+            if (i >= kgramLength) {
+                hash -= tokens.get(i - kgramLength).type() * highestPower;
+            }
+            hash = hash * BASE + tokens.get(i).type();
+            if (i >= kgramLength - 1) {
+                // The hashes of similar k-grams are close, mixed ones are selected as minimal evenly
+                hashes[i - kgramLength + 1] = HashCommon.mix(hash);
+            }
+        }
+        return hashes;
+    }
+}
@@ -0,0 +1,16 @@
+package org.accula.api.clone.journal;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary codec of the token refs stored in {@link TokenJournal}
+ *
+ * @author Anton Lamtev
+ */
+public interface RefCodec<Ref> {
+    void write(DataOutput out, Ref ref) throws IOException;
+
+    Ref read(DataInput in) throws IOException;
+}
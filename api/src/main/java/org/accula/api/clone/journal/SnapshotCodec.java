@@ -0,0 +1,110 @@
+package org.accula.api.clone.journal;
+
+import org.accula.api.db.model.Commit;
+import org.accula.api.db.model.GithubRepo;
+import org.accula.api.db.model.GithubUser;
+import org.accula.api.db.model.Snapshot;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * @author Anton Lamtev
+ */
+public final class SnapshotCodec implements RefCodec<Snapshot> {
+    public static final SnapshotCodec INSTANCE = new SnapshotCodec();
+
+    private SnapshotCodec() {
+    }
+
+    @Override
+    public void write(final DataOutput out, final Snapshot snapshot) throws IOException {
+        final var commit = snapshot.commit();
+        out.writeUTF(commit.sha());
+        out.writeBoolean(Boolean.TRUE.equals(commit.isMerge()));
+        out.writeUTF(commit.authorName());
+        out.writeUTF(commit.authorEmail());
+        out.writeLong(commit.date().getEpochSecond());
+        out.writeInt(commit.date().getNano());
+
+        out.writeUTF(snapshot.branch());
+
+        final var repo = snapshot.repo();
+        out.writeLong(repo.id());
+        out.writeUTF(repo.name());
+        out.writeBoolean(Boolean.TRUE.equals(repo.isPrivate()));
+        writeNullableString(out, repo.description());
+
+        final var owner = repo.owner();
+        out.writeLong(owner.id());
+        out.writeUTF(owner.login());
+        writeNullableString(out, owner.name());
+        out.writeUTF(owner.avatar());
+        out.writeBoolean(owner.isOrganization());
+
+        final var pullInfo = snapshot.pullInfo();
+        out.writeBoolean(pullInfo != null);
+        if (pullInfo != null) {
+            out.writeLong(pullInfo.id());
+            out.writeInt(pullInfo.number());
+        }
+    }
+
+    @Override
+    public Snapshot read(final DataInput in) throws IOException {
+        final var commit = Commit.builder()
+            .sha(in.readUTF())
+            .isMerge(in.readBoolean())
+            .authorName(in.readUTF())
+            .authorEmail(in.readUTF())
+            .date(Instant.ofEpochSecond(in.readLong(), in.readInt()))
+            .build();
+
+        final var branch = in.readUTF();
+
+        final var repoId = in.readLong();
+        final var repoName = in.readUTF();
+        final var repoIsPrivate = in.readBoolean();
+        final var repoDescription = readNullableString(in);
+
+        final var owner = GithubUser.builder()
+            .id(in.readLong())
+            .login(in.readUTF())
+            .name(readNullableString(in))
+            .avatar(in.readUTF())
+            .isOrganization(in.readBoolean())
+            .build();
+
+        final var repo = GithubRepo.builder()
+            .id(repoId)
+            .name(repoName)
+            .isPrivate(repoIsPrivate)
+            .description(repoDescription)
+            .owner(owner)
+            .build();
+
+        final var pullInfo = in.readBoolean() ? new Snapshot.PullInfo(in.readLong(), in.readInt()) : null;
+
+        return Snapshot.builder()
+            .commit(commit)
+            .branch(branch)
+            .repo(repo)
+            .pullInfo(pullInfo)
+            .build();
+    }
+
+    private static void writeNullableString(final DataOutput out, @Nullable final String string) throws IOException {
+        out.writeBoolean(string != null);
+        if (string != null) {
+            out.writeUTF(string);
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(final DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
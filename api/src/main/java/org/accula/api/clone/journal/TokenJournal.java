@@ -0,0 +1,672 @@
+package org.accula.api.clone.journal;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import lombok.extern.slf4j.Slf4j;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.MethodTokens;
+import org.accula.api.token.Token;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Predicate;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only on-disk journal of the method token sequences added to a clone detector.
+ * <p>
+ * The file starts with {@link #MAGIC} and {@link #VERSION} followed by the records:
+ * <pre>
+ * STRING     := utf                                      interned token string, filename or method name
+ * REF        := bytes written by {@link RefCodec}        interned ref
+ * METHOD     := ref filename method count (string from to)*
+ * BLOCKS     := count (hash from to)*                   structural hashes of the blocks of the preceding method
+ * CHECKPOINT := count ref*                               refs all the files of which have been journaled
+ * </pre>
+ * The journal is memory-mapped back on {@link #open}, and only the methods of checkpointed refs are replayed,
+ * so the refs not completed before a shutdown are indexed from scratch by the next fill.
+ * A mapping is limited to 2 GB, so a larger journal is mapped in several segments split at record boundaries.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class TokenJournal<Ref> implements Closeable {
+    static final int MAGIC = 0x41434A54;
+    static final int VERSION = 2;
+    private static final byte STRING = 1;
+    private static final byte REF = 2;
+    private static final byte METHOD = 3;
+    private static final byte CHECKPOINT = 4;
+    private static final byte BLOCKS = 5;
+    private static final int NULL_ID = -1;
+    private static final int TOKEN_SIZE = 3 * Integer.BYTES;
+    private static final int BLOCK_SIZE = Long.BYTES + 2 * Integer.BYTES;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int MAX_SEGMENT_SIZE = Integer.MAX_VALUE;
+
+    private final RefCodec<Ref> codec;
+    private final Object2IntMap<String> stringIds = new Object2IntOpenHashMap<>();
+    private final Object2IntMap<Ref> refIds = new Object2IntOpenHashMap<>();
+    private final IntSet checkpointedRefIds;
+    private final FileChannel channel;
+    private final DataOutputStream out;
+    @Nullable
+    private Contents<Ref> restored;
+
+    private TokenJournal(final Path path, final RefCodec<Ref> codec, final Contents<Ref> restored) throws IOException {
+        this.codec = codec;
+        this.restored = restored;
+        stringIds.defaultReturnValue(NULL_ID);
+        refIds.defaultReturnValue(NULL_ID);
+        for (int i = 0; i < restored.strings.size(); ++i) {
+            stringIds.put(restored.strings.get(i), i);
+        }
+        for (int i = 0; i < restored.refs.size(); ++i) {
+            refIds.put(restored.refs.get(i), i);
+        }
+        checkpointedRefIds = new IntOpenHashSet(restored.checkpointedRefIds);
+
+        channel = FileChannel.open(path, CREATE, WRITE);
+        channel.truncate(restored.validLength);
+        channel.position(restored.validLength);
+        out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE));
+        if (restored.validLength == 0L) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+        }
+    }
+
+    /**
+     * Opens the journal at the specified path creating it if it does not exist.
+     * A truncated trailing record is dropped, a journal of an incompatible version is discarded,
+     * and a journal containing methods of not checkpointed refs is compacted.
+     */
+    public static <Ref> TokenJournal<Ref> open(final Path path, final RefCodec<Ref> codec) throws IOException {
+        return open(path, codec, MAX_SEGMENT_SIZE);
+    }
+
+    /**
+     * @param segmentSize maximal size of a part of the journal mapped at once
+     */
+    static <Ref> TokenJournal<Ref> open(final Path path, final RefCodec<Ref> codec, final int segmentSize) throws IOException {
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        final var contents = Contents.read(path, codec, true, segmentSize);
+        if (!contents.hasUncheckpointedMethods()) {
+            return new TokenJournal<>(path, codec, contents);
+        }
+        log.info("Compacting journal {}", path);
+        final var compacted = path.resolveSibling(path.getFileName() + ".compacted");
+        Files.deleteIfExists(compacted);
+        try (var journal = new TokenJournal<>(compacted, codec, Contents.<Ref>empty())) {
+            contents.forEachCheckpointedMethod(journal::append);
+            journal.checkpoint(contents.checkpointedRefs());
+        }
+        Files.move(compacted, path, REPLACE_EXISTING, ATOMIC_MOVE);
+        return new TokenJournal<>(path, codec, Contents.read(path, codec, true, segmentSize));
+    }
+
+    /**
+     * Maps the journal at the specified path read-only without affecting the journal being written to it, if any.
+     * Only the records completely written by the moment of the call are visible through the view until it is
+     * {@link View#refresh refreshed}.
+     */
+    public static <Ref> View<Ref> view(final Path path, final RefCodec<Ref> codec) throws IOException {
+        return view(path, codec, MAX_SEGMENT_SIZE);
+    }
+
+    static <Ref> View<Ref> view(final Path path, final RefCodec<Ref> codec, final int segmentSize) throws IOException {
+        return new View<>(path, codec, segmentSize, Contents.read(path, codec, false, segmentSize));
+    }
+
+    /**
+     * Feeds the methods of checkpointed refs that were present in the journal on {@link #open}
+     * to the specified consumer. The restored data is released afterwards, so it can be replayed only once.
+     *
+     * @return replayed method count
+     */
+    public int replay(final Consumer<List<Token<Ref>>> onMethod) {
+        final Contents<Ref> contents;
+        synchronized (this) {
+            contents = restored;
+            restored = null;
+        }
+        if (contents == null) {
+            return 0;
+        }
+        return contents.forEachCheckpointedMethod(onMethod);
+    }
+
+    public synchronized boolean isCheckpointed(final Ref ref) {
+        final var refId = refIds.getInt(ref);
+        return refId != NULL_ID && checkpointedRefIds.contains(refId);
+    }
+
+    public synchronized void appendAll(final List<List<Token<Ref>>> methods) {
+        for (final var method : methods) {
+            append(method);
+        }
+    }
+
+    public synchronized void append(final List<Token<Ref>> method) {
+        if (method.isEmpty()) {
+            return;
+        }
+        try {
+            final var first = method.get(0);
+            final var refId = refId(first.ref());
+            final var filenameId = stringId(first.filename());
+            final var methodNameId = stringId(first.methodName());
+            final var tokenStringIds = new int[method.size()];
+            for (int i = 0; i < tokenStringIds.length; ++i) {
+                tokenStringIds[i] = stringId(method.get(i).string());
+            }
+
+            out.writeByte(METHOD);
+            out.writeInt(refId);
+            out.writeInt(filenameId);
+            out.writeInt(methodNameId);
+            out.writeInt(tokenStringIds.length);
+            for (int i = 0; i < tokenStringIds.length; ++i) {
+                final var lines = method.get(i).lines();
+                out.writeInt(tokenStringIds[i]);
+                out.writeInt(lines.from());
+                out.writeInt(lines.to());
+            }
+            final var blocks = MethodTokens.blocks(method);
+            if (!blocks.isEmpty()) {
+                out.writeByte(BLOCKS);
+                out.writeInt(blocks.size());
+                for (final var block : blocks) {
+                    out.writeLong(block.hash());
+                    out.writeInt(block.from());
+                    out.writeInt(block.to());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Marks the specified refs as fully journaled and forces all the journal contents to the storage device
+     */
+    public synchronized void checkpoint(final Collection<Ref> refs) {
+        try {
+            final var ids = new int[refs.size()];
+            var i = 0;
+            for (final var ref : refs) {
+                ids[i++] = refId(ref);
+            }
+            out.writeByte(CHECKPOINT);
+            out.writeInt(ids.length);
+            for (final var id : ids) {
+                out.writeInt(id);
+            }
+            out.flush();
+            channel.force(false);
+            checkpointedRefIds.addAll(IntArrayList.wrap(ids));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        restored = null;
+        if (!channel.isOpen()) {
+            return;
+        }
+        try {
+            out.flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private int stringId(@Nullable final String string) throws IOException {
+        if (string == null) {
+            return NULL_ID;
+        }
+        var id = stringIds.getInt(string);
+        if (id == NULL_ID) {
+            id = stringIds.size();
+            out.writeByte(STRING);
+            out.writeUTF(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    private int refId(final Ref ref) throws IOException {
+        var id = refIds.getInt(ref);
+        if (id == NULL_ID) {
+            id = refIds.size();
+            out.writeByte(REF);
+            codec.write(out, ref);
+            refIds.put(ref, id);
+        }
+        return id;
+    }
+
+    private static final class Contents<Ref> {
+        final List<String> strings = new ArrayList<>();
+        final List<Ref> refs = new ArrayList<>();
+        final LongList methodOffsets = new LongArrayList();
+        /**
+         * Offsets of the blocks records of the methods, {@link #NULL_ID} if a method has none
+         */
+        final LongList methodBlocksOffsets = new LongArrayList();
+        final IntList methodRefIds = new IntArrayList();
+        final IntSet checkpointedRefIds = new IntOpenHashSet();
+        /**
+         * Mappings of the consecutive parts of the journal each ending at a record boundary,
+         * so every record is read from a single mapping however large the journal grows
+         */
+        final List<Segment> segments = new ArrayList<>();
+        long validLength = 0L;
+        /**
+         * Identity of the file read, so a journal replaced by the compaction is told from the one appended to
+         */
+        @Nullable
+        Object fileKey;
+
+        static <Ref> Contents<Ref> empty() {
+            return new Contents<>();
+        }
+
+        /**
+         * @param reportTail  whether to warn about a truncated tail, which is expected in a journal being written
+         * @param segmentSize maximal size of a mapping, the records must not be larger
+         */
+        static <Ref> Contents<Ref> read(final Path path,
+                                        final RefCodec<Ref> codec,
+                                        final boolean reportTail,
+                                        final int segmentSize) throws IOException {
+            final var contents = Contents.<Ref>empty();
+            contents.readAppended(path, codec, reportTail, segmentSize);
+            return contents;
+        }
+
+        /**
+         * Reads the records appended to the journal since the previous read
+         *
+         * @return {@code false} if the journal has been replaced or truncated since, so the contents are no longer valid
+         */
+        boolean readAppended(final Path path,
+                             final RefCodec<Ref> codec,
+                             final boolean reportTail,
+                             final int segmentSize) throws IOException {
+            try (var channel = FileChannel.open(path, READ)) {
+                final var key = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+                final var size = channel.size();
+                if (validLength > 0L && (!Objects.equals(fileKey, key) || size < validLength)) {
+                    return false;
+                }
+                fileKey = key;
+                if (validLength == 0L) {
+                    final var header = channel.map(FileChannel.MapMode.READ_ONLY, 0L, Math.min(size, HEADER_SIZE));
+                    if (header.remaining() < HEADER_SIZE) {
+                        if (reportTail && size > 0L) {
+                            log.warn("Journal {} has a truncated header", path);
+                        }
+                        return true;
+                    }
+                    if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                        log.warn("Journal {} has an incompatible format and will be discarded", path);
+                        return true;
+                    }
+                    validLength = HEADER_SIZE;
+                }
+                readSegments(channel, size, codec, segmentSize);
+                if (reportTail && validLength < size) {
+                    log.warn("Journal {} tail of {} bytes will be dropped", path, size - validLength);
+                }
+            } catch (NoSuchFileException e) {
+                return validLength == 0L;
+            }
+            return true;
+        }
+
+        /**
+         * Maps and reads the journal from {@link #validLength} segment by segment. A segment ends at the last record
+         * it contains completely, and the next one starts right after it. The reading stops at a record that does not fit
+         * into a whole segment, i.e. the truncated one at the end of the journal.
+         * <p>
+         * The last segment is mapped short if the journal ended within it, so it is remapped to read the appended records
+         * instead of mapping them separately, otherwise a journal read often would end up in lots of tiny mappings.
+         */
+        private void readSegments(final FileChannel channel,
+                                  final long size,
+                                  final RefCodec<Ref> codec,
+                                  final int segmentSize) throws IOException {
+            while (validLength < size) {
+                final var last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                final var extendsLast = last != null && last.buffer().capacity() < segmentSize;
+                final var segmentStart = extendsLast ? last.start() : validLength;
+                final var readStart = validLength;
+                final var segmentLength = Math.min(size - segmentStart, segmentSize);
+                final var buffer = channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentLength);
+                buffer.position(Math.toIntExact(readStart - segmentStart));
+                final var in = new DataInputStream(new ByteBufferInputStream(buffer));
+                var known = true;
+                try {
+                    while (buffer.hasRemaining() && known) {
+                        known = readRecord(segmentStart, buffer, in, codec);
+                        if (known) {
+                            validLength = segmentStart + buffer.position();
+                        }
+                    }
+                } catch (EOFException | BufferUnderflowException e) {
+                    // The record is either truncated or continues in the next segment
+                }
+                if (extendsLast) {
+                    segments.set(segments.size() - 1, new Segment(segmentStart, buffer));
+                } else if (validLength > segmentStart) {
+                    segments.add(new Segment(segmentStart, buffer));
+                }
+                if (!known || segmentStart + buffer.capacity() == size || validLength == readStart && !extendsLast) {
+                    return;
+                }
+            }
+        }
+
+        boolean hasUncheckpointedMethods() {
+            for (int i = 0; i < methodRefIds.size(); ++i) {
+                if (!checkpointedRefIds.contains(methodRefIds.getInt(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        List<Ref> checkpointedRefs() {
+            final var checkpointed = new ArrayList<Ref>(checkpointedRefIds.size());
+            for (final var it = checkpointedRefIds.iterator(); it.hasNext(); ) {
+                checkpointed.add(refs.get(it.nextInt()));
+            }
+            return checkpointed;
+        }
+
+        int forEachCheckpointedMethod(final Consumer<List<Token<Ref>>> onMethod) {
+            return forEachCheckpointedMethod(0L, (method, offset) -> onMethod.accept(method));
+        }
+
+        int forEachCheckpointedMethod(final long fromOffset, final ObjLongConsumer<List<Token<Ref>>> onMethod) {
+            var count = 0;
+            for (int i = firstMethodAtOrAfter(fromOffset); i < methodOffsets.size(); ++i) {
+                if (checkpointedRefIds.contains(methodRefIds.getInt(i))) {
+                    final var offset = methodOffsets.getLong(i);
+                    onMethod.accept(method(i), offset);
+                    ++count;
+                }
+            }
+            return count;
+        }
+
+        /**
+         * Method offsets are increasing, so the index of the first method at or after the offset is binary searched
+         */
+        int firstMethodAtOrAfter(final long offset) {
+            var low = 0;
+            var high = methodOffsets.size();
+            while (low < high) {
+                final var mid = (low + high) >>> 1;
+                if (methodOffsets.getLong(mid) < offset) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        private boolean readRecord(final long segmentStart,
+                                   final ByteBuffer buffer,
+                                   final DataInputStream in,
+                                   final RefCodec<Ref> codec) throws IOException {
+            final var offset = segmentStart + buffer.position();
+            switch (buffer.get()) {
+                case STRING -> strings.add(in.readUTF());
+                case REF -> refs.add(codec.read(in));
+                case METHOD -> {
+                    final var refId = buffer.getInt();
+                    skip(buffer, 2L * Integer.BYTES);
+                    final var tokenCount = buffer.getInt();
+                    if (tokenCount < 0) {
+                        throw new EOFException();
+                    }
+                    skip(buffer, (long) tokenCount * TOKEN_SIZE);
+                    methodOffsets.add(offset);
+                    methodBlocksOffsets.add(NULL_ID);
+                    methodRefIds.add(refId);
+                }
+                case BLOCKS -> {
+                    final var count = buffer.getInt();
+                    if (count < 0) {
+                        throw new EOFException();
+                    }
+                    skip(buffer, (long) count * BLOCK_SIZE);
+                    if (!methodOffsets.isEmpty()) {
+                        methodBlocksOffsets.set(methodBlocksOffsets.size() - 1, offset);
+                    }
+                }
+                case CHECKPOINT -> {
+                    final var count = buffer.getInt();
+                    if (count < 0 || buffer.remaining() < (long) count * Integer.BYTES) {
+                        throw new EOFException();
+                    }
+                    final var ids = new int[count];
+                    for (int i = 0; i < ids.length; ++i) {
+                        ids[i] = buffer.getInt();
+                    }
+                    checkpointedRefIds.addAll(IntArrayList.wrap(ids));
+                }
+                default -> {
+                    log.warn("Unknown journal record kind at {}", offset);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void skip(final ByteBuffer buffer, final long bytes) throws EOFException {
+            if (buffer.remaining() < bytes) {
+                throw new EOFException();
+            }
+            buffer.position(buffer.position() + (int) bytes);
+        }
+
+        private List<Token<Ref>> method(final int index) {
+            final var buffer = recordBuffer(methodOffsets.getLong(index));
+            final var ref = refs.get(buffer.getInt());
+            final var filename = string(buffer.getInt());
+            final var methodName = string(buffer.getInt());
+            final var origin = Token.Origin.of(filename, methodName, ref);
+            final var tokenCount = buffer.getInt();
+            final var tokens = new ArrayList<Token<Ref>>(tokenCount);
+            for (int i = 0; i < tokenCount; ++i) {
+                final var string = string(buffer.getInt());
+                final var lines = LineRange.of(buffer.getInt(), buffer.getInt());
+                tokens.add(Token.of(string, lines, origin));
+            }
+            final var blocksOffset = methodBlocksOffsets.getLong(index);
+            if (blocksOffset == NULL_ID) {
+                return tokens;
+            }
+            // The blocks record may have got into the next segment
+            final var blocksBuffer = recordBuffer(blocksOffset);
+            final var blockCount = blocksBuffer.getInt();
+            final var blocks = new ArrayList<MethodTokens.Block>(blockCount);
+            for (int i = 0; i < blockCount; ++i) {
+                blocks.add(new MethodTokens.Block(blocksBuffer.getLong(), blocksBuffer.getInt(), blocksBuffer.getInt()));
+            }
+            return new MethodTokens<>(tokens, blocks);
+        }
+
+        /**
+         * @return buffer positioned right after the kind of the record at the specified offset
+         */
+        private ByteBuffer recordBuffer(final long offset) {
+            var low = 0;
+            var high = segments.size() - 1;
+            while (low < high) {
+                final var mid = (low + high + 1) >>> 1;
+                if (segments.get(mid).start() <= offset) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            final var segment = segments.get(low);
+            return segment.buffer().duplicate().position(Math.toIntExact(offset - segment.start() + 1));
+        }
+
+        @Nullable
+        private String string(final int id) {
+            return id == NULL_ID ? null : strings.get(id);
+        }
+    }
+
+    private record Segment(long start, ByteBuffer buffer) {
+    }
+
+    /**
+     * Read-only view of the journal contents, the methods are addressed by the offsets of their records.
+     * The view is not thread-safe, it must not be read while being refreshed.
+     */
+    public static final class View<Ref> {
+        private final Path path;
+        private final RefCodec<Ref> codec;
+        private final int segmentSize;
+        private final Contents<Ref> contents;
+
+        private View(final Path path, final RefCodec<Ref> codec, final int segmentSize, final Contents<Ref> contents) {
+            this.path = path;
+            this.codec = codec;
+            this.segmentSize = segmentSize;
+            this.contents = contents;
+        }
+
+        /**
+         * Reads only the records appended to the journal since the view was taken or last refreshed
+         *
+         * @return {@code false} if the journal has been replaced, e.g. compacted, or truncated since,
+         *     so a new view must be taken, as the offsets of this one are no longer valid
+         */
+        public boolean refresh() throws IOException {
+            return contents.readAppended(path, codec, false, segmentSize);
+        }
+
+        /**
+         * Length of the completely written records
+         */
+        public long length() {
+            return contents.validLength;
+        }
+
+        /**
+         * Feeds the methods of checkpointed refs starting at or after the specified offset to the consumer
+         * along with their offsets
+         *
+         * @return method count fed
+         */
+        public int forEachCheckpointedMethod(final long fromOffset, final ObjLongConsumer<List<Token<Ref>>> onMethod) {
+            return contents.forEachCheckpointedMethod(fromOffset, onMethod);
+        }
+
+        /**
+         * @return offset of the first method at or after the specified offset whose ref is not checkpointed yet,
+         *     or {@link #length} if there is no such one
+         */
+        public long firstUncheckpointedMethodOffset(final long fromOffset) {
+            for (int i = contents.firstMethodAtOrAfter(fromOffset); i < contents.methodOffsets.size(); ++i) {
+                if (!contents.checkpointedRefIds.contains(contents.methodRefIds.getInt(i))) {
+                    return contents.methodOffsets.getLong(i);
+                }
+            }
+            return length();
+        }
+
+        /**
+         * @return methods of the checkpointed refs matching the filter
+         */
+        public List<List<Token<Ref>>> methods(final Predicate<Ref> refFilter) {
+            final var methods = new ArrayList<List<Token<Ref>>>();
+            for (int i = 0; i < contents.methodOffsets.size(); ++i) {
+                final var refId = contents.methodRefIds.getInt(i);
+                if (contents.checkpointedRefIds.contains(refId) && refFilter.test(contents.refs.get(refId))) {
+                    methods.add(contents.method(i));
+                }
+            }
+            return methods;
+        }
+
+        /**
+         * @return the method, whose record starts at the specified offset, or {@code null} if there is no such one
+         */
+        @Nullable
+        public List<Token<Ref>> method(final long offset) {
+            final var index = contents.firstMethodAtOrAfter(offset);
+            if (index == contents.methodOffsets.size() || contents.methodOffsets.getLong(index) != offset) {
+                return null;
+            }
+            return contents.method(index);
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final var count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
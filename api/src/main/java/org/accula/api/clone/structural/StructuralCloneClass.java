@@ -0,0 +1,51 @@
+package org.accula.api.clone.structural;
+
+import org.accula.api.clone.engine.Clone;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.token.MethodTokens;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Blocks of the same structural hash. Unlike the exact clone classes, the clones may differ
+ * in the order of the statements, so each clone spans the tokens of its own block.
+ * The blocks are whole statements, so there is nothing to extend them to the left with.
+ *
+ * @author Anton Lamtev
+ */
+final class StructuralCloneClass<Ref> implements CloneClass<Ref> {
+    private final int length;
+    private final List<Clone<Ref>> clones;
+
+    StructuralCloneClass(final int length, final List<MethodTokens<Ref>> methods, final List<MethodTokens.Block> blocks) {
+        this.length = length;
+        final var clones = new ArrayList<Clone<Ref>>(blocks.size());
+        for (int i = 0; i < blocks.size(); ++i) {
+            final var method = methods.get(i);
+            final var block = blocks.get(i);
+            clones.add(new Clone<>(this, method.get(block.from()), method.get(block.to() - 1), block.from()));
+        }
+        this.clones = clones;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public List<Clone<Ref>> clones() {
+        return clones;
+    }
+
+    @Override
+    public boolean leftMaximal() {
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "StructuralCloneClass(length=%d, cloneCount=%d)".formatted(length, clones.size());
+    }
+}
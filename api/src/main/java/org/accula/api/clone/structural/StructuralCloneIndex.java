@@ -0,0 +1,189 @@
+package org.accula.api.clone.structural;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.token.MethodTokens;
+import org.accula.api.token.Token;
+import org.accula.api.util.Sync;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Index of the method blocks by their structural hashes (see {@link MethodTokens}).
+ * <p>
+ * Complements the exact clone engines with the statements and code blocks of the same structure
+ * differing in the order of their statements: such blocks share no long enough common token sequence,
+ * so the exact engines miss them, while their hashes are equal and are looked up in a hash map.
+ * The blocks whose occurrences are all equal token sequences are skipped, since the exact engines report them.
+ *
+ * @author Anton Lamtev
+ */
+public final class StructuralCloneIndex<Ref> {
+    /**
+     * A posting of the block along with its share of the hash map entry
+     */
+    private static final long ESTIMATED_BYTES_PER_BLOCK = 48L;
+    /**
+     * The methods are retained by the index, while the engines may not retain them, e.g. the duplicate ones,
+     * so a token object along with its reference is counted
+     */
+    private static final long ESTIMATED_BYTES_PER_TOKEN = 32L;
+    private static final Comparator<MethodTokens.Block> LARGEST_FIRST = Comparator
+        .comparingInt(MethodTokens.Block::tokenCount)
+        .reversed()
+        .thenComparingInt(MethodTokens.Block::from);
+    private final Sync sync = new Sync();
+    private final List<MethodTokens<Ref>> methods = new ArrayList<>();
+    /**
+     * Occurrences of the blocks encoded as the method index in the high half and the block index in the low half
+     */
+    private final Long2ObjectOpenHashMap<LongArrayList> occurrencesByHash = new Long2ObjectOpenHashMap<>();
+    private final Map<Ref, IntArrayList> methodIndexesByRef = new HashMap<>();
+    private long blockCount;
+    private long tokenCount;
+
+    /**
+     * Indexes the blocks of the methods, the methods carrying no blocks are ignored
+     */
+    public void addAll(final List<List<Token<Ref>>> batch) {
+        sync.write(() -> {
+            for (final var tokens : batch) {
+                if (!(tokens instanceof MethodTokens<Ref> method) || method.blocks().isEmpty()) {
+                    continue;
+                }
+                final var methodIndex = methods.size();
+                methods.add(method);
+                methodIndexesByRef.computeIfAbsent(method.get(0).ref(), ref -> new IntArrayList()).add(methodIndex);
+                final var blocks = method.blocks();
+                for (int i = 0; i < blocks.size(); ++i) {
+                    occurrencesByHash
+                        .computeIfAbsent(blocks.get(i).hash(), hash -> new LongArrayList(2))
+                        .add(occurrence(methodIndex, i));
+                }
+                blockCount += blocks.size();
+                tokenCount += method.size();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Lazily emits the clone classes of the blocks of at least {@code minTokenCount} tokens
+     * having an occurrence in a method of a ref matching {@code refFilter}.
+     * The largest blocks of a method are reported first, and the blocks nested in the reported ones are skipped.
+     */
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter, final int minTokenCount) {
+        return Flux.defer(() -> Flux.fromIterable(sync.read(() -> collectCloneClasses(refFilter, minTokenCount))));
+    }
+
+    public long estimatedSize() {
+        return sync.read(() -> blockCount * ESTIMATED_BYTES_PER_BLOCK
+                               + tokenCount * ESTIMATED_BYTES_PER_TOKEN
+                               + (long) methods.size() * Long.BYTES);
+    }
+
+    private List<CloneClass<Ref>> collectCloneClasses(final Predicate<Ref> refFilter, final int minTokenCount) {
+        final var cloneClasses = new ArrayList<CloneClass<Ref>>();
+        final var visitedHashes = new LongOpenHashSet();
+        methodIndexesByRef.forEach((ref, methodIndexes) -> {
+            if (!refFilter.test(ref)) {
+                return;
+            }
+            for (int i = 0; i < methodIndexes.size(); ++i) {
+                final var blocks = methods.get(methodIndexes.getInt(i))
+                    .blocks()
+                    .stream()
+                    .filter(block -> block.tokenCount() >= minTokenCount)
+                    .sorted(LARGEST_FIRST)
+                    .toList();
+                final var matched = new ArrayList<MethodTokens.Block>();
+                for (final var block : blocks) {
+                    if (isNested(block, matched) || occurrencesByHash.get(block.hash()).size() < 2) {
+                        continue;
+                    }
+                    matched.add(block);
+                    if (!visitedHashes.add(block.hash())) {
+                        continue;
+                    }
+                    final var cloneClass = cloneClass(block);
+                    if (cloneClass != null) {
+                        cloneClasses.add(cloneClass);
+                    }
+                }
+            }
+        });
+        return cloneClasses;
+    }
+
+    /**
+     * @return clone class of the occurrences of the block, or {@code null} if all of them are equal token sequences
+     */
+    @Nullable
+    private CloneClass<Ref> cloneClass(final MethodTokens.Block block) {
+        final var occurrences = occurrencesByHash.get(block.hash());
+        final var cloneMethods = new ArrayList<MethodTokens<Ref>>(occurrences.size());
+        final var cloneBlocks = new ArrayList<MethodTokens.Block>(occurrences.size());
+        var reordered = false;
+        for (int i = 0; i < occurrences.size(); ++i) {
+            final var occurrence = occurrences.getLong(i);
+            final var method = methods.get(methodIndex(occurrence));
+            final var other = method.blocks().get(blockIndex(occurrence));
+            // Guards against the hash collisions: the reordered blocks consist of the same number of tokens
+            if (other.tokenCount() != block.tokenCount()) {
+                continue;
+            }
+            if (!cloneBlocks.isEmpty() && !reordered) {
+                reordered = !sameTokens(cloneMethods.get(0), cloneBlocks.get(0), method, other);
+            }
+            cloneMethods.add(method);
+            cloneBlocks.add(other);
+        }
+        if (!reordered || cloneBlocks.size() < 2) {
+            return null;
+        }
+        return new StructuralCloneClass<>(block.tokenCount(), cloneMethods, cloneBlocks);
+    }
+
+    private static boolean isNested(final MethodTokens.Block block, final List<MethodTokens.Block> matched) {
+        for (final var outer : matched) {
+            if (outer.from() <= block.from() && block.to() <= outer.to()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static <Ref> boolean sameTokens(final MethodTokens<Ref> method,
+                                            final MethodTokens.Block block,
+                                            final MethodTokens<Ref> otherMethod,
+                                            final MethodTokens.Block otherBlock) {
+        for (int i = 0; i < block.tokenCount(); ++i) {
+            if (!method.get(block.from() + i).equals(otherMethod.get(otherBlock.from() + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long occurrence(final int methodIndex, final int blockIndex) {
+        return ((long) methodIndex << Integer.SIZE) | (blockIndex & 0xFFFFFFFFL);
+    }
+
+    private static int methodIndex(final long occurrence) {
+        return (int) (occurrence >>> Integer.SIZE);
+    }
+
+    private static int blockIndex(final long occurrence) {
+        return (int) occurrence;
+    }
+}
@@ -0,0 +1,4 @@
+@NonNullApi
+package org.accula.api.clone.structural;
+
+import org.accula.api.annotation.NonNullApi;
@@ -0,0 +1,27 @@
+package org.accula.api.clone.suffixarray;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+import org.accula.api.clone.engine.Clone;
+import org.accula.api.clone.engine.CloneClass;
+
+import java.util.List;
+
+/**
+ * Clone class formed by an LCP interval of the suffix array having no nested intervals
+ *
+ * @author Anton Lamtev
+ */
+@Value
+class SuffixArrayCloneClass<Ref> implements CloneClass<Ref> {
+    @ToString.Exclude
+    SuffixArrayIndex<Ref> index;
+    int id;
+    int length;
+    @ToString.Exclude
+    @Getter(lazy = true)
+    List<Clone<Ref>> clones = index.clones(this);
+    @Getter(lazy = true)
+    boolean leftMaximal = index.leftMaximal(this);
+}
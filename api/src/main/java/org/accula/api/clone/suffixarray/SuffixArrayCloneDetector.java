@@ -0,0 +1,164 @@
+package org.accula.api.clone.suffixarray;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import lombok.extern.slf4j.Slf4j;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.clone.engine.CloneEngine;
+import org.accula.api.token.Token;
+import org.accula.api.util.Sync;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Suffix array based clone detector.
+ * <p>
+ * Finds exactly the same clone classes as the suffix tree based one, but instead of the tree nodes and edges
+ * it keeps a few int arrays per token, so it takes several times less heap. The price is that a suffix array
+ * cannot be extended: the added sequences are only collected, and the whole {@link SuffixArrayIndex}
+ * is rebuilt in linear time by the first query after the additions, however few sequences have been added.
+ * Thus it is meant for the batch use only, i.e. for the temporary detectors, the sequences of which are all added
+ * before they are queried, and not for the per-project ones receiving the pulls continuously.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class SuffixArrayCloneDetector<Ref> implements CloneEngine<Ref> {
+    /**
+     * Rough upper estimate: a token reference and three ints of the suffix array, the ranks and the clone classes
+     * per token, plus the tokens themselves. Twice as much is taken while the index is being rebuilt.
+     */
+    private static final long ESTIMATED_BYTES_PER_TOKEN = 64L;
+    private final String id;
+    private final Sync sync = new Sync();
+    private final List<List<Token<Ref>>> sequences = new ArrayList<>();
+    private final Map<Ref, IntArrayList> sequenceIndexesByRef = new HashMap<>();
+    private long tokenCount;
+    private volatile SuffixArrayIndex<Ref> index = SuffixArrayIndex.empty();
+
+    public SuffixArrayCloneDetector(final String id) {
+        this.id = id;
+    }
+
+    /**
+     * Sequences are only appended to a list, so there is no point in adding them in parallel
+     */
+    @Override
+    public int parallelism() {
+        return 1;
+    }
+
+    public long addTokens(final List<Token<Ref>> tokens) {
+        return addTokensBatch(List.of(tokens))[0];
+    }
+
+    /**
+     * @return indexes of the added sequences in the order of addition
+     */
+    @Override
+    public long[] addTokensBatch(final List<List<Token<Ref>>> batch) {
+        return sync.write(() -> {
+            final var sequenceIndexes = new long[batch.size()];
+            for (int i = 0; i < sequenceIndexes.length; ++i) {
+                final var tokens = batch.get(i);
+                final var sequenceIndex = sequences.size();
+                sequences.add(tokens);
+                sequenceIndexes[i] = sequenceIndex;
+                tokenCount += tokens.size();
+                if (!tokens.isEmpty()) {
+                    sequenceIndexesByRef.computeIfAbsent(tokens.get(0).ref(), ref -> new IntArrayList()).add(sequenceIndex);
+                }
+            }
+            return sequenceIndexes;
+        });
+    }
+
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> filter) {
+        return cloneClasses(it -> true, filter);
+    }
+
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return Flux
+            .defer(() -> actualIndex().cloneClasses(cheapFilter))
+            .<CloneClass<Ref>>map(cloneClass -> cloneClass)
+            .filter(expensiveFilter);
+    }
+
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter,
+                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return cloneClasses(refFilter, 1, cheapFilter, expensiveFilter);
+    }
+
+    /**
+     * Only the clone classes of the suffixes of the matching sequences are checked.
+     * The suffix array contains all the sequences, so {@code minLength} does not matter.
+     */
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter,
+                                              final int minLength,
+                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return Flux
+            .defer(() -> {
+                final var index = actualIndex();
+                return index.cloneClassesOf(sequenceIndexes(index, refFilter), cheapFilter);
+            })
+            .<CloneClass<Ref>>map(cloneClass -> cloneClass)
+            .filter(expensiveFilter);
+    }
+
+    @Override
+    public long estimatedSize() {
+        return sync.read(() -> tokenCount) * ESTIMATED_BYTES_PER_TOKEN;
+    }
+
+    /**
+     * Drops the built index, which is rebuilt by the next query
+     */
+    @Override
+    public void dispose() {
+        index = SuffixArrayIndex.empty();
+    }
+
+    /**
+     * Rebuilds the index if some sequences have been added since it was built last time
+     */
+    private synchronized SuffixArrayIndex<Ref> actualIndex() {
+        final var current = index;
+        if (sync.read(sequences::size) == current.sequenceCount()) {
+            return current;
+        }
+        final var start = System.nanoTime();
+        final var rebuilt = SuffixArrayIndex.of(sync.read(() -> List.copyOf(sequences)));
+        index = rebuilt;
+        log.info("[{}] Built suffix array of {} methods with {} clone classes in {} ms",
+            id, rebuilt.sequenceCount(), rebuilt.cloneClassCount(), Duration.ofNanos(System.nanoTime() - start).toMillis());
+        return rebuilt;
+    }
+
+    private int[] sequenceIndexes(final SuffixArrayIndex<Ref> index, final Predicate<Ref> refFilter) {
+        return sync.read(() -> {
+            final var matching = new IntArrayList();
+            sequenceIndexesByRef.forEach((ref, indexes) -> {
+                if (!refFilter.test(ref)) {
+                    return;
+                }
+                for (final var sequenceIndex : indexes) {
+                    // The sequences added after the index has been built are not there yet
+                    if (sequenceIndex < index.sequenceCount()) {
+                        matching.add(sequenceIndex);
+                    }
+                }
+            });
+            return matching.toIntArray();
+        });
+    }
+}
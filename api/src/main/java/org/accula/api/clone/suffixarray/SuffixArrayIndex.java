@@ -0,0 +1,250 @@
+package org.accula.api.clone.suffixarray;
+
+import it.unimi.dsi.fastutil.booleans.BooleanArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.ints.IntSet;
+import org.accula.api.clone.engine.Clone;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.token.Token;
+import org.jetbrains.annotations.Nullable;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Immutable suffix array over the token sequences added up to the moment it is built.
+ * <p>
+ * The sequences are concatenated into an int array of the token types, each sequence followed by its own unique separator,
+ * so no common prefix of two suffixes spans several sequences. The suffix array and the LCP array are built in linear time,
+ * and the clone classes are the LCP intervals having no nested intervals, i.e. exactly the suffix tree nodes
+ * all the edges of which are leaves. The LCP array and the text itself are only needed while building.
+ *
+ * @author Anton Lamtev
+ */
+final class SuffixArrayIndex<Ref> {
+    private static final SuffixArrayIndex<?> EMPTY = of(List.of());
+    private final Object[] tokens;
+    private final int[] suffixes;
+    private final int[] ranks;
+    /**
+     * Index of the clone class containing the suffix of the rank, -1 if none
+     */
+    private final int[] cloneClassesByRank;
+    private final int[] cloneClassStarts;
+    private final int[] cloneClassEnds;
+    private final int[] cloneClassLengths;
+    private final int[] sequenceStarts;
+
+    private SuffixArrayIndex(final Object[] tokens,
+                             final int[] suffixes,
+                             final int[] ranks,
+                             final int[] lcp,
+                             final int[] sequenceStarts) {
+        this.tokens = tokens;
+        this.suffixes = suffixes;
+        this.ranks = ranks;
+        this.sequenceStarts = sequenceStarts;
+
+        final var starts = new IntArrayList();
+        final var ends = new IntArrayList();
+        final var lengths = new IntArrayList();
+        forEachLeafInterval(lcp, (start, end, length) -> {
+            starts.add(start);
+            ends.add(end);
+            lengths.add(length);
+        });
+        cloneClassStarts = starts.toIntArray();
+        cloneClassEnds = ends.toIntArray();
+        cloneClassLengths = lengths.toIntArray();
+        cloneClassesByRank = new int[suffixes.length];
+        Arrays.fill(cloneClassesByRank, -1);
+        for (int cloneClass = 0; cloneClass < cloneClassStarts.length; ++cloneClass) {
+            for (int rank = cloneClassStarts[cloneClass]; rank <= cloneClassEnds[cloneClass]; ++rank) {
+                cloneClassesByRank[rank] = cloneClass;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static <Ref> SuffixArrayIndex<Ref> empty() {
+        return (SuffixArrayIndex<Ref>) EMPTY;
+    }
+
+    static <Ref> SuffixArrayIndex<Ref> of(final List<List<Token<Ref>>> sequences) {
+        final var sequenceCount = sequences.size();
+        var n = sequenceCount;
+        for (final var sequence : sequences) {
+            n += sequence.size();
+        }
+        // Separators are [0, sequenceCount), token types are shifted by sequenceCount
+        final var text = new int[n];
+        final var tokens = new Object[n];
+        final var sequenceStarts = new int[sequenceCount + 1];
+        var upper = Math.max(sequenceCount - 1, 0);
+        var position = 0;
+        for (int i = 0; i < sequenceCount; ++i) {
+            sequenceStarts[i] = position;
+            for (final var token : sequences.get(i)) {
+                text[position] = sequenceCount + token.type();
+                tokens[position] = token;
+                upper = Math.max(upper, text[position]);
+                ++position;
+            }
+            text[position++] = i;
+        }
+        sequenceStarts[sequenceCount] = position;
+
+        final var suffixes = SuffixArrays.suffixArray(text, upper);
+        final var ranks = SuffixArrays.rank(suffixes);
+        final var lcp = SuffixArrays.lcp(text, suffixes, ranks);
+        return new SuffixArrayIndex<>(tokens, suffixes, ranks, lcp, sequenceStarts);
+    }
+
+    int sequenceCount() {
+        return sequenceStarts.length - 1;
+    }
+
+    int cloneClassCount() {
+        return cloneClassStarts.length;
+    }
+
+    /**
+     * Lazily emits the left maximal clone classes matching the filter
+     */
+    Flux<SuffixArrayCloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> cheapFilter) {
+        return Flux
+            .range(0, cloneClassStarts.length)
+            .map(this::cloneClass)
+            .filter(cloneClass -> matches(cloneClass, cheapFilter));
+    }
+
+    /**
+     * Lazily emits the left maximal clone classes containing a suffix of at least one of the sequences
+     * with the specified indexes. Only the clone classes of the ranks of their suffixes are checked,
+     * so the cost is proportional to the size of the sequences and not to the size of the index.
+     */
+    Flux<SuffixArrayCloneClass<Ref>> cloneClassesOf(final int[] sequenceIndexes, final Predicate<CloneClass<Ref>> cheapFilter) {
+        return Flux.defer(() -> {
+            final var visitedCloneClasses = new IntOpenHashSet();
+            return Flux
+                .fromStream(Arrays.stream(sequenceIndexes).boxed())
+                .concatMapIterable(sequence -> cloneClassesOfSequence(sequence, visitedCloneClasses, cheapFilter));
+        });
+    }
+
+    /**
+     * Whether the clones of the class are preceded by different tokens or some of them by none
+     */
+    boolean leftMaximal(final SuffixArrayCloneClass<Ref> cloneClass) {
+        final var id = cloneClass.id();
+        final var first = precedingToken(suffixes[cloneClassStarts[id]]);
+        if (first == null) {
+            return true;
+        }
+        for (int rank = cloneClassStarts[id] + 1; rank <= cloneClassEnds[id]; ++rank) {
+            final var preceding = precedingToken(suffixes[rank]);
+            if (preceding == null || !preceding.equals(first)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Clone<Ref>> clones(final SuffixArrayCloneClass<Ref> cloneClass) {
+        final var id = cloneClass.id();
+        final var length = cloneClassLengths[id];
+        final var clones = new ArrayList<Clone<Ref>>(cloneClassEnds[id] - cloneClassStarts[id] + 1);
+        for (int rank = cloneClassStarts[id]; rank <= cloneClassEnds[id]; ++rank) {
+            final var from = suffixes[rank];
+            final var position = from - sequenceStarts[sequenceOf(from)];
+            clones.add(new Clone<>(cloneClass, (Token<Ref>) tokens[from], (Token<Ref>) tokens[from + length - 1], position));
+        }
+        return clones;
+    }
+
+    private List<SuffixArrayCloneClass<Ref>> cloneClassesOfSequence(final int sequence,
+                                                                    final IntSet visitedCloneClasses,
+                                                                    final Predicate<CloneClass<Ref>> cheapFilter) {
+        final var cloneClasses = new ArrayList<SuffixArrayCloneClass<Ref>>();
+        // The separator suffix is excluded, it is unique
+        for (int position = sequenceStarts[sequence]; position < sequenceStarts[sequence + 1] - 1; ++position) {
+            final var id = cloneClassesByRank[ranks[position]];
+            if (id == -1 || !visitedCloneClasses.add(id)) {
+                continue;
+            }
+            final var cloneClass = cloneClass(id);
+            if (matches(cloneClass, cheapFilter)) {
+                cloneClasses.add(cloneClass);
+            }
+        }
+        return cloneClasses;
+    }
+
+    private SuffixArrayCloneClass<Ref> cloneClass(final int id) {
+        return new SuffixArrayCloneClass<>(this, id, cloneClassLengths[id]);
+    }
+
+    /**
+     * Index of the sequence the position belongs to
+     */
+    private int sequenceOf(final int position) {
+        final var index = Arrays.binarySearch(sequenceStarts, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    @Nullable
+    private Object precedingToken(final int position) {
+        // Separators have no tokens
+        return position == 0 ? null : tokens[position - 1];
+    }
+
+    private static <Ref> boolean matches(final SuffixArrayCloneClass<Ref> cloneClass, final Predicate<CloneClass<Ref>> cheapFilter) {
+        return cheapFilter.test(cloneClass) && cloneClass.leftMaximal();
+    }
+
+    /**
+     * Bottom-up traversal of the LCP intervals reporting the ones of a non-zero length having no nested intervals
+     */
+    private static void forEachLeafInterval(final int[] lcp, final IntervalConsumer consumer) {
+        final var n = lcp.length + 1;
+        final var stackLengths = IntArrayList.of(0);
+        final var stackStarts = IntArrayList.of(0);
+        final var stackHasChildren = BooleanArrayList.of(false);
+        for (int i = 1; i <= n; ++i) {
+            final var length = i < n ? lcp[i - 1] : 0;
+            var start = i - 1;
+            var hasChildren = false;
+            while (length < stackLengths.getInt(stackLengths.size() - 1)) {
+                final var top = stackLengths.size() - 1;
+                final var topLength = stackLengths.removeInt(top);
+                final var topStart = stackStarts.removeInt(top);
+                if (!stackHasChildren.removeBoolean(top)) {
+                    consumer.accept(topStart, i - 1, topLength);
+                }
+                start = topStart;
+                // The popped interval is nested either into the one on the stack or into the one to be pushed
+                if (length <= stackLengths.getInt(top - 1)) {
+                    stackHasChildren.set(top - 1, true);
+                    hasChildren = false;
+                } else {
+                    hasChildren = true;
+                }
+            }
+            if (length > stackLengths.getInt(stackLengths.size() - 1)) {
+                stackLengths.add(length);
+                stackStarts.add(start);
+                stackHasChildren.add(hasChildren);
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface IntervalConsumer {
+        void accept(int start, int end, int length);
+    }
+}
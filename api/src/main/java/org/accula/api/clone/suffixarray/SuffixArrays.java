@@ -0,0 +1,188 @@
+package org.accula.api.clone.suffixarray;
+
+import java.util.Arrays;
+
+/**
+ * Linear time suffix array and LCP array construction
+ *
+ * @author Anton Lamtev
+ */
+final class SuffixArrays {
+    private SuffixArrays() {
+    }
+
+    /**
+     * Builds the suffix array of the text by induced sorting (SA-IS)
+     *
+     * @param text  the text, each symbol of which is in range [0, upper]
+     * @param upper the maximal symbol of the text
+     * @return the start positions of the text suffixes in their lexicographical order
+     */
+    static int[] suffixArray(final int[] text, final int upper) {
+        final var n = text.length;
+        if (n == 0) {
+            return new int[0];
+        }
+        if (n == 1) {
+            return new int[]{0};
+        }
+        if (n == 2) {
+            return text[0] < text[1] ? new int[]{0, 1} : new int[]{1, 0};
+        }
+
+        final var sa = new int[n];
+        // isS[i] is true if the suffix starting at i is smaller than the one starting at i + 1 (S-type), L-type otherwise
+        final var isS = new boolean[n];
+        for (int i = n - 2; i >= 0; --i) {
+            isS[i] = text[i] == text[i + 1] ? isS[i + 1] : text[i] < text[i + 1];
+        }
+        // Bucket bounds: sumL[c] is the start of the L-type bucket of c, sumS[c] is the start of the S-type one
+        final var sumL = new int[upper + 1];
+        final var sumS = new int[upper + 1];
+        for (int i = 0; i < n; ++i) {
+            if (isS[i]) {
+                if (text[i] < upper) {
+                    ++sumL[text[i] + 1];
+                }
+            } else {
+                ++sumS[text[i]];
+            }
+        }
+        for (int c = 0; c <= upper; ++c) {
+            sumS[c] += sumL[c];
+            if (c < upper) {
+                sumL[c + 1] += sumS[c];
+            }
+        }
+
+        // Leftmost S-type positions (LMS)
+        final var lmsIndexes = new int[n + 1];
+        Arrays.fill(lmsIndexes, -1);
+        var lmsCount = 0;
+        for (int i = 1; i < n; ++i) {
+            if (!isS[i - 1] && isS[i]) {
+                lmsIndexes[i] = lmsCount++;
+            }
+        }
+        final var lms = new int[lmsCount];
+        for (int i = 1, j = 0; i < n; ++i) {
+            if (!isS[i - 1] && isS[i]) {
+                lms[j++] = i;
+            }
+        }
+
+        induce(text, upper, isS, sumL, sumS, lms, sa);
+        if (lmsCount == 0) {
+            return sa;
+        }
+
+        // LMS substrings are sorted now, they are named by their ranks to sort the LMS suffixes recursively
+        final var sortedLms = new int[lmsCount];
+        for (int i = 0, j = 0; i < n; ++i) {
+            if (lmsIndexes[sa[i]] != -1) {
+                sortedLms[j++] = sa[i];
+            }
+        }
+        final var reducedText = new int[lmsCount];
+        var reducedUpper = 0;
+        reducedText[lmsIndexes[sortedLms[0]]] = 0;
+        for (int i = 1; i < lmsCount; ++i) {
+            var left = sortedLms[i - 1];
+            var right = sortedLms[i];
+            final var leftEnd = lmsIndexes[left] + 1 < lmsCount ? lms[lmsIndexes[left] + 1] : n;
+            final var rightEnd = lmsIndexes[right] + 1 < lmsCount ? lms[lmsIndexes[right] + 1] : n;
+            var same = true;
+            if (leftEnd - left != rightEnd - right) {
+                same = false;
+            } else {
+                while (left < leftEnd && text[left] == text[right]) {
+                    ++left;
+                    ++right;
+                }
+                // The last LMS substring ends with a virtual sentinel, so it is unique
+                if (left == n || right == n || text[left] != text[right]) {
+                    same = false;
+                }
+            }
+            if (!same) {
+                ++reducedUpper;
+            }
+            reducedText[lmsIndexes[sortedLms[i]]] = reducedUpper;
+        }
+
+        final var reducedSa = suffixArray(reducedText, reducedUpper);
+        for (int i = 0; i < lmsCount; ++i) {
+            sortedLms[i] = lms[reducedSa[i]];
+        }
+        induce(text, upper, isS, sumL, sumS, sortedLms, sa);
+        return sa;
+    }
+
+    /**
+     * Builds the LCP array by the Kasai algorithm
+     *
+     * @param rank the inverse suffix array
+     * @return the array, the i-th element of which is the length of the longest common prefix
+     *     of the suffixes {@code sa[i]} and {@code sa[i + 1]}
+     */
+    static int[] lcp(final int[] text, final int[] sa, final int[] rank) {
+        final var n = text.length;
+        final var lcp = new int[Math.max(n - 1, 0)];
+        var h = 0;
+        for (int i = 0; i < n; ++i) {
+            if (h > 0) {
+                --h;
+            }
+            if (rank[i] == 0) {
+                continue;
+            }
+            final var j = sa[rank[i] - 1];
+            while (j + h < n && i + h < n && text[j + h] == text[i + h]) {
+                ++h;
+            }
+            lcp[rank[i] - 1] = h;
+        }
+        return lcp;
+    }
+
+    static int[] rank(final int[] sa) {
+        final var rank = new int[sa.length];
+        for (int i = 0; i < sa.length; ++i) {
+            rank[sa[i]] = i;
+        }
+        return rank;
+    }
+
+    private static void induce(final int[] text,
+                               final int upper,
+                               final boolean[] isS,
+                               final int[] sumL,
+                               final int[] sumS,
+                               final int[] lms,
+                               final int[] sa) {
+        final var n = text.length;
+        Arrays.fill(sa, -1);
+        final var buckets = new int[upper + 1];
+        System.arraycopy(sumS, 0, buckets, 0, upper + 1);
+        for (final var position : lms) {
+            if (position != n) {
+                sa[buckets[text[position]]++] = position;
+            }
+        }
+        System.arraycopy(sumL, 0, buckets, 0, upper + 1);
+        sa[buckets[text[n - 1]]++] = n - 1;
+        for (int i = 0; i < n; ++i) {
+            final var position = sa[i];
+            if (position >= 1 && !isS[position - 1]) {
+                sa[buckets[text[position - 1]]++] = position - 1;
+            }
+        }
+        System.arraycopy(sumL, 0, buckets, 0, upper + 1);
+        for (int i = n - 1; i >= 0; --i) {
+            final var position = sa[i];
+            if (position >= 1 && isS[position - 1]) {
+                sa[--buckets[text[position - 1] + 1]] = position - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.accula.api.clone.suffixtree;
+
+import com.suhininalex.suffixtree.Node;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.ToString;
+import lombok.Value;
+import org.accula.api.clone.engine.Clone;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.token.Token;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Clone class formed by a suffix tree node all the edges of which are leaves
+ *
+ * @author Anton Lamtev
+ */
+@Value
+public class SuffixTreeCloneClass<Ref> implements CloneClass<Ref> {
+    @ToString.Exclude
+    Node node;
+    int length;
+    @ToString.Exclude
+    @Getter(value = AccessLevel.PRIVATE, lazy = true)
+    Leaves<Ref> leaves = traverseLeaves();
+
+    /**
+     * The length is computed eagerly, since it is the first thing any query checks
+     */
+    public SuffixTreeCloneClass(final Node node) {
+        this.node = node;
+        this.length = SuffixTreeUtils.depth(node);
+    }
+
+    @Override
+    public List<Clone<Ref>> clones() {
+        return leaves().clones();
+    }
+
+    @Override
+    public boolean leftMaximal() {
+        return leaves().leftMaximal();
+    }
+
+    /**
+     * Collects the clones and checks their preceding tokens in a single traversal of the node leaves
+     */
+    private Leaves<Ref> traverseLeaves() {
+        final var terminalMap = SuffixTreeUtils.terminalMap(node);
+        final var clones = new ArrayList<Clone<Ref>>(terminalMap.size());
+        var leftMaximal = false;
+        @Nullable Token<Ref> preceding = null;
+        for (final var entry : terminalMap.object2IntEntrySet()) {
+            final var edge = entry.getKey();
+            final var offset = entry.getIntValue();
+            final var to = edge.getEnd() - offset;
+            final var from = to - length + 1;
+            clones.add(new Clone<>(
+                this,
+                SuffixTreeUtils.get(edge, from),
+                SuffixTreeUtils.get(edge, to),
+                from
+            ));
+            if (leftMaximal) {
+                continue;
+            }
+            if (from == 0) {
+                leftMaximal = true;
+                continue;
+            }
+            final Token<Ref> current = SuffixTreeUtils.get(edge, from - 1);
+            leftMaximal = preceding != null && !Objects.equals(preceding, current);
+            preceding = current;
+        }
+        return new Leaves<>(clones, leftMaximal);
+    }
+
+    private record Leaves<Ref>(List<Clone<Ref>> clones, boolean leftMaximal) {
+    }
+}
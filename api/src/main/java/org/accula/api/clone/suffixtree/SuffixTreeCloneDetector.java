@@ -1,89 +1,228 @@
 package org.accula.api.clone.suffixtree;
 
-import com.suhininalex.suffixtree.Edge;
-import com.suhininalex.suffixtree.SuffixTree;
 import lombok.extern.slf4j.Slf4j;
-import org.accula.api.token.TraverseUtils;
-import org.accula.api.util.Sync;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.clone.engine.CloneEngine;
+import org.accula.api.token.Token;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.scheduler.Schedulers;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Predicate;
-import java.util.stream.Stream;
 
 /**
+ * Suffix tree based clone detector.
+ * <p>
+ * The token sequences are partitioned between {@code shardCount} independent suffix trees ({@link SuffixTreeShard}s),
+ * each guarded by its own lock, so concurrently added batches are inserted in parallel.
+ * With a single shard the clone classes are found right in its tree. With several shards the clone classes
+ * spanning the shards are found by a merge phase: the sequences of all the shards sharing at least the minimal
+ * clone length tokens with the queried ones are collected into a temporary tree, where the clone classes are searched for.
+ * The temporary tree is built anew by each query, which makes a pull query several times as expensive as with a single
+ * shard, and a whole tree query as expensive as building the tree from scratch, so a single shard is the default,
+ * and several ones only pay off when the indexing of large projects is the bottleneck.
+ * <p>
+ * The token sequences are also indexed by their refs, so the clone classes of particular refs (e.g. of a pull)
+ * can be found without traversing the whole tree.
+ *
  * @author Anton Lamtev
  */
 @Slf4j
-public final class SuffixTreeCloneDetector<Token extends Comparable<Token>, Ref> {
-    private final SuffixTree<Token> suffixTree = new SuffixTree<>();
-    private final Sync sync = new Sync();
+public final class SuffixTreeCloneDetector<Ref> implements CloneEngine<Ref> {
+    /**
+     * Rough upper estimate: a generalized suffix tree has at most two nodes and two edges per token,
+     * and the tokens themselves and the sequence lists are retained as well.
+     * Can be verified with {@code SuffixTreeCloneDetectorBenchmark.retainedHeap}.
+     */
+    private static final long ESTIMATED_BYTES_PER_TOKEN = 200L;
+    private final List<SuffixTreeShard<Ref>> shards;
+    private final AtomicInteger nextShard = new AtomicInteger();
     private final String id;
+    private final LongAdder addedMethodCount = new LongAdder();
+    private final LongAdder addedTokenCount = new LongAdder();
+    private final Map<Ref, Queue<List<Token<Ref>>>> sequencesByRef = new ConcurrentHashMap<>();
+    private final Disposable nodeCountTimer;
 
     public SuffixTreeCloneDetector(final String id) {
+        this(id, 1);
+    }
+
+    public SuffixTreeCloneDetector(final String id, final int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("shardCount MUST be positive, actual: " + shardCount);
+        }
         this.id = id;
-        Flux.interval(Duration.ofMinutes(5L), Schedulers.single())
+        final var shards = new ArrayList<SuffixTreeShard<Ref>>(shardCount);
+        for (int i = 0; i < shardCount; ++i) {
+            shards.add(new SuffixTreeShard<>());
+        }
+        this.shards = List.copyOf(shards);
+        nodeCountTimer = Flux.interval(Duration.ofMinutes(5L), Schedulers.single())
                 .doOnNext(next ->
-                        log.info("[{}] Node count = {}", id, nodeCount()))
+                        log.info("[{}] Node count = {}, method count = {}, token count = {}",
+                                id, nodeCount(), addedMethodCount.sum(), addedTokenCount.sum()))
                 .name("Suffix tree node count timer")
                 .subscribe();
     }
 
-    public long addTokens(final List<Token> tokens) {
-        try {
-            return sync.write(() -> suffixTree.addSequence(tokens));
-        } finally {
-            log.info("[{}] Added {} tokens to suffix tree", id, tokens.size());
+    /**
+     * Number of shards
+     */
+    @Override
+    public int parallelism() {
+        return shards.size();
+    }
+
+    @Override
+    public long estimatedSize() {
+        return addedTokenCount.sum() * ESTIMATED_BYTES_PER_TOKEN;
+    }
+
+    /**
+     * Stops the periodic node count logging, which otherwise keeps the detector reachable forever
+     */
+    @Override
+    public void dispose() {
+        nodeCountTimer.dispose();
+    }
+
+    public long addTokens(final List<Token<Ref>> tokens) {
+        return addTokensBatch(List.of(tokens))[0];
+    }
+
+    /**
+     * Adds all the specified token sequences to the next shard under a single write lock acquisition,
+     * so batches added concurrently are inserted into different shards in parallel
+     *
+     * @return ids of the added sequences in the same order, unique within a shard
+     */
+    @Override
+    public long[] addTokensBatch(final List<List<Token<Ref>>> batch) {
+        if (batch.isEmpty()) {
+            return new long[0];
+        }
+        final var start = System.nanoTime();
+        final var shard = shards.get(Math.floorMod(nextShard.getAndIncrement(), shards.size()));
+        final var sequenceIds = shard.addAll(batch);
+        var tokenCount = 0L;
+        for (final var tokens : batch) {
+            tokenCount += tokens.size();
+            // Indexed only after being added to the tree, so an indexed sequence is always present in its shard
+            if (!tokens.isEmpty()) {
+                sequencesByRef.computeIfAbsent(tokens.get(0).ref(), ref -> new ConcurrentLinkedQueue<>()).add(tokens);
+            }
         }
+        final var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        addedMethodCount.add(sequenceIds.length);
+        addedTokenCount.add(tokenCount);
+        log.info("[{}] Added {} methods ({} tokens) to suffix tree in {} ms",
+                id, sequenceIds.length, tokenCount, elapsed.toMillis());
+        return sequenceIds;
     }
 
-    public List<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> filter) {
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> filter) {
         return cloneClasses(it -> true, filter);
     }
 
-    public List<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> cheapFilter,
+    /**
+     * Traverses the whole tree. With several shards all the sequences are collected into a temporary tree,
+     * which makes it as expensive as building the tree from scratch.
+     */
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> cheapFilter,
                                               final Predicate<CloneClass<Ref>> expensiveFilter) {
-        final var cloneClasses =  sync.read(
-            () -> cloneClasses()
-                .filter(cheapFilter)
-                .toList()
-        );
+        return Flux
+            .defer(() -> {
+                if (shards.size() == 1) {
+                    return shards.get(0).cloneClasses(cheapFilter);
+                }
+                final var merged = new SuffixTreeShard<Ref>();
+                merged.addAll(sequences(ref -> true));
+                return merged.cloneClasses(cheapFilter);
+            })
+            .<CloneClass<Ref>>map(cloneClass -> cloneClass)
+            .filter(expensiveFilter);
+    }
 
-        final var superclassesByClassNode = SuffixTreeUtils.superclassesByClassNode(cloneClasses);
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter,
+                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return cloneClasses(refFilter, 1, cheapFilter, expensiveFilter);
+    }
 
-        return cloneClasses
-            .stream()
-            .filter(cloneClass -> {
-                final var superclass = superclassesByClassNode.get(cloneClass.node());
-                if (superclass == null) {
-                    return true;
+    /**
+     * Emits the same clone classes as {@link #cloneClasses(Predicate, Predicate)} does, but only those
+     * containing at least one clone of a ref matching {@code refFilter}
+     * and having at least {@code minLength} tokens (shorter clone classes may be emitted as well).
+     * Instead of traversing the whole tree, the suffixes of the token sequences of the matching refs are walked down
+     * from the root, and only the nodes their leaves hang from are checked, so the query cost is proportional
+     * to the size of the matching sequences and not to the size of the tree.
+     * <p>
+     * With several shards, the temporary tree contains the matching sequences and the ones sharing at least
+     * {@code minLength} tokens with them, i.e. all the occurrences of each clone of the required length,
+     * so its clone classes of that length and their left maximality are exactly the same as of a single tree.
+     */
+    @Override
+    public Flux<CloneClass<Ref>> cloneClasses(final Predicate<Ref> refFilter,
+                                              final int minLength,
+                                              final Predicate<CloneClass<Ref>> cheapFilter,
+                                              final Predicate<CloneClass<Ref>> expensiveFilter) {
+        return Flux
+            .defer(() -> {
+                final var sequences = sequences(refFilter);
+                if (shards.size() == 1) {
+                    return shards.get(0).cloneClassesOf(sequences, cheapFilter);
                 }
-                return cloneClass.cloneCount() > superclass.cloneCount();
+                final var merged = new SuffixTreeShard<Ref>();
+                merged.addAll(mergeCandidates(sequences, refFilter, Math.max(minLength, 1)));
+                return merged.cloneClassesOf(sequences, cheapFilter);
             })
-            .filter(expensiveFilter)
+            .<CloneClass<Ref>>map(cloneClass -> cloneClass)
+            .filter(expensiveFilter);
+    }
+
+    private List<List<Token<Ref>>> sequences(final Predicate<Ref> refFilter) {
+        return sequencesByRef
+            .entrySet()
+            .stream()
+            .filter(entry -> refFilter.test(entry.getKey()))
+            .flatMap(entry -> entry.getValue().stream())
             .toList();
     }
 
-    private Stream<CloneClass<Ref>> cloneClasses() {
-        return TraverseUtils
-                .dfs(suffixTree.getRoot(), SuffixTreeUtils::terminalNodes)
-                .filter(SuffixTreeUtils::isCloneNode)
-                .map(CloneClass<Ref>::new);
+    private List<List<Token<Ref>>> mergeCandidates(final List<List<Token<Ref>>> sequences,
+                                                   final Predicate<Ref> refFilter,
+                                                   final int minLength) {
+        final var candidates = new ArrayList<>(sequences);
+        final var visitedSequences = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final var shard : shards) {
+            for (final var sequence : sequences) {
+                shard.forEachSequenceSharing(sequence, minLength, visitedSequences, candidate -> {
+                    // The sequences of the matching refs are already there
+                    if (!candidate.isEmpty() && !refFilter.test(candidate.get(0).ref())) {
+                        candidates.add(candidate);
+                    }
+                });
+            }
+        }
+        return candidates;
     }
 
     private long nodeCount() {
-        return sync.read(() ->
-            TraverseUtils
-                .dfs(suffixTree.getRoot(), node -> node
-                    .getEdges()
-                    .stream()
-                    .map(Edge::getTerminal)
-                    .filter(Objects::nonNull)
-                )
-                .count()
-        );
+        return shards
+            .stream()
+            .mapToLong(SuffixTreeShard::nodeCount)
+            .sum();
     }
 }
@@ -0,0 +1,182 @@
+package org.accula.api.clone.suffixtree;
+
+import com.suhininalex.suffixtree.Edge;
+import com.suhininalex.suffixtree.Node;
+import com.suhininalex.suffixtree.SuffixTree;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.token.Token;
+import org.accula.api.token.TraverseUtils;
+import org.accula.api.util.Sync;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SynchronousSink;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Suffix tree guarded by its own lock.
+ * <p>
+ * Readers never hold the lock for a whole tree traversal: the tree is traversed in chunks
+ * of at most {@link #TRAVERSAL_CHUNK_NODE_COUNT} nodes, and the lock is released between the chunks,
+ * so a large pull being indexed and clone queries of the same project interleave instead of waiting for each other.
+ * Since the tree only grows and its nodes are never removed, the traversal just resumes from the nodes
+ * remaining on its stack, and the sequences added before the traversal has started are always observed.
+ *
+ * @author Anton Lamtev
+ */
+final class SuffixTreeShard<Ref> {
+    private static final int TRAVERSAL_CHUNK_NODE_COUNT = 4096;
+    private final SuffixTree<Token<Ref>> suffixTree = new SuffixTree<>();
+    private final Sync sync = new Sync(true);
+
+    /**
+     * Adds all the specified token sequences under a single write lock acquisition
+     *
+     * @return ids of the added sequences in the same order
+     */
+    long[] addAll(final List<List<Token<Ref>>> sequences) {
+        return sync.write(() -> {
+            final var sequenceIds = new long[sequences.size()];
+            for (int i = 0; i < sequenceIds.length; ++i) {
+                sequenceIds[i] = suffixTree.addSequence(sequences.get(i));
+            }
+            return sequenceIds;
+        });
+    }
+
+    /**
+     * Lazily emits the left maximal clone classes of the tree matching the filter.
+     * Each clone class is searched for while holding the read lock for no more than {@link #TRAVERSAL_CHUNK_NODE_COUNT}
+     * nodes, and only the traversal stack is kept in between, so a query takes no memory proportional to the tree size.
+     */
+    Flux<SuffixTreeCloneClass<Ref>> cloneClasses(final Predicate<CloneClass<Ref>> cheapFilter) {
+        return Flux.generate(
+            () -> sync.read(() -> TraverseUtils.dfsIterator(suffixTree.getRoot(), SuffixTreeUtils::terminalNodes)),
+            (Iterator<Node> nodes, SynchronousSink<SuffixTreeCloneClass<Ref>> sink) -> {
+                final var cloneClass = sync.read(() -> nextCloneClass(nodes, cheapFilter));
+                if (cloneClass.isPresent()) {
+                    sink.next(cloneClass.get());
+                } else if (!nodes.hasNext()) {
+                    sink.complete();
+                }
+                return nodes;
+            });
+    }
+
+    /**
+     * Lazily emits the left maximal clone classes containing a suffix of at least one of the specified sequences,
+     * all of which MUST have been added to this shard.
+     * The suffixes of the sequences are walked down from the root, and only the nodes their leaves hang from are checked,
+     * so the cost is proportional to the size of the sequences and not to the size of the tree.
+     */
+    Flux<SuffixTreeCloneClass<Ref>> cloneClassesOf(final Collection<List<Token<Ref>>> sequences,
+                                                   final Predicate<CloneClass<Ref>> cheapFilter) {
+        return Flux.defer(() -> {
+            final var visitedNodes = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+            return Flux
+                .fromIterable(sequences)
+                .concatMapIterable(sequence -> sync.read(() -> cloneClassesOfSequence(sequence, visitedNodes, cheapFilter)));
+        });
+    }
+
+    /**
+     * Feeds the sequences of this shard sharing at least {@code minLength} consecutive tokens
+     * with the specified sequence to the consumer. Each sequence is fed once per {@code visitedSequences} set.
+     * The read lock is held for a single suffix walk or for no more than {@link #TRAVERSAL_CHUNK_NODE_COUNT} edges
+     * of the subtree below it, since the subtree of a common token sequence may span a large part of the tree.
+     */
+    void forEachSequenceSharing(final List<Token<Ref>> sequence,
+                                final int minLength,
+                                final Set<Object> visitedSequences,
+                                final Consumer<List<Token<Ref>>> consumer) {
+        final var visitedEdges = Collections.newSetFromMap(new IdentityHashMap<Edge, Boolean>());
+        final Consumer<Edge> visitor = edge -> {
+            if (edge.getTerminal() == null && visitedSequences.add(edge.getSequence())) {
+                consumer.accept(SuffixTreeUtils.tokens(edge.getSequence()));
+            }
+        };
+        for (int suffix = 0; suffix + minLength <= sequence.size(); ++suffix) {
+            final var from = suffix;
+            final var edge = sync.read(() -> SuffixTreeUtils.edgeAtDepth(suffixTree.getRoot(), sequence, from, minLength));
+            if (edge == null || !visitedEdges.add(edge)) {
+                continue;
+            }
+            final var edges = SuffixTreeUtils.edgeIterator(edge);
+            var hasMoreEdges = true;
+            while (hasMoreEdges) {
+                hasMoreEdges = sync.read(() -> traverseChunk(edges, visitor));
+            }
+        }
+    }
+
+    long nodeCount() {
+        final var count = new long[1];
+        traverse(node -> ++count[0]);
+        return count[0];
+    }
+
+    private List<SuffixTreeCloneClass<Ref>> cloneClassesOfSequence(final List<Token<Ref>> sequence,
+                                                                   final Set<Node> visitedNodes,
+                                                                   final Predicate<CloneClass<Ref>> cheapFilter) {
+        final var cloneClasses = new ArrayList<SuffixTreeCloneClass<Ref>>();
+        for (final var node : SuffixTreeUtils.leafParents(suffixTree.getRoot(), sequence)) {
+            if (!visitedNodes.add(node) || !SuffixTreeUtils.isCloneNode(node)) {
+                continue;
+            }
+            final var cloneClass = new SuffixTreeCloneClass<Ref>(node);
+            if (matches(cloneClass, cheapFilter)) {
+                cloneClasses.add(cloneClass);
+            }
+        }
+        return cloneClasses;
+    }
+
+    private Optional<SuffixTreeCloneClass<Ref>> nextCloneClass(final Iterator<Node> nodes, final Predicate<CloneClass<Ref>> cheapFilter) {
+        for (int i = 0; i < TRAVERSAL_CHUNK_NODE_COUNT && nodes.hasNext(); ++i) {
+            final var node = nodes.next();
+            if (!SuffixTreeUtils.isCloneNode(node)) {
+                continue;
+            }
+            final var cloneClass = new SuffixTreeCloneClass<Ref>(node);
+            if (matches(cloneClass, cheapFilter)) {
+                return Optional.of(cloneClass);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * MUST be called while the lock is held, since the clones are collected by the left maximality check,
+     * and not lazily by the expensive filter
+     */
+    private static <Ref> boolean matches(final SuffixTreeCloneClass<Ref> cloneClass, final Predicate<CloneClass<Ref>> cheapFilter) {
+        return cheapFilter.test(cloneClass) && cloneClass.leftMaximal();
+    }
+
+    /**
+     * Pre-order traversal of the tree internal nodes holding the read lock
+     * for no more than {@link #TRAVERSAL_CHUNK_NODE_COUNT} nodes at a time
+     */
+    private void traverse(final Consumer<Node> visitor) {
+        final var nodes = sync.read(() -> TraverseUtils.dfsIterator(suffixTree.getRoot(), SuffixTreeUtils::terminalNodes));
+        var hasMoreNodes = true;
+        while (hasMoreNodes) {
+            hasMoreNodes = sync.read(() -> traverseChunk(nodes, visitor));
+        }
+    }
+
+    private static <T> boolean traverseChunk(final Iterator<T> nodes, final Consumer<T> visitor) {
+        for (int i = 0; i < TRAVERSAL_CHUNK_NODE_COUNT && nodes.hasNext(); ++i) {
+            visitor.accept(nodes.next());
+        }
+        return nodes.hasNext();
+    }
+}
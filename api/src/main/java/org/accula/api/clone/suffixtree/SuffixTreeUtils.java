@@ -6,13 +6,13 @@ import it.unimi.dsi.fastutil.objects.Object2IntMap;
 import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
 import org.accula.api.token.Token;
 import org.accula.api.token.TraverseUtils;
-import org.accula.api.util.Lambda;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Collection;
-import java.util.IdentityHashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
-import java.util.stream.Stream;
+import java.util.function.Consumer;
 
 /**
  * @author Anton Lamtev
@@ -21,14 +21,15 @@ final class SuffixTreeUtils {
     private SuffixTreeUtils() {
     }
 
-    static Stream<Edge> parentEdges(final Node root) {
-        final var parentEdge = root.getParentEdge();
-        if (parentEdge == null) {
-            return Stream.empty();
+    /**
+     * @return number of tokens on the path from the tree root to the node
+     */
+    static int depth(final Node node) {
+        var depth = 0;
+        for (var parentEdge = node.getParentEdge(); parentEdge != null; parentEdge = parentEdge.getParent().getParentEdge()) {
+            depth += length(parentEdge);
         }
-        return Stream.concat(
-                Stream.of(parentEdge),
-                parentEdges(parentEdge.getParent()));
+        return depth;
     }
 
     static int length(final Edge edge) {
@@ -36,26 +37,17 @@ final class SuffixTreeUtils {
     }
 
     static Object2IntMap<Edge> terminalMap(final Node root) {
-        return root
-            .getEdges()
-            .stream()
-            .flatMap(edge -> TraverseUtils
-                .dfs(edge, e -> {
-                    final var terminal = e.getTerminal();
-                    if (terminal == null) {
-                        return Stream.empty();
-                    }
-                    return terminal.getEdges().stream();
-                }))
-            .filter(path -> path.getTerminal() == null)
-            .collect(
-                Object2IntOpenHashMap::new,
-                (map, path) -> {
-                    final var offset = map.getOrDefault(path.getParent().getParentEdge(), 0);
-                    map.put(path, offset + length(path));
-                },
-                Lambda.illegalState()
-            );
+        final var terminalMap = new Object2IntOpenHashMap<Edge>();
+        for (final var edge : root.getEdges()) {
+            TraverseUtils.dfs(edge, SuffixTreeUtils::childEdges, path -> {
+                if (path.getTerminal() == null) {
+                    final var offset = terminalMap.getOrDefault(path.getParent().getParentEdge(), 0);
+                    terminalMap.put(path, offset + length(path));
+                }
+                return true;
+            });
+        }
+        return terminalMap;
     }
 
     @SuppressWarnings("unchecked")
@@ -63,12 +55,122 @@ final class SuffixTreeUtils {
         return (Token<Ref>) edge.getSequence().get(index);
     }
 
-    static Stream<Node> terminalNodes(final Node node) {
-        return node
-                .getEdges()
-                .stream()
-                .map(Edge::getTerminal)
-                .filter(Objects::nonNull);
+    static void terminalNodes(final Node node, final Consumer<? super Node> action) {
+        for (final var edge : node.getEdges()) {
+            final var terminal = edge.getTerminal();
+            if (terminal != null) {
+                action.accept(terminal);
+            }
+        }
+    }
+
+    private static void childEdges(final Edge edge, final Consumer<? super Edge> action) {
+        final var terminal = edge.getTerminal();
+        if (terminal == null) {
+            return;
+        }
+        for (final var child : terminal.getEdges()) {
+            action.accept(child);
+        }
+    }
+
+    /**
+     * Finds the nodes the leaves of all the suffixes of the sequence added to the tree hang from.
+     * Each suffix is walked down from the node the suffix link of the previous suffix leaf parent points to,
+     * and whole edges are skipped comparing their first tokens only, since the suffixes are known to be present,
+     * so all the suffixes are walked in time linear in the sequence length.
+     *
+     * @return leaf parent node of each suffix in the order of the suffixes
+     */
+    static <Ref> List<Node> leafParents(final Node root, final List<Token<Ref>> sequence) {
+        final var size = sequence.size();
+        final var leafParents = new ArrayList<Node>(size);
+        var node = root;
+        // Number of the suffix tokens on the path from the root to the node
+        var depth = 0;
+        for (int suffix = 0; suffix < size; ++suffix) {
+            var position = suffix + depth;
+            while (position < size) {
+                final var edge = childEdge(node, sequence.get(position));
+                if (edge == null || edge.getTerminal() == null || position + length(edge) > size) {
+                    break;
+                }
+                node = edge.getTerminal();
+                depth += length(edge);
+                position += length(edge);
+            }
+            leafParents.add(node);
+
+            final var suffixLink = node.getSuffixLink();
+            if (node == root || suffixLink == null) {
+                node = root;
+                depth = 0;
+            } else {
+                node = suffixLink;
+                depth -= 1;
+            }
+        }
+        return leafParents;
+    }
+
+    /**
+     * Walks the {@code length} tokens of the sequence starting at {@code from} down from the root
+     *
+     * @return edge the walk ends on or {@code null} if the tokens are not present in the tree
+     */
+    @Nullable
+    static <Ref> Edge edgeAtDepth(final Node root, final List<Token<Ref>> sequence, final int from, final int length) {
+        var node = root;
+        var position = from;
+        final var end = from + length;
+        while (true) {
+            final var edge = childEdge(node, sequence.get(position));
+            if (edge == null) {
+                return null;
+            }
+            final var edgeSequence = edge.getSequence();
+            for (int i = edge.getBegin(); i <= edge.getEnd() && position < end; ++i, ++position) {
+                if (!sequence.get(position).equals(edgeSequence.get(i))) {
+                    return null;
+                }
+            }
+            if (position == end) {
+                return edge;
+            }
+            node = edge.getTerminal();
+            if (node == null) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Pre-order iterator over the edge and all the edges below it, the leaf edges hold the sequences of the leaves
+     */
+    static Iterator<Edge> edgeIterator(final Edge edge) {
+        return TraverseUtils.dfsIterator(edge, SuffixTreeUtils::childEdges);
+    }
+
+    /**
+     * @return token prefix of a sequence stored in the tree, i.e. the sequence without the terminating element
+     */
+    @SuppressWarnings("unchecked")
+    static <Ref> List<Token<Ref>> tokens(final List<?> sequence) {
+        var end = 0;
+        while (end < sequence.size() && sequence.get(end) instanceof Token<?>) {
+            ++end;
+        }
+        return (List<Token<Ref>>) sequence.subList(0, end);
+    }
+
+    @Nullable
+    private static <Ref> Edge childEdge(final Node node, final Token<Ref> token) {
+        for (final var edge : node.getEdges()) {
+            if (token.equals(edge.getSequence().get(edge.getBegin()))) {
+                return edge;
+            }
+        }
+        return null;
     }
 
     static boolean isCloneNode(final Node node) {
@@ -78,15 +180,4 @@ final class SuffixTreeUtils {
             .map(Edge::getTerminal)
             .allMatch(Objects::isNull);
     }
-
-    static <Ref> Map<Node, CloneClass<Ref>> superclassesByClassNode(final Collection<CloneClass<Ref>> cloneClasses) {
-         return cloneClasses
-            .stream()
-            .filter(cloneClass -> cloneClass.node().getSuffixLink() != null)
-            .collect(
-                () -> new IdentityHashMap<>(cloneClasses.size()),
-                (map, cloneClass) -> map.put(cloneClass.node().getSuffixLink(), cloneClass),
-                Lambda.illegalState()
-            );
-    }
 }
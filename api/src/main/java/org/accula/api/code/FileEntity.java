@@ -1,5 +1,6 @@
 package org.accula.api.code;
 
+import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
 import lombok.Value;
 import org.accula.api.code.lines.LineSet;
@@ -10,6 +11,7 @@ import org.jetbrains.annotations.Nullable;
  * @author Anton Lamtev
  */
 @Value
+@AllArgsConstructor
 public class FileEntity<Ref> {
     Ref ref;
     String name;
@@ -17,6 +19,16 @@ public class FileEntity<Ref> {
     @Nullable
     String content;
     LineSet lines;
+    /**
+     * Git object id of the content, if it is known, so the content is not tokenized again (see {@link org.accula.api.token.TokenCache})
+     */
+    @EqualsAndHashCode.Exclude
+    @Nullable
+    String blobId;
+
+    public FileEntity(final Ref ref, final String name, @Nullable final String content, final LineSet lines) {
+        this(ref, name, content, lines, null);
+    }
 
     public static <Ref> FileEntity<Ref> absent(final Ref ref) {
         return new FileEntity<>(ref, "", null, LineSet.empty());
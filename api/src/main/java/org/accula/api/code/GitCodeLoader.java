@@ -71,7 +71,8 @@ public final class GitCodeLoader implements CodeLoader {
                                                 Checks.notNull(filesContent.get(snippet), () -> """
                                                     File content for snippet = %s for snapshot = %s
                                                     """.formatted(snippet, snapshot)),
-                                                LineSet.inRange(snippet.lines()))))))
+                                                LineSet.inRange(snippet.lines()),
+                                                snippet.file().id())))))
                 .flatMapMany(Flux::fromStream);
     }
 
@@ -240,7 +241,8 @@ public final class GitCodeLoader implements CodeLoader {
                         snapshot,
                         fileChanges.file().name(),
                         fileContent,
-                        fileChanges.changedLines()
+                        fileChanges.changedLines(),
+                        fileChanges.file().id()
                 ));
     }
 
@@ -303,24 +305,28 @@ public final class GitCodeLoader implements CodeLoader {
                 .map(diffEntry -> switch (diffEntry) {
                     case Addition addition -> DiffEntry.of(
                         FileEntity.absent(base),
-                        new FileEntity<>(head, addition.head().name(), files.get(addition.head()), LineSet.all())
+                        fileEntity(head, addition.head(), files)
                     );
                     case Deletion deletion -> DiffEntry.of(
-                        new FileEntity<>(base, deletion.base().name(), files.get(deletion.base()), LineSet.all()),
+                        fileEntity(base, deletion.base(), files),
                         FileEntity.absent(head)
                     );
                     case Modification modification -> DiffEntry.of(
-                        new FileEntity<>(base, modification.base().name(), files.get(modification.base()), LineSet.all()),
-                        new FileEntity<>(head, modification.head().name(), files.get(modification.head()), LineSet.all())
+                        fileEntity(base, modification.base(), files),
+                        fileEntity(head, modification.head(), files)
                     );
                     case Renaming renaming -> new DiffEntry<>(
-                        new FileEntity<>(base, renaming.base().name(), files.get(renaming.base()), LineSet.all()),
-                        new FileEntity<>(head, renaming.head().name(), files.get(renaming.head()), LineSet.all()),
+                        fileEntity(base, renaming.base(), files),
+                        fileEntity(head, renaming.head(), files),
                         renaming.similarityIndex()
                     );
                 }));
     }
 
+    private static FileEntity<Snapshot> fileEntity(final Snapshot snapshot, final GitFile file, final Map<Identifiable, String> files) {
+        return new FileEntity<>(snapshot, file.name(), files.get(file), LineSet.all(), file.id());
+    }
+
     private static List<Snippet> convertSnippets(final List<GitFile> files, final List<SnippetMarker> markers) {
         final var nameToFileMap = files
                 .stream()
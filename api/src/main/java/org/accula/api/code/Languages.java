@@ -1,14 +1,27 @@
 package org.accula.api.code;
 
 import org.accula.api.db.model.CodeLanguage;
+import org.accula.api.util.Checks;
 
 import java.util.Collection;
 import java.util.EnumSet;
+import java.util.stream.Stream;
 
 /**
  * @author Anton Lamtev
  */
 public final class Languages {
+    /**
+     * The projects in these languages follow no common layout, so all their sources are checked but the Go and Python tests
+     */
+    private static final FileFilter CPP = Stream.of("cpp", "cc", "cxx", "c++", "hpp", "hh", "hxx", "h")
+        .map(FileFilter::hasExtension)
+        .reduce(FileFilter.NONE, FileFilter::or);
+    private static final FileFilter PYTHON = FileFilter.hasExtension("py")
+        .and(FileFilter.contains("/test_").or(file -> file.startsWith("test_")).negate())
+        .and(FileFilter.endsWith("_test.py").negate());
+    private static final FileFilter GO = FileFilter.hasExtension("go").and(FileFilter.endsWith("_test.go").negate());
+
     private Languages() {
     }
 
@@ -16,11 +29,25 @@ public final class Languages {
         final var languageSet = EnumSet.copyOf(languages);
         final var java = languageSet.contains(CodeLanguage.JAVA);
         final var kotlin = languageSet.contains(CodeLanguage.KOTLIN);
+        FileFilter filter = null;
         if (java && kotlin) {
-            return JvmFileFilter.JVM_MAIN;
+            filter = JvmFileFilter.JVM_MAIN;
         } else if (java) {
-            return JvmFileFilter.JAVA_MAIN;
+            filter = JvmFileFilter.JAVA_MAIN;
+        } else if (kotlin) {
+            filter = JvmFileFilter.KOTLIN_MAIN;
+        }
+        for (final var language : languageSet) {
+            final var languageFilter = switch (language) {
+                case JAVA, KOTLIN -> null;
+                case CPP -> CPP;
+                case PYTHON -> PYTHON;
+                case GO -> GO;
+            };
+            if (languageFilter != null) {
+                filter = filter == null ? languageFilter : filter.or(languageFilter);
+            }
         }
-        return JvmFileFilter.KOTLIN_MAIN;
+        return Checks.notNull(filter, "Language filter");
     }
 }
@@ -0,0 +1,68 @@
+package org.accula.api.code.lines;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * Start offsets of the lines of a text computed in a single pass over it,
+ * so the line of any offset is binary searched instead of being looked up in a document.
+ * A line ends with {@code \n}, {@code \r\n} or a single {@code \r}.
+ *
+ * @author Anton Lamtev
+ */
+public final class LineOffsets {
+    private final int[] lineStarts;
+
+    private LineOffsets(final int[] lineStarts) {
+        this.lineStarts = lineStarts;
+    }
+
+    public static LineOffsets of(final CharSequence text) {
+        final var lineStarts = new IntArrayList();
+        lineStarts.add(0);
+        final var length = text.length();
+        for (int i = 0; i < length; ++i) {
+            final var c = text.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == length || text.charAt(i + 1) != '\n')) {
+                lineStarts.add(i + 1);
+            }
+        }
+        return new LineOffsets(lineStarts.toIntArray());
+    }
+
+    /**
+     * @return 1-based number of the line containing the offset
+     */
+    public int line(final int offset) {
+        var low = 0;
+        var high = lineStarts.length - 1;
+        while (low < high) {
+            final var mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low + 1;
+    }
+
+    /**
+     * @return lines of the text range from {@code startOffset} inclusive to {@code endOffset} exclusive,
+     *     the line of the end offset included as a document does
+     */
+    public LineRange lineRange(final int startOffset, final int endOffset) {
+        return LineRange.of(line(startOffset), line(endOffset));
+    }
+
+    /**
+     * @param line 1-based line number
+     * @return offset of the first character of the line
+     */
+    public int lineStart(final int line) {
+        return lineStarts[line - 1];
+    }
+
+    public int lineCount() {
+        return lineStarts.length;
+    }
+}
@@ -0,0 +1,85 @@
+package org.accula.api.config;
+
+import org.accula.api.clone.engine.CloneEngine;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * @param storePath      directory where per-project token journals are persisted
+ * @param memoryBudget   estimated heap size all the in-memory clone detectors may take together,
+ *                       the least recently used ones are evicted when it is exceeded
+ * @param shardCount     number of suffix trees the code of a project is partitioned between to be indexed in parallel,
+ *                       1 unless the indexing is the bottleneck, since with several trees each clone query
+ *                       builds a temporary tree of the queried methods and the ones sharing tokens with them
+ * @param engine         clone engine used by default
+ * @param projectEngines clone engines overriding the default one by project id,
+ *                       e.g. {@code ACCULA_CLONES_PROJECTENGINES_42=FINGERPRINT}
+ * @param crossProject   search of the clones among the code of the other projects
+ * @param gapped         near-miss clones stitched of the exact clones separated by a few tokens
+ * @param structural     whether the statements and code blocks of the same structure up to the order of the statements
+ *                       are reported as clones in addition to the exact clones
+ * @param tokenCache     cache of the tokens of the already tokenized files by their git blob ids
+ * @param tokenization   threads the files are tokenized on apart from the ones serving the requests
+ * @author Anton Lamtev
+ */
+@ConfigurationProperties("accula.clones")
+public record ClonesProperties(Path storePath,
+                               DataSize memoryBudget,
+                               int shardCount,
+                               CloneEngine.Kind engine,
+                               @DefaultValue Map<Long, CloneEngine.Kind> projectEngines,
+                               @DefaultValue CrossProject crossProject,
+                               @DefaultValue Gapped gapped,
+                               boolean structural,
+                               @DefaultValue TokenCache tokenCache,
+                               @DefaultValue Tokenization tokenization) {
+    public CloneEngine.Kind engine(final Long projectId) {
+        return projectEngines.getOrDefault(projectId, engine);
+    }
+
+    /**
+     * @param enabled whether the pulls are also checked against the code of the other projects on the instance
+     * @param groups  groups of the projects searched only among each other by project id,
+     *                e.g. {@code ACCULA_CLONES_CROSSPROJECT_GROUPS_42=java2021}.
+     *                The projects out of any group are searched among all the projects
+     */
+    public record CrossProject(boolean enabled, @DefaultValue Map<Long, String> groups) {
+        public boolean searchedTogether(final Long projectId, final Long otherProjectId) {
+            final var group = groups.get(projectId);
+            return group == null || group.equals(groups.get(otherProjectId));
+        }
+    }
+
+    /**
+     * @param maxGap                maximal number of tokens inserted, deleted or modified between the stitched clones,
+     *                              zero disables the near-miss clone detection, which queries each pull once more.
+     *                              It is disabled by default: a gap of a few tokens bridges only a renamed variable
+     *                              or a changed literal, while a single inserted statement like a log call takes
+     *                              about 20 tokens, so the detection is worth its cost with a gap of 20 or more
+     * @param fragmentMinTokenCount minimal token count of the stitched clones
+     */
+    public record Gapped(int maxGap, int fragmentMinTokenCount) {
+    }
+
+    /**
+     * @param size      estimated heap size the cached tokens may take
+     * @param spill     whether the evicted tokens are written to the {@code token-cache} directory of the store path,
+     *                  so they are reused after a restart as well
+     * @param spillSize size the spilled tokens may take on the disk, the least recently used ones are deleted beyond it
+     */
+    public record TokenCache(@DefaultValue("256MB") DataSize size, boolean spill, @DefaultValue("2GB") DataSize spillSize) {
+    }
+
+    /**
+     * @param parallelism   number of the files tokenized at once, zero for the number of the available processors
+     * @param queueCapacity number of the loaded files a tokenization buffers ahead of the parsing
+     * @param warmUpRounds  number of times a tiny corpus of each language is tokenized on startup
+     *                      before the instance reports readiness, zero to skip the warm-up
+     */
+    public record Tokenization(int parallelism, @DefaultValue("64") int queueCapacity, @DefaultValue("50") int warmUpRounds) {
+    }
+}
@@ -0,0 +1,22 @@
+package org.accula.api.config;
+
+import org.accula.api.token.TokenizerWarmUp;
+import org.springframework.boot.context.event.ApplicationEnvironmentPreparedEvent;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationListener;
+
+/**
+ * Starts the {@link TokenizerWarmUp} as soon as the configuration is known,
+ * so it runs in parallel with the context startup (e.g. the DB migrations) instead of after it
+ *
+ * @author Anton Lamtev
+ */
+public final class TokenizerWarmUpListener implements ApplicationListener<ApplicationEnvironmentPreparedEvent> {
+    @Override
+    public void onApplicationEvent(final ApplicationEnvironmentPreparedEvent event) {
+        final var tokenization = Binder
+            .get(event.getEnvironment())
+            .bindOrCreate("accula.clones.tokenization", ClonesProperties.Tokenization.class);
+        TokenizerWarmUp.instance().start(tokenization.warmUpRounds());
+    }
+}
@@ -1,16 +1,28 @@
 package org.accula.api.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
 import lombok.RequiredArgsConstructor;
+import org.accula.api.clone.fingerprint.CrossProjectCloneIndex;
+import org.accula.api.clone.journal.SnapshotCodec;
 import org.accula.api.code.CodeLoader;
 import org.accula.api.code.GitCodeLoader;
 import org.accula.api.code.GitCredentialsProvider;
 import org.accula.api.code.git.Git;
+import org.accula.api.db.model.Snapshot;
 import org.accula.api.db.model.User;
 import org.accula.api.db.repo.CurrentUserRepo;
 import org.accula.api.github.api.GithubClient;
 import org.accula.api.handler.dto.validation.InputDtoValidator;
+import org.accula.api.token.TokenCache;
+import org.accula.api.token.TokenizationPool;
+import org.accula.api.token.TokenizerWarmUp;
+import org.accula.api.util.Checks;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.web.reactive.config.WebFluxConfigurer;
@@ -29,7 +41,10 @@ import java.util.concurrent.TimeUnit;
  */
 @SpringBootConfiguration
 @RequiredArgsConstructor
-@EnableConfigurationProperties(WebhookProperties.class)
+@EnableConfigurationProperties({
+    WebhookProperties.class,
+    ClonesProperties.class,
+})
 public class WebConfig implements WebFluxConfigurer {
     private final CurrentUserRepo currentUserRepo;
 
@@ -68,6 +83,43 @@ public class WebConfig implements WebFluxConfigurer {
         return new GitCodeLoader(credentialsProvider, git);
     }
 
+    @Bean
+    public CrossProjectCloneIndex<Snapshot> crossProjectCloneIndex(final ClonesProperties clonesProperties) {
+        return new CrossProjectCloneIndex<>(clonesProperties.storePath(), SnapshotCodec.INSTANCE);
+    }
+
+    @Bean
+    public TokenCache tokenCache(final ClonesProperties clonesProperties) {
+        final var tokenCache = clonesProperties.tokenCache();
+        final var spillDirectory = tokenCache.spill() ? clonesProperties.storePath().resolve("token-cache") : null;
+        return new TokenCache(tokenCache.size().toBytes(), spillDirectory, tokenCache.spillSize().toBytes());
+    }
+
+    @Bean
+    public TokenizationPool tokenizationPool(final ClonesProperties clonesProperties, final ObjectProvider<MeterRegistry> meterRegistry) {
+        final var tokenization = clonesProperties.tokenization();
+        return new TokenizationPool(
+            tokenization.parallelism(),
+            tokenization.queueCapacity(),
+            meterRegistry.getIfAvailable(() -> Metrics.globalRegistry)
+        );
+    }
+
+    /**
+     * Part of the readiness group, so no traffic is admitted until the tokenizers are warmed up
+     */
+    @Bean
+    public HealthIndicator tokenizersHealthIndicator() {
+        return () -> {
+            final var warmUp = TokenizerWarmUp.instance();
+            return switch (warmUp.status()) {
+                case READY -> Health.up().withDetail("warmUpDuration", String.valueOf(warmUp.duration())).build();
+                case NOT_STARTED, WARMING_UP -> Health.outOfService().withDetail("warmUp", warmUp.status()).build();
+                case FAILED -> Health.down().withException(Checks.notNull(warmUp.error(), "Warm-up error")).build();
+            };
+        };
+    }
+
     @Bean
     public InputDtoValidator validator() {
         return new InputDtoValidator();
@@ -36,6 +36,9 @@ public final class DtoToModelConverter {
         return switch (language) {
             case JAVA -> CodeLanguage.JAVA;
             case KOTLIN -> CodeLanguage.KOTLIN;
+            case CPP -> CodeLanguage.CPP;
+            case PYTHON -> CodeLanguage.PYTHON;
+            case GO -> CodeLanguage.GO;
         };
     }
 }
@@ -128,6 +128,9 @@ public final class ModelToDtoConverter {
         return switch (language) {
             case JAVA -> ProjectConfDto.Language.JAVA;
             case KOTLIN -> ProjectConfDto.Language.KOTLIN;
+            case CPP -> ProjectConfDto.Language.CPP;
+            case PYTHON -> ProjectConfDto.Language.PYTHON;
+            case GO -> ProjectConfDto.Language.GO;
         };
     }
 
@@ -6,4 +6,7 @@ package org.accula.api.db.model;
 public enum CodeLanguage {
     JAVA,
     KOTLIN,
+    CPP,
+    PYTHON,
+    GO,
 }
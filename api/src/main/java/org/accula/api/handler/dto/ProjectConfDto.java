@@ -17,6 +17,9 @@ public record ProjectConfDto(ValuesWithSuggestion<Long, UserDto> admins,
     public enum Language {
         JAVA,
         KOTLIN,
+        CPP,
+        PYTHON,
+        GO,
     }
 
     @JsonAutoDetect(fieldVisibility = ANY)
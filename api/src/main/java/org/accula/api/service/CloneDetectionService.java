@@ -4,30 +4,50 @@ import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.accula.api.clone.CloneDetector;
+import org.accula.api.clone.CloneDetectorCache;
 import org.accula.api.clone.CloneDetectorImpl;
+import org.accula.api.clone.CodeClone;
+import org.accula.api.clone.engine.CloneEngine;
+import org.accula.api.clone.engine.DeduplicatingCloneEngine;
+import org.accula.api.clone.fingerprint.CrossProjectCloneIndex;
+import org.accula.api.clone.fingerprint.FingerprintCloneDetector;
+import org.accula.api.clone.journal.SnapshotCodec;
+import org.accula.api.clone.journal.TokenJournal;
+import org.accula.api.clone.suffixarray.SuffixArrayCloneDetector;
+import org.accula.api.clone.suffixtree.SuffixTreeCloneDetector;
 import org.accula.api.code.CodeLoader;
 import org.accula.api.code.FileFilter;
 import org.accula.api.code.Languages;
+import org.accula.api.config.ClonesProperties;
 import org.accula.api.converter.CodeToModelConverter;
 import org.accula.api.db.model.Clone;
+import org.accula.api.db.model.GithubRepo;
 import org.accula.api.db.model.Pull;
 import org.accula.api.db.model.Snapshot;
 import org.accula.api.db.repo.CloneRepo;
 import org.accula.api.db.repo.ProjectRepo;
 import org.accula.api.db.repo.PullRepo;
 import org.accula.api.db.repo.SnapshotRepo;
+import org.accula.api.token.TokenCache;
+import org.accula.api.token.TokenizationPool;
 import org.accula.api.util.Checks;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
-import reactor.function.TupleUtils;
 
 import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 
+import static java.util.function.Predicate.not;
+
 /**
  * @author Anton Lamtev
  */
@@ -36,12 +56,16 @@ import java.util.function.BiFunction;
 @RequiredArgsConstructor
 public final class CloneDetectionService {
     private final Map<Long, CloneDetector.Config> cloneDetectorConfigs = new ConcurrentHashMap<>();
-    private final Map<Long, CloneDetector> cloneDetectors = new ConcurrentHashMap<>();
+    private final CloneDetectorCache cloneDetectors = new CloneDetectorCache(this::createCloneDetector, this::memoryBudget);
     private final ProjectRepo projectRepo;
     private final PullRepo pullRepo;
     private final CloneRepo cloneRepo;
     private final CodeLoader loader;
     private final SnapshotRepo snapshotRepo;
+    private final ClonesProperties clonesProperties;
+    private final CrossProjectCloneIndex<Snapshot> crossProjectIndex;
+    private final TokenCache tokenCache;
+    private final TokenizationPool tokenizationPool;
 
     @PostConstruct
     private void init() {
@@ -50,8 +74,10 @@ public final class CloneDetectionService {
 
     public Flux<Clone> readClonesAndSaveToDb(final Pull pull) {
         final var commitsToExclude = loader.loadAllCommitsSha(pull.base().repo()).cache();
-        final var clones = cloneDetector(Checks.notNull(pull.primaryProjectId(), "Pull primaryProjectId"))
-            .flatMapMany(cloneDetector -> cloneDetector.readClones(pull.head()))
+        final var projectId = Checks.notNull(pull.primaryProjectId(), "Pull primaryProjectId");
+        final var clones = cloneDetectors
+            .use(projectId, cloneDetector -> cloneDetector.readClones(pull.head()))
+            .concatWith(readCrossProjectClones(projectId, pull.head()))
             // If commit present at project repo then we do not consider its code as a clone
             .filterWhen(codeClone -> commitsToExclude.map(commits -> !commits.contains(codeClone.source().snapshot().sha())))
             .distinct()
@@ -68,6 +94,8 @@ public final class CloneDetectionService {
         final var head = pull.head();
         final var clones = with(projectId, (detector, config) -> detector
             .findClones(head, loader.loadFiles(head.repo(), snapshots, config.languageFilter()), snapshots))
+            // The pull methods just journaled are indexed before being queried
+            .concatWith(refreshCrossProjectIndex(projectId).thenMany(readCrossProjectClones(projectId, head)))
             .filterWhen(codeClone -> commitsToExclude.map(commits -> !commits.contains(codeClone.source().snapshot().sha())))
             .distinct()
             .map(CodeToModelConverter::convert);
@@ -92,6 +120,8 @@ public final class CloneDetectionService {
                     .findByPullId(pull.id())
                     .map(snapshot -> snapshot.withPull(pull))
                 )
+                // Snapshots restored from the journal are already in the tree
+                .filter(not(detector::isIndexed))
                 .groupBy(Snapshot::repo)
                 .flatMap(snapshotFlux -> snapshotFlux
                     .collectList()
@@ -103,33 +133,119 @@ public final class CloneDetectionService {
                     .findById(projectId)
                     .flatMapMany(project -> snapshotRepo
                         .findByRepoId(project.githubRepo().id())
+                        .filter(not(detector::isIndexed))
                         .collectList()
+                        .filter(not(List::isEmpty))
                         .flatMapMany(snaps -> loader.loadFiles(project.githubRepo(), snaps, config.languageFilter()))))
                 .subscribeOn(Schedulers.parallel())
-        ))).then();
+        ))).then(refreshCrossProjectIndex(projectId));
     }
 
     public void dropSuffixTree(final Long projectId) {
         cloneDetectorConfigs.remove(projectId);
-        cloneDetectors.remove(projectId);
-        log.info("Dropped suffix tree for project with id={}", projectId);
+        // The journal is deleted once the detector using it is released, and no new detector opens it until then
+        cloneDetectors.remove(projectId, () -> {
+            crossProjectIndex.invalidate(projectId);
+            try {
+                Files.deleteIfExists(journalPath(projectId));
+            } catch (IOException e) {
+                log.error("Failed to delete journal for project with id={}", projectId, e);
+            }
+            log.info("Dropped suffix tree for project with id={}", projectId);
+        });
     }
 
     private Mono<Void> fillSuffixTree(final Long projectId) {
         return fillSuffixTree(projectId, pullRepo.findByProjectIdIncludingSecondaryRepos(projectId));
     }
 
-    private Mono<CloneDetector> cloneDetector(final Long projectId) {
+    /**
+     * Finds the clones of the pull methods already journaled by the project detector among the methods of the other projects.
+     * The pull methods and the candidates selected by the {@link CrossProjectCloneIndex} are put into a temporary detector,
+     * so the same checks as of the project clones are applied.
+     */
+    private Flux<CodeClone> readCrossProjectClones(final Long projectId, final Snapshot pullSnapshot) {
+        final var crossProject = clonesProperties.crossProject();
+        if (!crossProject.enabled()) {
+            return Flux.empty();
+        }
+        return projectRepo
+            .findById(projectId)
+            .zipWith(Mono
+                .fromCallable(() -> crossProjectIndex.candidates(
+                    projectId,
+                    snapshot -> Objects.equals(snapshot.pullInfo(), pullSnapshot.pullInfo()),
+                    otherProjectId -> crossProject.searchedTogether(projectId, otherProjectId)
+                ))
+                .subscribeOn(Schedulers.boundedElastic()))
+            .filter(projectAndCandidates -> !projectAndCandidates.getT2().queried().isEmpty()
+                                            && !projectAndCandidates.getT2().others().isEmpty())
+            .flatMapMany(projectAndCandidates -> {
+                final var identity = projectAndCandidates.getT1().githubRepo().identity();
+                final var candidates = projectAndCandidates.getT2();
+                // All the methods are added before the only query, so the suffix array is built once
+                final var engine = new SuffixArrayCloneDetector<Snapshot>(identity + " (cross-project)");
+                engine.addTokensBatch(candidates.queried());
+                engine.addTokensBatch(candidates.others());
+                final var detector = new CloneDetectorImpl(identity, cloneDetectorConfigProvider(projectId), null, engine);
+                return detector
+                    .readClones(pullSnapshot)
+                    .doFinally(signal -> detector.release());
+            })
+            .doOnError(e -> log.error("Failed to find cross-project clones for project with id={}", projectId, e))
+            .onErrorResume(e -> Flux.empty());
+    }
+
+    private Mono<Void> refreshCrossProjectIndex(final Long projectId) {
+        if (!clonesProperties.crossProject().enabled()) {
+            return Mono.empty();
+        }
         return Mono
-            .justOrEmpty(cloneDetectors.get(projectId))
-            .switchIfEmpty(projectRepo
-                .findById(projectId)
-                .map(project -> new CloneDetectorImpl(
-                    project.githubRepo().identity(),
-                    cloneDetectorConfigProvider(projectId))
-                )
+            .<Void>fromCallable(() -> {
+                crossProjectIndex.refresh(projectId);
+                return null;
+            })
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private long memoryBudget() {
+        return clonesProperties.memoryBudget().toBytes();
+    }
+
+    private Mono<CloneDetector> createCloneDetector(final Long projectId) {
+        return projectRepo
+            .findById(projectId)
+            .flatMap(project -> Mono
+                .fromCallable(() -> {
+                    final var journal = TokenJournal.open(journalPath(projectId), SnapshotCodec.INSTANCE);
+                    if (clonesProperties.crossProject().enabled()) {
+                        // The journal might have been compacted, so the project is indexed anew before it is queried
+                        crossProjectIndex.refresh(projectId);
+                    }
+                    return (CloneDetector) new CloneDetectorImpl(
+                        project.githubRepo().identity(),
+                        cloneDetectorConfigProvider(projectId),
+                        journal,
+                        createCloneEngine(projectId, project.githubRepo().identity()),
+                        clonesProperties.structural());
+                })
+                .subscribeOn(Schedulers.boundedElastic())
             )
-            .map(detector -> cloneDetectors.computeIfAbsent(projectId, __ -> detector));
+            .doOnError(e -> log.error("Failed to create clone detector for project with id={}", projectId, e));
+    }
+
+    private CloneEngine<Snapshot> createCloneEngine(final Long projectId, final GithubRepo.Identity repo) {
+        final var engine = clonesProperties.engine(projectId);
+        log.info("Creating {} clone engine for project with id={}", engine, projectId);
+        // The unchanged methods of the consecutive commits are inserted into the engine once
+        return new DeduplicatingCloneEngine<>(switch (engine) {
+            case SUFFIX_TREE -> new SuffixTreeCloneDetector<>(repo.toString(), clonesProperties.shardCount());
+            case FINGERPRINT -> new FingerprintCloneDetector<>(repo.toString());
+        });
+    }
+
+    private Path journalPath(final Long projectId) {
+        return crossProjectIndex.journalPath(projectId);
     }
 
     private CloneDetector.ConfigProvider cloneDetectorConfigProvider(final Long projectId) {
@@ -143,14 +259,18 @@ public final class CloneDetectionService {
                                 .languages(conf.languages())
                                 .languageFilter(Languages.filter(conf.languages()))
                                 .excludedSourceAuthors(new LongOpenHashSet(conf.excludedSourceAuthorIds())::contains)
+                                .gappedCloneMaxGap(clonesProperties.gapped().maxGap())
+                                .gappedCloneFragmentMinTokenCount(clonesProperties.gapped().fragmentMinTokenCount())
+                                .tokenCache(tokenCache)
+                                .tokenizationPool(tokenizationPool)
                                 .build()))
                 .map(conf -> cloneDetectorConfigs.computeIfAbsent(projectId, __ -> conf));
     }
 
     private <R> Flux<R> with(final Long projectId, final BiFunction<CloneDetector, CloneDetector.Config, Flux<R>> use) {
-        return cloneDetector(projectId)
-            .zipWith(cloneDetectorConfigProvider(projectId).get())
-            .flatMapMany(TupleUtils.function(use));
+        return cloneDetectors.use(projectId, detector -> cloneDetectorConfigProvider(projectId)
+            .get()
+            .flatMapMany(config -> use.apply(detector, config)));
     }
 
     private void evictConfigForProject(final Long projectId) {
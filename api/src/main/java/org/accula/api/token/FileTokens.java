@@ -0,0 +1,87 @@
+package org.accula.api.token;
+
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.code.lines.LineSet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static java.util.function.Predicate.not;
+
+/**
+ * Tokens of all the methods of a file independent of the ref and the lines the file is loaded with,
+ * so the same file content is tokenized once (see {@link TokenCache})
+ *
+ * @author Anton Lamtev
+ */
+public record FileTokens(List<Method> methods) {
+    /**
+     * Rough estimate: a token type, a reference to its line range and a share of the block
+     */
+    private static final long ESTIMATED_BYTES_PER_TOKEN = 16L;
+    private static final long ESTIMATED_BYTES_PER_METHOD = 96L;
+
+    /**
+     * @return tokens of the methods and of their lines the {@code file} contains, as if the file was tokenized itself
+     */
+    public <Ref> Stream<List<Token<Ref>>> tokensByMethods(final FileEntity<Ref> file) {
+        return tokensByMethods(methods.stream(), file);
+    }
+
+    /**
+     * Binds the methods to the {@code file} as they come, so the methods of a file tokenized on the fly
+     * are not collected first
+     */
+    public static <Ref> Stream<List<Token<Ref>>> tokensByMethods(final Stream<Method> methods, final FileEntity<Ref> file) {
+        final var lines = file.lines();
+        return methods
+            .filter(method -> lines.containsAny(method.lines()))
+            .<List<Token<Ref>>>map(method -> method.tokens(file.name(), file.ref(), lines))
+            .filter(not(List::isEmpty));
+    }
+
+    public long estimatedSize() {
+        var size = 0L;
+        for (final var method : methods) {
+            size += ESTIMATED_BYTES_PER_METHOD + method.types().length * ESTIMATED_BYTES_PER_TOKEN;
+        }
+        return size;
+    }
+
+    /**
+     * @param types      token type ids (see {@link TokenTypes})
+     * @param tokenLines line ranges of the tokens
+     * @param blocks     blocks spanning the tokens of the method (see {@link MethodTokens})
+     */
+    public record Method(String name, LineRange lines, int[] types, LineRange[] tokenLines, List<MethodTokens.Block> blocks) {
+        /**
+         * The blocks having some tokens out of the lines are dropped, and the rest are shifted to the kept tokens
+         */
+        <Ref> MethodTokens<Ref> tokens(final String filename, final Ref ref, final LineSet lines) {
+            final var origin = Token.Origin.of(filename, name, ref);
+            final var keptBefore = new int[types.length + 1];
+            final var tokens = new ArrayList<Token<Ref>>(types.length);
+            for (int i = 0; i < types.length; ++i) {
+                keptBefore[i] = tokens.size();
+                if (lines.containsAny(tokenLines[i])) {
+                    tokens.add(Token.of(types[i], tokenLines[i], origin));
+                }
+            }
+            keptBefore[types.length] = tokens.size();
+            if (tokens.size() == types.length) {
+                return new MethodTokens<>(tokens, blocks);
+            }
+            final var keptBlocks = new ArrayList<MethodTokens.Block>(blocks.size());
+            for (final var block : blocks) {
+                final var from = keptBefore[block.from()];
+                final var to = keptBefore[block.to()];
+                if (to - from == block.tokenCount()) {
+                    keptBlocks.add(new MethodTokens.Block(block.hash(), from, to));
+                }
+            }
+            return new MethodTokens<>(tokens, keptBlocks);
+        }
+    }
+}
@@ -14,4 +14,36 @@ public interface LanguageTokenProvider<Ref> {
     boolean supportsFile(FileEntity<Ref> file);
 
     Stream<List<Token<Ref>>> tokensByMethods(FileEntity<Ref> file);
+
+    /**
+     * Tokenizes all the methods of the file regardless of its lines, so the result can be reused
+     * for any file of the same content
+     */
+    FileTokens tokenize(FileEntity<Ref> file);
+
+    /**
+     * Same as {@link #tokensByMethods(FileEntity)}, but the structural hashes of the blocks (see {@link MethodTokens})
+     * are computed only if requested. The providers producing no blocks ignore the flag.
+     */
+    default Stream<List<Token<Ref>>> tokensByMethods(final FileEntity<Ref> file, final boolean blocks) {
+        return tokensByMethods(file);
+    }
+
+    /**
+     * Same as {@link #tokenize(FileEntity)}, but the structural hashes of the blocks are computed only if requested
+     */
+    default FileTokens tokenize(final FileEntity<Ref> file, final boolean blocks) {
+        return tokenize(file);
+    }
+
+    /**
+     * Name of the language the tokens of which are produced
+     */
+    String language();
+
+    /**
+     * Version of the normalization of the tokens, which is changed along with it,
+     * so the tokens produced by the previous versions are no longer reused
+     */
+    int normalizationVersion();
 }
@@ -0,0 +1,50 @@
+package org.accula.api.token;
+
+import lombok.extern.slf4j.Slf4j;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+
+/**
+ * Language token providers registered as {@link ServiceLoader} services
+ * in {@code META-INF/services/org.accula.api.token.LanguageTokenProvider},
+ * so a language is supported once its provider is on the classpath.
+ * The providers are stateless, so a single instance of each serves the files of any refs.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class LanguageTokenProviders {
+    private static final Map<String, LanguageTokenProvider<?>> PROVIDERS = load();
+
+    private LanguageTokenProviders() {
+    }
+
+    /**
+     * @param language name of the language (see {@link LanguageTokenProvider#language()})
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public static <Ref> LanguageTokenProvider<Ref> find(final String language) {
+        return (LanguageTokenProvider<Ref>) PROVIDERS.get(language);
+    }
+
+    public static Set<String> languages() {
+        return PROVIDERS.keySet();
+    }
+
+    private static Map<String, LanguageTokenProvider<?>> load() {
+        final var providers = new HashMap<String, LanguageTokenProvider<?>>();
+        for (final LanguageTokenProvider<?> provider : ServiceLoader.load(LanguageTokenProvider.class,
+                                                                          LanguageTokenProviders.class.getClassLoader())) {
+            final var previous = providers.putIfAbsent(provider.language(), provider);
+            if (previous != null) {
+                log.warn("Token provider {} of language {} is ignored in favor of {}", provider, provider.language(), previous);
+            }
+        }
+        return Map.copyOf(providers);
+    }
+}
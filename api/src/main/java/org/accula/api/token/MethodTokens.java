@@ -0,0 +1,53 @@
+package org.accula.api.token;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Tokens of a method along with the structural hashes of its blocks (statements and code blocks),
+ * which are computed by the same traversal of the method tree as the tokens.
+ * Equal hashes denote the blocks of the same structure up to the order of the statements of the code blocks,
+ * so the blocks differing in the order of their statements only are found in a hash map.
+ *
+ * @author Anton Lamtev
+ */
+public final class MethodTokens<Ref> extends AbstractList<Token<Ref>> implements RandomAccess {
+    private final List<Token<Ref>> tokens;
+    private final List<Block> blocks;
+
+    public MethodTokens(final List<Token<Ref>> tokens, final List<Block> blocks) {
+        this.tokens = tokens;
+        this.blocks = blocks;
+    }
+
+    /**
+     * @return blocks of the method, empty if the tokens carry no structure, e.g. the language does not support it
+     */
+    public static <Ref> List<Block> blocks(final List<Token<Ref>> tokens) {
+        return tokens instanceof MethodTokens<Ref> methodTokens ? methodTokens.blocks : List.of();
+    }
+
+    public List<Block> blocks() {
+        return blocks;
+    }
+
+    @Override
+    public Token<Ref> get(final int index) {
+        return tokens.get(index);
+    }
+
+    @Override
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Block spanning the method tokens from {@code from} inclusive to {@code to} exclusive
+     */
+    public record Block(long hash, int from, int to) {
+        public int tokenCount() {
+            return to - from;
+        }
+    }
+}
@@ -1,24 +1,71 @@
 package org.accula.api.token;
 
+import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
 import lombok.Value;
 import org.accula.api.code.lines.LineRange;
 
 /**
+ * A normalized token of a method body.
+ * The token string is stored as an id in {@link TokenTypes},
+ * and the filename, the method name and the ref are shared by all the tokens of the method via {@link Origin}.
+ *
  * @author Anton Lamtev
  */
-@Value(staticConstructor = "of")
+@Value
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
 @EqualsAndHashCode(onlyExplicitlyIncluded = true)
 public class Token<Ref> implements Comparable<Token<Ref>> {
     @EqualsAndHashCode.Include
-    String string;
-    String filename;
-    String methodName;
+    int type;
     LineRange lines;
-    Ref ref;
+    Origin<Ref> origin;
+
+    public static <Ref> Token<Ref> of(final String string,
+                                      final String filename,
+                                      final String methodName,
+                                      final LineRange lines,
+                                      final Ref ref) {
+        return of(string, lines, Origin.of(filename, methodName, ref));
+    }
+
+    public static <Ref> Token<Ref> of(final String string, final LineRange lines, final Origin<Ref> origin) {
+        return of(TokenTypes.id(string), lines, origin);
+    }
+
+    public static <Ref> Token<Ref> of(final int type, final LineRange lines, final Origin<Ref> origin) {
+        return new Token<>(type, lines, origin);
+    }
+
+    public String string() {
+        return TokenTypes.string(type);
+    }
+
+    public String filename() {
+        return origin.filename();
+    }
+
+    public String methodName() {
+        return origin.methodName();
+    }
+
+    public Ref ref() {
+        return origin.ref();
+    }
 
     @Override
-    public int compareTo(final Token otherToken) {
-        return string.compareTo(otherToken.string);
+    public int compareTo(final Token<Ref> otherToken) {
+        return Integer.compare(type, otherToken.type);
+    }
+
+    /**
+     * The method all its tokens originate from
+     */
+    @Value(staticConstructor = "of")
+    public static class Origin<Ref> {
+        String filename;
+        String methodName;
+        Ref ref;
     }
 }
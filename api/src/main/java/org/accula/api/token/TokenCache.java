@@ -0,0 +1,376 @@
+package org.accula.api.token;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.accula.api.code.lines.LineRange;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Bounded cache of the {@link FileTokens} by the git blob id of the file content,
+ * the language and the normalization version of the token provider, and whether the blocks are hashed.
+ * <p>
+ * The same blob is met again and again: in the base commit of each fork, in the consecutive commits of a pull,
+ * and on each refill after a restart. The least recently used entries are evicted when the estimated size
+ * of all the entries exceeds the limit, and are spilled to the disk if a spill directory is specified,
+ * so they survive restarts. The spilled files are named by the key and never change, so they are written once.
+ * <p>
+ * The evicted entries are written by a single background thread, so the tokenization threads evicting them
+ * never wait for the disk, and are still served from memory until written. At most {@link #MAX_PENDING_SPILLS}
+ * entries wait to be written, the further ones are dropped. The spill directory is capped by size:
+ * once it is exceeded, the least recently read or written files are deleted. The files of the other normalization
+ * versions and formats are never read again, so they are deleted on startup.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class TokenCache implements Closeable {
+    private static final int FORMAT_VERSION = 2;
+    private static final int MAX_PENDING_SPILLS = 256;
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    /**
+     * Share of the size limit the spill directory is trimmed to, so it is not trimmed on each write once full
+     */
+    private static final double TRIMMED_SHARE = 0.9;
+    private final Cache<Key, FileTokens> cache;
+    @Nullable
+    private final Spill spill;
+
+    /**
+     * @param maxSize        estimated heap size all the entries may take together in bytes
+     * @param spillDirectory directory the evicted entries are written to, {@code null} to drop them
+     * @param maxSpillSize   size the files of the spill directory may take together in bytes
+     */
+    public TokenCache(final long maxSize, @Nullable final Path spillDirectory, final long maxSpillSize) {
+        this.spill = spillDirectory != null ? new Spill(spillDirectory, maxSpillSize) : null;
+        this.cache = CacheBuilder
+            .newBuilder()
+            .maximumWeight(maxSize)
+            .<Key, FileTokens>weigher((key, tokens) -> (int) Math.min(Integer.MAX_VALUE, tokens.estimatedSize()))
+            .removalListener(this::onRemoval)
+            .recordStats()
+            .build();
+    }
+
+    /**
+     * @param blocks    whether the tokens carry the blocks
+     * @param tokenizer tokenizes the file in case of the cache miss
+     */
+    public FileTokens get(final String blobId,
+                          final LanguageTokenProvider<?> tokenProvider,
+                          final boolean blocks,
+                          final Supplier<FileTokens> tokenizer) {
+        final var key = new Key(blobId, tokenProvider.language(), tokenProvider.normalizationVersion(), blocks);
+        final var cached = cache.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        var tokens = spill != null ? spill.read(key) : null;
+        if (tokens == null) {
+            tokens = tokenizer.get();
+        }
+        cache.put(key, tokens);
+        return tokens;
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Waits for the evicted entries being spilled to be written
+     */
+    @Override
+    public void close() {
+        if (spill != null) {
+            spill.close();
+        }
+    }
+
+    private void onRemoval(final RemovalNotification<Key, FileTokens> notification) {
+        final var key = notification.getKey();
+        final var tokens = notification.getValue();
+        if (spill == null || !notification.wasEvicted() || key == null || tokens == null) {
+            return;
+        }
+        spill.write(key, tokens);
+    }
+
+    private static final class Spill {
+        private final Path directory;
+        private final long maxSize;
+        private final Map<Key, FileTokens> pending = new ConcurrentHashMap<>();
+        private final ExecutorService writer = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+            .setNameFormat("token-cache-spill-%d")
+            .setDaemon(true)
+            .build());
+        /**
+         * Size of the files of the directory, accessed by the writer thread only
+         */
+        private long size;
+
+        Spill(final Path directory, final long maxSize) {
+            this.directory = directory;
+            this.maxSize = maxSize;
+            writer.execute(this::cleanUp);
+        }
+
+        @Nullable
+        FileTokens read(final Key key) {
+            final var pendingTokens = pending.get(key);
+            if (pendingTokens != null) {
+                return pendingTokens;
+            }
+            final var path = key.path(directory);
+            final FileTokens tokens;
+            try (var in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                tokens = TokenCache.read(in);
+            } catch (NoSuchFileException e) {
+                return null;
+            } catch (IOException e) {
+                log.warn("Failed to read spilled tokens of blob {}", key.blobId(), e);
+                return null;
+            }
+            if (tokens == null) {
+                // Written in another format, so it is never read again
+                deleteIfExists(path);
+                return null;
+            }
+            try {
+                // The least recently read files are deleted first once the directory is full
+                Files.setLastModifiedTime(path, FileTime.from(Instant.now()));
+            } catch (IOException e) {
+                // Deleted by the trimming meanwhile
+            }
+            return tokens;
+        }
+
+        void write(final Key key, final FileTokens tokens) {
+            if (pending.size() >= MAX_PENDING_SPILLS || pending.putIfAbsent(key, tokens) != null) {
+                return;
+            }
+            try {
+                writer.execute(() -> {
+                    try {
+                        writePending(key);
+                    } finally {
+                        pending.remove(key);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                pending.remove(key);
+            }
+        }
+
+        void close() {
+            writer.shutdown();
+            try {
+                if (!writer.awaitTermination(1L, TimeUnit.MINUTES)) {
+                    log.warn("{} token cache entries have not been spilled", pending.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void writePending(final Key key) {
+            final var tokens = pending.get(key);
+            final var path = key.path(directory);
+            if (tokens == null || Files.exists(path)) {
+                return;
+            }
+            final var temporary = path.resolveSibling(path.getFileName() + TEMPORARY_SUFFIX);
+            try {
+                Files.createDirectories(directory);
+                try (var out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                    TokenCache.write(out, tokens);
+                }
+                Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+                size += Files.size(path);
+            } catch (IOException e) {
+                log.warn("Failed to spill tokens of blob {}", key.blobId(), e);
+                deleteIfExists(temporary);
+                return;
+            }
+            if (size > maxSize) {
+                trim();
+            }
+        }
+
+        /**
+         * Deletes the temporary files left by a crash and the files of the other normalization versions,
+         * and counts the size of the rest
+         */
+        private void cleanUp() {
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+            var deletedCount = 0;
+            try (var paths = Files.list(directory)) {
+                for (final var path : (Iterable<Path>) paths::iterator) {
+                    if (isCurrent(path.getFileName().toString())) {
+                        size += Files.size(path);
+                    } else if (deleteIfExists(path)) {
+                        ++deletedCount;
+                    }
+                }
+            } catch (IOException e) {
+                log.warn("Failed to clean up token cache spill directory {}", directory, e);
+            }
+            if (deletedCount > 0) {
+                log.info("Deleted {} stale spilled token files", deletedCount);
+            }
+            if (size > maxSize) {
+                trim();
+            }
+        }
+
+        /**
+         * Deletes the least recently used files until the directory takes {@link #TRIMMED_SHARE} of the limit.
+         * The size is counted anew, as the files of the other formats are deleted by the readers.
+         */
+        private void trim() {
+            final List<SpilledFile> files;
+            try (var paths = Files.list(directory)) {
+                files = paths
+                    .filter(path -> !path.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+                    .flatMap(path -> {
+                        try {
+                            final var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                            return Stream.of(new SpilledFile(path, attributes.size(), attributes.lastModifiedTime()));
+                        } catch (IOException e) {
+                            return Stream.empty();
+                        }
+                    })
+                    .sorted(Comparator.comparing(SpilledFile::lastModified))
+                    .toList();
+            } catch (IOException e) {
+                log.warn("Failed to trim token cache spill directory {}", directory, e);
+                return;
+            }
+            size = files.stream().mapToLong(SpilledFile::size).sum();
+            final var targetSize = (long) (maxSize * TRIMMED_SHARE);
+            for (final var file : files) {
+                if (size <= targetSize) {
+                    break;
+                }
+                if (deleteIfExists(file.path())) {
+                    size -= file.size();
+                }
+            }
+        }
+
+        private static boolean isCurrent(final String filename) {
+            if (filename.endsWith(TEMPORARY_SUFFIX)) {
+                return false;
+            }
+            final var parts = filename.split("-", 3);
+            if (parts.length < 3) {
+                return false;
+            }
+            final var tokenProvider = LanguageTokenProviders.find(parts[0]);
+            return tokenProvider != null && String.valueOf(tokenProvider.normalizationVersion()).equals(parts[1]);
+        }
+
+        private static boolean deleteIfExists(final Path path) {
+            try {
+                return Files.deleteIfExists(path);
+            } catch (IOException e) {
+                log.warn("Failed to delete {}", path, e);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Token types are written as strings, since their ids are assigned anew by each process
+     */
+    private static void write(final DataOutput out, final FileTokens tokens) throws IOException {
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(tokens.methods().size());
+        for (final var method : tokens.methods()) {
+            out.writeUTF(method.name());
+            out.writeInt(method.lines().from());
+            out.writeInt(method.lines().to());
+            out.writeInt(method.types().length);
+            for (int i = 0; i < method.types().length; ++i) {
+                out.writeUTF(TokenTypes.string(method.types()[i]));
+                out.writeInt(method.tokenLines()[i].from());
+                out.writeInt(method.tokenLines()[i].to());
+            }
+            out.writeInt(method.blocks().size());
+            for (final var block : method.blocks()) {
+                out.writeLong(block.hash());
+                out.writeInt(block.from());
+                out.writeInt(block.to());
+            }
+        }
+    }
+
+    @Nullable
+    private static FileTokens read(final DataInput in) throws IOException {
+        if (in.readInt() != FORMAT_VERSION) {
+            return null;
+        }
+        final var methodCount = in.readInt();
+        final var methods = new ArrayList<FileTokens.Method>(methodCount);
+        for (int i = 0; i < methodCount; ++i) {
+            final var name = in.readUTF();
+            final var lines = LineRange.of(in.readInt(), in.readInt());
+            final var types = new int[in.readInt()];
+            final var tokenLines = new LineRange[types.length];
+            for (int j = 0; j < types.length; ++j) {
+                types[j] = TokenTypes.id(in.readUTF());
+                tokenLines[j] = LineRange.of(in.readInt(), in.readInt());
+            }
+            final var blockCount = in.readInt();
+            final var blocks = new ArrayList<MethodTokens.Block>(blockCount);
+            for (int j = 0; j < blockCount; ++j) {
+                blocks.add(new MethodTokens.Block(in.readLong(), in.readInt(), in.readInt()));
+            }
+            methods.add(new FileTokens.Method(name, lines, types, tokenLines, blocks));
+        }
+        return new FileTokens(methods);
+    }
+
+    private record SpilledFile(Path path, long size, FileTime lastModified) {
+    }
+
+    private record Key(String blobId, String language, int normalizationVersion, boolean blocks) {
+        Path path(final Path directory) {
+            return directory.resolve("%s-%d-%s%s".formatted(language, normalizationVersion, blobId, blocks ? "" : "-plain"));
+        }
+    }
+}
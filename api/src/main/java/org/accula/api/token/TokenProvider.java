@@ -4,11 +4,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.accula.api.code.FileEntity;
 import org.jetbrains.annotations.Nullable;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * @author Anton Lamtev
@@ -16,29 +16,66 @@ import java.util.List;
 @Slf4j
 public final class TokenProvider<Ref> {
     private final Collection<LanguageTokenProvider<Ref>> tokenProviders;
+    @Nullable
+    private final TokenCache tokenCache;
+    @Nullable
+    private final TokenizationPool tokenizationPool;
+    private final boolean blocks;
 
     public TokenProvider(final Collection<LanguageTokenProvider<Ref>> tokenProviders) {
+        this(tokenProviders, null, null);
+    }
+
+    public TokenProvider(final Collection<LanguageTokenProvider<Ref>> tokenProviders,
+                         @Nullable final TokenCache tokenCache,
+                         @Nullable final TokenizationPool tokenizationPool) {
+        this(tokenProviders, tokenCache, tokenizationPool, true);
+    }
+
+    /**
+     * @param tokenCache       cache the tokens of the files having a blob id are looked up in before parsing them
+     * @param tokenizationPool threads the files are parsed on, {@code null} for {@link Schedulers#parallel()}
+     * @param blocks           whether the structural hashes of the blocks of the methods are computed (see {@link MethodTokens})
+     */
+    public TokenProvider(final Collection<LanguageTokenProvider<Ref>> tokenProviders,
+                         @Nullable final TokenCache tokenCache,
+                         @Nullable final TokenizationPool tokenizationPool,
+                         final boolean blocks) {
         if (tokenProviders.isEmpty()) {
             throw new IllegalArgumentException("tokenProviders MUST NOT be empty");
         }
         this.tokenProviders = tokenProviders;
+        this.tokenCache = tokenCache;
+        this.tokenizationPool = tokenizationPool;
+        this.blocks = blocks;
     }
 
     public Flux<List<Token<Ref>>> tokensByMethods(final Flux<FileEntity<Ref>> files) {
+        if (tokenizationPool != null) {
+            return tokenizationPool.tokenize(files, this::tokensByMethods);
+        }
         return files
             .parallel()
             .runOn(Schedulers.parallel())
-            .flatMap(file -> {
-                final var tokenProvider = tokenProvider(file);
-                if (tokenProvider == null) {
-                    log.warn("No tokenProvider found for file {}", file);
-                    return Mono.empty();
-                }
-                return Flux.fromStream(tokenProvider.tokensByMethods(file));
-            })
+            .flatMap(file -> Flux.fromStream(tokensByMethods(file)))
             .sequential();
     }
 
+    private Stream<List<Token<Ref>>> tokensByMethods(final FileEntity<Ref> file) {
+        final var tokenProvider = tokenProvider(file);
+        if (tokenProvider == null) {
+            log.warn("No tokenProvider found for file {}", file);
+            return Stream.empty();
+        }
+        final var blobId = file.blobId();
+        if (tokenCache == null || blobId == null) {
+            return tokenProvider.tokensByMethods(file, blocks);
+        }
+        return tokenCache
+            .get(blobId, tokenProvider, blocks, () -> tokenProvider.tokenize(file, blocks))
+            .tokensByMethods(file);
+    }
+
     @Nullable
     private LanguageTokenProvider<Ref> tokenProvider(final FileEntity<Ref> file) {
         for (final var tokenProvider : tokenProviders) {
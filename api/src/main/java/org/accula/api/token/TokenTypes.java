@@ -0,0 +1,75 @@
+package org.accula.api.token;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Global registry of normalized token strings.
+ * Language token providers normalize tokens to a small closed set of strings
+ * (element type names and placeholders like {@code _LITERAL}), so each of them is mapped
+ * to a dense int id once, and tokens store and compare the ids instead of the strings.
+ * The ids are assigned in the order the strings are met, so they differ from process to process
+ * and must never be persisted, while the {@link #hash} of a string is the same in every process.
+ *
+ * @author Anton Lamtev
+ */
+public final class TokenTypes {
+    private static final long FNV_OFFSET_BASIS = 0xCBF29CE484222325L;
+    private static final long FNV_PRIME = 0x100000001B3L;
+    private static final ConcurrentMap<String, Integer> IDS = new ConcurrentHashMap<>();
+    private static volatile String[] strings = new String[0];
+    private static volatile long[] hashes = new long[0];
+
+    private TokenTypes() {
+    }
+
+    public static int id(final String string) {
+        final var id = IDS.get(string);
+        if (id != null) {
+            return id;
+        }
+        return register(string);
+    }
+
+    public static String string(final int id) {
+        return strings[id];
+    }
+
+    /**
+     * 64-bit FNV-1a digest of the token string
+     */
+    public static long hash(final int id) {
+        return hashes[id];
+    }
+
+    public static int size() {
+        return strings.length;
+    }
+
+    private static synchronized int register(final String string) {
+        final var registered = IDS.get(string);
+        if (registered != null) {
+            return registered;
+        }
+        final var id = strings.length;
+        final var newHashes = Arrays.copyOf(hashes, id + 1);
+        newHashes[id] = fnv1a(string);
+        hashes = newHashes;
+        final var newStrings = Arrays.copyOf(strings, id + 1);
+        newStrings[id] = string;
+        strings = newStrings;
+        IDS.put(string, id);
+        return id;
+    }
+
+    private static long fnv1a(final String string) {
+        var hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < string.length(); ++i) {
+            final var c = string.charAt(i);
+            hash = (hash ^ (c & 0xFF)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,120 @@
+package org.accula.api.token;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Dedicated threads the files are tokenized on, so the parsing of a big refill does not occupy
+ * the {@link Schedulers#parallel()} threads the request handling relies on.
+ * <p>
+ * Each tokenization requests at most {@code queueCapacity} files from its source ahead of the parsing,
+ * so a slow parsing backpressures the file loading instead of buffering the file contents.
+ * The number of the files waiting for the parsing ({@code accula.tokenization.queue}),
+ * the parsing time of a file ({@code accula.tokenization.file}) and the executor metrics are recorded to the registry.
+ *
+ * @author Anton Lamtev
+ */
+public final class TokenizationPool implements AutoCloseable {
+    private static final String NAME = "tokenization";
+    private final int parallelism;
+    private final int railQueueCapacity;
+    private final ExecutorService executor;
+    private final Scheduler scheduler;
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final Timer fileTimer;
+    private final Clock clock;
+
+    /**
+     * @param parallelism   number of the threads, zero for the number of the available processors
+     * @param queueCapacity number of the files a tokenization buffers ahead of the parsing
+     */
+    public TokenizationPool(final int parallelism, final int queueCapacity, final MeterRegistry meterRegistry) {
+        if (parallelism < 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("parallelism MUST NOT be negative and queueCapacity MUST be positive");
+        }
+        this.parallelism = parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism;
+        this.railQueueCapacity = Math.max(1, queueCapacity / this.parallelism);
+        // Each rail of a tokenization has at most one drain task scheduled at a time, so the task queue stays short
+        final var threadPoolExecutor = new ThreadPoolExecutor(
+            this.parallelism,
+            this.parallelism,
+            0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat(NAME + "-%d").setDaemon(true).build()
+        );
+        this.executor = ExecutorServiceMetrics.monitor(meterRegistry, threadPoolExecutor, NAME);
+        this.scheduler = Schedulers.fromExecutorService(executor, NAME);
+        Gauge.builder("accula.tokenization.queue", queueDepth, AtomicInteger::get)
+            .description("Number of the files waiting to be tokenized")
+            .register(meterRegistry);
+        this.clock = meterRegistry.config().clock();
+        this.fileTimer = Timer.builder("accula.tokenization.file")
+            .description("Time the tokenization of a file takes")
+            .register(meterRegistry);
+    }
+
+    public int parallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Tokenizes the files on the pool threads. The items of the result follow in no particular order.
+     *
+     * @param tokenize parses the file and returns its items
+     */
+    public <T, R> Flux<R> tokenize(final Flux<T> files, final Function<T, Stream<R>> tokenize) {
+        return Flux.defer(() -> {
+            final var pending = new AtomicInteger();
+            return files
+                .doOnNext(__ -> {
+                    pending.incrementAndGet();
+                    queueDepth.incrementAndGet();
+                })
+                .parallel(parallelism, railQueueCapacity)
+                .runOn(scheduler, railQueueCapacity)
+                .flatMap(file -> {
+                    if (pending.getAndDecrement() > 0) {
+                        queueDepth.decrementAndGet();
+                    }
+                    // The items are collected on the pool thread, so neither a lazy stream is drained by the thread
+                    // requesting the items, nor the time the items wait for the request is counted as the parsing
+                    return Flux
+                        .defer(() -> {
+                            final var sample = Timer.start(clock);
+                            final List<R> items;
+                            try (var stream = tokenize.apply(file)) {
+                                items = stream.toList();
+                            } finally {
+                                sample.stop(fileTimer);
+                            }
+                            return Flux.fromIterable(items);
+                        })
+                        .subscribeOn(scheduler);
+                })
+                .sequential()
+                // The files left in the queues on cancellation or error are no longer waiting
+                .doFinally(__ -> queueDepth.addAndGet(-pending.getAndSet(0)));
+        });
+    }
+
+    @Override
+    public void close() {
+        scheduler.dispose();
+    }
+}
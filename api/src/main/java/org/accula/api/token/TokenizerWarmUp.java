@@ -0,0 +1,152 @@
+package org.accula.api.token;
+
+import lombok.extern.slf4j.Slf4j;
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Warm-up of the language token providers: the IntelliJ and Kotlin core environments are created
+ * on the first file parsed, which takes seconds of class loading and extension registration.
+ * The warm-up tokenizes a tiny corpus of each language a number of rounds on a background thread,
+ * so the environments are created and the lexers are JIT-compiled before the first refill needs them.
+ * It is started once per process, as the environments are shared by all the token providers.
+ *
+ * @author Anton Lamtev
+ */
+@Slf4j
+public final class TokenizerWarmUp {
+    private static final TokenizerWarmUp INSTANCE = new TokenizerWarmUp();
+    private static final String REF = "warm-up";
+    private static final List<Sample> SAMPLES = List.of(
+        new Sample("java", "WarmUp.java", """
+            class WarmUp {
+                int sum(int[] values) {
+                    int sum = 0;
+                    for (final var value : values) {
+                        sum += value * 2;
+                    }
+                    return sum;
+                }
+            }
+            """),
+        new Sample("kotlin", "WarmUp.kt", """
+            class WarmUp(private val values: List<Int>) {
+                val size get() = values.size
+
+                fun sum(): Int = values.filter { it > 0 }.fold(0) { acc, value -> acc + value * 2 }
+            }
+            """),
+        new Sample("cpp", "warm_up.cpp", """
+            int sum(const std::vector<int>& values) {
+                int sum = 0;
+                for (int value : values) { sum += value * 2; }
+                return sum;
+            }
+            """),
+        new Sample("go", "warm_up.go", """
+            func sum(values []int) int {
+                sum := 0
+                for _, value := range values {
+                    sum += value * 2
+                }
+                return sum
+            }
+            """),
+        new Sample("python", "warm_up.py", """
+            def total(values):
+                result = 0
+                for value in values:
+                    result += value * 2
+                return result
+            """)
+    );
+    private volatile Status status = Status.NOT_STARTED;
+    @Nullable
+    private volatile Duration duration;
+    @Nullable
+    private volatile Throwable error;
+
+    TokenizerWarmUp() {
+    }
+
+    public static TokenizerWarmUp instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts the warm-up on a daemon thread unless it has already been started
+     *
+     * @param rounds number of times the corpus is tokenized, zero to skip the warm-up
+     */
+    public synchronized void start(final int rounds) {
+        if (rounds < 0) {
+            throw new IllegalArgumentException("rounds MUST NOT be negative");
+        }
+        if (status != Status.NOT_STARTED) {
+            return;
+        }
+        if (rounds == 0) {
+            duration = Duration.ZERO;
+            status = Status.READY;
+            return;
+        }
+        status = Status.WARMING_UP;
+        final var thread = new Thread(() -> warmUp(rounds), "tokenizer-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    /**
+     * Time the warm-up took, {@code null} until it is finished
+     */
+    @Nullable
+    public Duration duration() {
+        return duration;
+    }
+
+    @Nullable
+    public Throwable error() {
+        return error;
+    }
+
+    private void warmUp(final int rounds) {
+        final var start = System.nanoTime();
+        try {
+            for (int round = 0; round < rounds; ++round) {
+                for (final var sample : SAMPLES) {
+                    final var tokenProvider = LanguageTokenProviders.<String>find(sample.language());
+                    if (tokenProvider != null) {
+                        tokenProvider.tokenize(new FileEntity<>(REF, sample.name(), sample.content(), LineSet.all()));
+                    }
+                }
+            }
+            final var took = Duration.ofNanos(System.nanoTime() - start);
+            duration = took;
+            status = Status.READY;
+            log.info("Tokenizers warmed up in {} ms ({} rounds)", took.toMillis(), rounds);
+        } catch (RuntimeException | LinkageError e) {
+            // A broken environment fails on every file afterwards, so it is reported instead of the first refill
+            error = e;
+            status = Status.FAILED;
+            log.error("Tokenizer warm-up failed", e);
+        }
+    }
+
+    public enum Status {
+        NOT_STARTED,
+        WARMING_UP,
+        READY,
+        FAILED,
+    }
+
+    private record Sample(String language, String name, String content) {
+    }
+}
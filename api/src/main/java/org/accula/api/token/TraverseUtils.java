@@ -1,26 +1,171 @@
 package org.accula.api.token;
 
-import org.accula.api.util.Lambda;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
+ * Depth-first traversals backed by an explicit stack or by the links between the nodes,
+ * so neither deep trees overflow the call stack nor a stream pipeline is built per node.
+ *
  * @author Anton Lamtev
  */
 public final class TraverseUtils {
     private TraverseUtils() {
     }
 
-    public static <T> Stream<T> dfs(final T root, final Function<T, Stream<T>> children) {
-        return Stream.concat(
-                Stream.of(root),
-                children.apply(root)
-                        .flatMap(Lambda.passingTailArg(TraverseUtils::dfs, children)));
+    /**
+     * Lazy pre-order traversal of the tree
+     */
+    public static <T> Stream<T> dfs(final T root, final Children<T> children) {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(dfsIterator(root, children), Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
     }
 
-    public static <T> Function<T, Stream<T>> stream(final Function<T, T[]> array) {
-        return t -> Arrays.stream(array.apply(t));
+    /**
+     * Pre-order traversal of the tree stopping as soon as {@code visitor} returns {@code false}
+     *
+     * @return {@code true} if all the nodes have been visited
+     */
+    public static <T> boolean dfs(final T root, final Children<T> children, final Predicate<? super T> visitor) {
+        final var iterator = dfsIterator(root, children);
+        while (iterator.hasNext()) {
+            if (!visitor.test(iterator.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pre-order traversal iterator. The children of a node are requested when the node is returned by {@link Iterator#next},
+     * so the traversal may be suspended and resumed between the calls.
+     */
+    public static <T> Iterator<T> dfsIterator(final T root, final Children<T> children) {
+        return new DfsIterator<>(root, children);
+    }
+
+    /**
+     * Lazy post-order traversal of the tree following the links of the nodes to their first children,
+     * next siblings and parents, so nothing is allocated per node. The operators return {@code null} if there is no such node.
+     */
+    public static <T> Stream<T> postOrder(final T root,
+                                          final UnaryOperator<T> firstChild,
+                                          final UnaryOperator<T> nextSibling,
+                                          final UnaryOperator<T> parent) {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(
+                        new PostOrderIterator<>(root, firstChild, nextSibling, parent),
+                        Spliterator.ORDERED | Spliterator.NONNULL),
+                false);
+    }
+
+    public static <T> Children<T> ofArray(final Function<T, T[]> array) {
+        return (parent, action) -> {
+            for (final var child : array.apply(parent)) {
+                action.accept(child);
+            }
+        };
+    }
+
+    /**
+     * Feeds the children of a node to an action in their order
+     */
+    @FunctionalInterface
+    public interface Children<T> {
+        void forEach(T parent, Consumer<T> action);
+    }
+
+    private static final class DfsIterator<T> implements Iterator<T> {
+        private final Deque<T> stack = new ArrayDeque<>();
+        private final List<T> childrenBuffer = new ArrayList<>();
+        private final Consumer<T> addToChildrenBuffer = childrenBuffer::add;
+        private final Children<T> children;
+
+        DfsIterator(final T root, final Children<T> children) {
+            this.children = children;
+            stack.push(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !stack.isEmpty();
+        }
+
+        @Override
+        public T next() {
+            final var node = stack.poll();
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            childrenBuffer.clear();
+            children.forEach(node, addToChildrenBuffer);
+            for (int i = childrenBuffer.size() - 1; i >= 0; --i) {
+                stack.push(childrenBuffer.get(i));
+            }
+            return node;
+        }
+    }
+
+    private static final class PostOrderIterator<T> implements Iterator<T> {
+        private final T root;
+        private final UnaryOperator<T> firstChild;
+        private final UnaryOperator<T> nextSibling;
+        private final UnaryOperator<T> parent;
+        @Nullable
+        private T next;
+
+        PostOrderIterator(final T root,
+                          final UnaryOperator<T> firstChild,
+                          final UnaryOperator<T> nextSibling,
+                          final UnaryOperator<T> parent) {
+            this.root = root;
+            this.firstChild = firstChild;
+            this.nextSibling = nextSibling;
+            this.parent = parent;
+            this.next = deepestFirstDescendant(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public T next() {
+            final var node = next;
+            if (node == null) {
+                throw new NoSuchElementException();
+            }
+            if (node == root) {
+                next = null;
+            } else {
+                final var sibling = nextSibling.apply(node);
+                next = sibling != null ? deepestFirstDescendant(sibling) : parent.apply(node);
+            }
+            return node;
+        }
+
+        private T deepestFirstDescendant(final T node) {
+            var descendant = node;
+            for (var child = firstChild.apply(descendant); child != null; child = firstChild.apply(descendant)) {
+                descendant = child;
+            }
+            return descendant;
+        }
     }
 }
@@ -1,60 +1,88 @@
 package org.accula.api.token.java;
 
 import com.intellij.lang.java.JavaLanguage;
-import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiMethod;
 import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineOffsets;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.FileTokens;
 import org.accula.api.token.LanguageTokenProvider;
 import org.accula.api.token.Token;
-import org.accula.api.token.TraverseUtils;
 import org.accula.api.token.java.psi.JavaPsiUtils;
 import org.accula.api.token.java.psi.PsiFileFactoryProvider;
+import org.accula.api.token.psi.PsiTokenizer;
 import org.accula.api.token.psi.PsiUtils;
 import org.accula.api.util.Checks;
 
 import java.util.List;
-import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
-import static java.util.function.Predicate.not;
-
 /**
  * @author Anton Lamtev
  */
 public final class JavaTokenProvider<Ref> implements LanguageTokenProvider<Ref> {
+    private static final int NORMALIZATION_VERSION = 1;
+
     @Override
     public boolean supportsFile(final FileEntity<Ref> file) {
         return file.name().endsWith(".java");
     }
 
+    /**
+     * Only the methods the file lines intersect are tokenized, each one as the stream reaches it
+     */
     @Override
     public Stream<List<Token<Ref>>> tokensByMethods(final FileEntity<Ref> file) {
+        return tokensByMethods(file, true);
+    }
+
+    @Override
+    public Stream<List<Token<Ref>>> tokensByMethods(final FileEntity<Ref> file, final boolean blocks) {
+        return FileTokens.tokensByMethods(methods(file, file.lines()::containsAny, blocks), file);
+    }
+
+    @Override
+    public FileTokens tokenize(final FileEntity<Ref> file) {
+        return tokenize(file, true);
+    }
+
+    @Override
+    public FileTokens tokenize(final FileEntity<Ref> file, final boolean blocks) {
+        return new FileTokens(methods(file, lines -> true, blocks).toList());
+    }
+
+    @Override
+    public String language() {
+        return "java";
+    }
+
+    @Override
+    public int normalizationVersion() {
+        return NORMALIZATION_VERSION;
+    }
+
+    private static Stream<FileTokens.Method> methods(final FileEntity<?> file,
+                                                     final Predicate<LineRange> methodFilter,
+                                                     final boolean blocks) {
         final var filename = Checks.notNull(file.name(), "FileEntity name");
         final var content = Checks.notNull(file.content(), "FileEntity content");
-        final var psiFile = PsiFileFactoryProvider.instance().fileFactory().createFileFromText(filename, JavaLanguage.INSTANCE, content);
+        // The file is never modified, so there is no need to notify the PSI listeners about its creation
+        final var psiFile = PsiFileFactoryProvider.instance()
+            .fileFactory()
+            .createFileFromText(filename, JavaLanguage.INSTANCE, content, false, false);
+        final var lineOffsets = LineOffsets.of(content);
+        final var tokenizer = new PsiTokenizer(JavaPsiUtils.GRAMMAR, lineOffsets, blocks);
 
         return JavaPsiUtils
-            .methods(psiFile, file.lines()::containsAny)
-            .stream()
-            .map(method -> methodTokens(method, file))
-            .filter(not(List::isEmpty));
+            .methods(psiFile, lineOffsets, methodFilter)
+            .map(method -> methodTokens(method, lineOffsets, tokenizer));
     }
 
-    private static <Ref> List<Token<Ref>> methodTokens(final PsiMethod method, final FileEntity<Ref> file) {
+    private static FileTokens.Method methodTokens(final PsiMethod method,
+                                                  final LineOffsets lineOffsets,
+                                                  final PsiTokenizer tokenizer) {
         final var body = Checks.notNull(method.getBody(), "PsiMethod body");
-        final var filename = method.getContainingFile().getName();
-        return TraverseUtils
-                .dfs(body, TraverseUtils.stream(PsiElement::getChildren))
-                .filter(JavaPsiUtils::isValuableToken)
-                .map(token -> {
-                    final var lineRange = PsiUtils.lineRange(token);
-                    if (!file.lines().containsAny(lineRange)) {
-                        return null;
-                    }
-                    final var string = JavaPsiUtils.optimizeTokenString(token.getNode().getElementType());
-                    return Token.of(string, filename, method.getName(), lineRange, file.ref());
-                })
-                .filter(Objects::nonNull)
-                .toList();
+        return tokenizer.tokenize(body, method.getName(), PsiUtils.lineRange(method, lineOffsets));
     }
 }
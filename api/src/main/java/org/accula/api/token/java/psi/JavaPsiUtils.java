@@ -1,17 +1,20 @@
 package org.accula.api.token.java.psi;
 
 import com.intellij.psi.JavaTokenType;
+import com.intellij.psi.PsiCodeBlock;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiStatement;
 import com.intellij.psi.impl.source.tree.JavaElementType;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
+import org.accula.api.code.lines.LineOffsets;
 import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.psi.PsiTokenizer;
 import org.accula.api.token.psi.PsiUtils;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * @author Anton Lamtev
@@ -64,17 +67,43 @@ public final class JavaPsiUtils {
             JavaElementType.JAVA_CODE_REFERENCE
     );
 
+    /**
+     * Statements and code blocks are the blocks, and the statements of a code block are hashed regardless of their order
+     */
+    public static final PsiTokenizer.Grammar GRAMMAR = new PsiTokenizer.Grammar() {
+        @Override
+        public boolean isValuableToken(final PsiElement element) {
+            return JavaPsiUtils.isValuableToken(element);
+        }
+
+        @Override
+        public String tokenString(final PsiElement element) {
+            return optimizeTokenString(element.getNode().getElementType());
+        }
+
+        @Override
+        public boolean isBlock(final PsiElement element) {
+            return element instanceof PsiStatement || element instanceof PsiCodeBlock;
+        }
+
+        @Override
+        public boolean isUnordered(final PsiElement element) {
+            return element instanceof PsiCodeBlock;
+        }
+    };
+
     private JavaPsiUtils() {
     }
 
-    public static List<PsiMethod> methods(final PsiElement root, final Predicate<LineRange> lineRangeFilter) {
-        final var methods = new ArrayList<PsiMethod>();
-        PsiUtils.forEachDescendantOfType(root, PsiMethod.class, method -> {
-            if (method.getBody() != null && lineRangeFilter.test(PsiUtils.lineRange(method))) {
-                methods.add(method);
-            }
-        });
-        return methods;
+    /**
+     * Lazily finds the methods having a body, the lines of which match the filter
+     */
+    public static Stream<PsiMethod> methods(final PsiElement root,
+                                            final LineOffsets lineOffsets,
+                                            final Predicate<LineRange> lineRangeFilter) {
+        return PsiUtils
+            .descendantsOfType(root, PsiMethod.class)
+            .filter(method -> method.getBody() != null && lineRangeFilter.test(PsiUtils.lineRange(method, lineOffsets)));
     }
 
     public static boolean isValuableToken(final PsiElement token) {
@@ -1,58 +1,93 @@
 package org.accula.api.token.kotlin;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineOffsets;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.FileTokens;
 import org.accula.api.token.LanguageTokenProvider;
 import org.accula.api.token.Token;
+import org.accula.api.token.TokenTypes;
 import org.accula.api.token.TraverseUtils;
 import org.accula.api.token.kotlin.psi.KotlinPsiUtils;
 import org.accula.api.token.kotlin.psi.KtPsiFactoryProvider;
 import org.accula.api.util.Checks;
 import org.jetbrains.kotlin.com.intellij.psi.PsiElement;
-import org.jetbrains.kotlin.psi.KtNamedFunction;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Objects;
+import java.util.function.Predicate;
 import java.util.stream.Stream;
 
-import static java.util.function.Predicate.not;
-
 /**
  * @author Anton Lamtev
  */
 public final class KotlinTokenProvider<Ref> implements LanguageTokenProvider<Ref> {
+    private static final int NORMALIZATION_VERSION = 3;
+
     @Override
     public boolean supportsFile(final FileEntity<Ref> file) {
         return file.name().endsWith(".kt");
     }
 
+    /**
+     * Only the methods the file lines intersect are tokenized, each one as the stream reaches it.
+     * Besides the functions, the property accessors, the constructors, the init blocks and the lambdas out of them
+     * are tokenized as methods (see {@link KotlinPsiUtils#functions})
+     */
     @Override
     public Stream<List<Token<Ref>>> tokensByMethods(final FileEntity<Ref> file) {
+        return FileTokens.tokensByMethods(methods(file, file.lines()::containsAny), file);
+    }
+
+    @Override
+    public FileTokens tokenize(final FileEntity<Ref> file) {
+        return new FileTokens(methods(file, lines -> true).toList());
+    }
+
+    @Override
+    public String language() {
+        return "kotlin";
+    }
+
+    @Override
+    public int normalizationVersion() {
+        return NORMALIZATION_VERSION;
+    }
+
+    private static Stream<FileTokens.Method> methods(final FileEntity<?> file, final Predicate<LineRange> methodFilter) {
         final var filename = Checks.notNull(file.name(), "FileEntity name");
         final var content = Checks.notNull(file.content(), "FileEntity content");
         final var psiFile = KtPsiFactoryProvider.instance().psiFactory().createFile(filename, content);
+        final var lineOffsets = LineOffsets.of(content);
+        // Reused by all the methods of the file, which are tokenized one by one
+        final var types = new IntArrayList();
+        final var tokenLines = new ArrayList<LineRange>();
 
         return KotlinPsiUtils
-            .methods(psiFile, file.lines()::containsAny)
-            .stream()
-            .map(method -> methodTokens(method, file))
-            .filter(not(List::isEmpty));
+            .functions(psiFile, lineOffsets, methodFilter)
+            .map(function -> methodTokens(function, lineOffsets, types, tokenLines));
     }
 
-    private static <Ref> List<Token<Ref>> methodTokens(final KtNamedFunction method, final FileEntity<Ref> file) {
-        final var body = Checks.notNull(method.getBodyExpression(), "KtNamedFunction getBodyExpression");
-        final var filename = method.getContainingFile().getName();
-        return TraverseUtils
-            .dfs(body, TraverseUtils.stream(PsiElement::getChildren))
+    private static FileTokens.Method methodTokens(final KotlinPsiUtils.Function function,
+                                                  final LineOffsets lineOffsets,
+                                                  final IntArrayList types,
+                                                  final List<LineRange> tokenLines) {
+        types.clear();
+        tokenLines.clear();
+        TraverseUtils
+            .dfs(function.body(), TraverseUtils.ofArray(PsiElement::getChildren))
             .filter(KotlinPsiUtils::isValuableToken)
-            .map(token -> {
-                final var lineRange = KotlinPsiUtils.lineRange(token);
-                if (!file.lines().containsAny(lineRange)) {
-                    return null;
-                }
-                final var string = KotlinPsiUtils.optimizeTokenString(token);
-                return Token.of(string, filename, method.getName(), lineRange, file.ref());
-            })
-            .filter(Objects::nonNull)
-            .toList();
+            .forEach(token -> {
+                types.add(TokenTypes.id(KotlinPsiUtils.optimizeTokenString(token)));
+                tokenLines.add(KotlinPsiUtils.lineRange(token, lineOffsets));
+            });
+        return new FileTokens.Method(
+            function.name(),
+            KotlinPsiUtils.lineRange(function.element(), lineOffsets),
+            types.toIntArray(),
+            tokenLines.toArray(LineRange[]::new),
+            List.of()
+        );
     }
 }
@@ -1,21 +1,29 @@
 package org.accula.api.token.kotlin.psi;
 
+import org.accula.api.code.lines.LineOffsets;
 import org.accula.api.code.lines.LineRange;
-import org.accula.api.util.Checks;
+import org.accula.api.token.TraverseUtils;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.kotlin.KtNodeTypes;
 import org.jetbrains.kotlin.com.intellij.psi.PsiElement;
-import org.jetbrains.kotlin.com.intellij.psi.PsiRecursiveElementVisitor;
 import org.jetbrains.kotlin.com.intellij.psi.tree.TokenSet;
 import org.jetbrains.kotlin.kdoc.lexer.KDocTokens;
 import org.jetbrains.kotlin.kdoc.parser.KDocElementTypes;
 import org.jetbrains.kotlin.lexer.KtTokens;
+import org.jetbrains.kotlin.psi.KtAnonymousInitializer;
+import org.jetbrains.kotlin.psi.KtDeclarationWithBody;
+import org.jetbrains.kotlin.psi.KtExpression;
+import org.jetbrains.kotlin.psi.KtLambdaExpression;
 import org.jetbrains.kotlin.psi.KtNamedFunction;
+import org.jetbrains.kotlin.psi.KtPropertyAccessor;
+import org.jetbrains.kotlin.psi.KtSecondaryConstructor;
 import org.jetbrains.kotlin.psi.stubs.elements.KtStubElementTypes;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.Consumer;
+import java.util.Objects;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNullElse;
 
 //FIXME: get rid of duplication by replacing kotlin-compiler-embeddable with kotlin-compiler
 // and reuse code around psi once kotlin-compiler developers are stopped including unshadowed libraries into jar
@@ -25,6 +33,9 @@ import java.util.function.Predicate;
  */
 public final class KotlinPsiUtils {
     private static final String VALUE = "_VALUE";
+    private static final String ANONYMOUS = "<anonymous>";
+    private static final String INIT = "<init>";
+    private static final String LAMBDA = "<lambda>";
     private static final TokenSet OPTIONAL_TOKENS = TokenSet.orSet(
         TokenSet.create(
             KtTokens.FINAL_KEYWORD,
@@ -60,24 +71,67 @@ public final class KotlinPsiUtils {
     private KotlinPsiUtils() {
     }
 
-    public static List<KtNamedFunction> methods(final PsiElement root, final Predicate<LineRange> lineRangeFilter) {
-        final var methods = new ArrayList<KtNamedFunction>();
-        forEachDescendantOfType(root, KtNamedFunction.class, method -> {
-            if (method.hasBody() && lineRangeFilter.test(lineRange(method))) {
-                methods.add(method);
-            }
-        });
-        return methods;
+    /**
+     * Lazily finds the function-like declarations having a body in post-order, the lines of which match the filter:
+     * the named and anonymous functions, the property accessors, the secondary constructors, the init blocks
+     * and the lambdas out of their bodies (e.g. in property initializers and default parameter values),
+     * since the lambdas inside the bodies are tokenized along with them
+     */
+    public static Stream<Function> functions(final PsiElement root,
+                                             final LineOffsets lineOffsets,
+                                             final Predicate<LineRange> lineRangeFilter) {
+        return TraverseUtils
+            .postOrder(root, PsiElement::getFirstChild, PsiElement::getNextSibling, PsiElement::getParent)
+            .map(KotlinPsiUtils::function)
+            .filter(Objects::nonNull)
+            .filter(function -> lineRangeFilter.test(lineRange(function.element(), lineOffsets)));
+    }
+
+    public static LineRange lineRange(final PsiElement element, final LineOffsets lineOffsets) {
+        final var range = element.getTextRange();
+        return lineOffsets.lineRange(range.getStartOffset(), range.getEndOffset());
+    }
+
+    @Nullable
+    private static Function function(final PsiElement element) {
+        if (element instanceof KtNamedFunction function) {
+            final var body = function.getBodyExpression();
+            return body != null ? new Function(requireNonNullElse(function.getName(), ANONYMOUS), function, body) : null;
+        }
+        if (element instanceof KtPropertyAccessor accessor) {
+            final var body = accessor.getBodyExpression();
+            final var name = "<%s-%s>".formatted(accessor.isGetter() ? "get" : "set", accessor.getProperty().getName());
+            return body != null ? new Function(name, accessor, body) : null;
+        }
+        if (element instanceof KtSecondaryConstructor constructor) {
+            final var body = constructor.getBodyExpression();
+            return body != null ? new Function(INIT, constructor, body) : null;
+        }
+        if (element instanceof KtAnonymousInitializer initializer) {
+            final var body = initializer.getBody();
+            return body != null ? new Function(INIT, initializer, body) : null;
+        }
+        if (element instanceof KtLambdaExpression lambda && !isInsideFunction(lambda)) {
+            final var body = lambda.getBodyExpression();
+            return body != null ? new Function(LAMBDA, lambda, body) : null;
+        }
+        return null;
     }
 
-    public static LineRange lineRange(final PsiElement element) {
-        final var file = element.getContainingFile();
-        final var doc = Checks.notNull(file.getViewProvider().getDocument(), "Document");
-        final var relativeRange = element.getTextRange();
-        return LineRange.of(
-            doc.getLineNumber(relativeRange.getStartOffset()) + 1,
-            doc.getLineNumber(relativeRange.getEndOffset()) + 1
-        );
+    /**
+     * Only the bodies are tokenized, so the lambdas elsewhere in the declarations, e.g. in the default values
+     * of the parameters of the functions and the primary constructors, are tokenized on their own
+     */
+    private static boolean isInsideFunction(final PsiElement element) {
+        var child = element;
+        for (var parent = element.getParent(); parent != null; child = parent, parent = parent.getParent()) {
+            // Function literals of the lambdas are declarations with body as well
+            if (parent instanceof KtDeclarationWithBody declaration && child == declaration.getBodyExpression() ||
+                parent instanceof KtAnonymousInitializer initializer && child == initializer.getBody()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public static boolean isValuableToken(final PsiElement token) {
@@ -100,18 +154,10 @@ public final class KotlinPsiUtils {
         return type.toString();
     }
 
-    private static <T extends PsiElement> void forEachDescendantOfType(final PsiElement root,
-                                                                       final Class<T> type,
-                                                                       final Consumer<? super T> onEach) {
-        root.accept(new PsiRecursiveElementVisitor() {
-            @SuppressWarnings("unchecked")
-            @Override
-            public void visitElement(final PsiElement element) {
-                super.visitElement(element);
-                if (type.isAssignableFrom(element.getClass())) {
-                    onEach.accept((T) element);
-                }
-            }
-        });
+    /**
+     * @param name    name of the function, or a placeholder like {@code <init>} for the unnamed ones
+     * @param element whole declaration of the function
+     */
+    public record Function(String name, PsiElement element, KtExpression body) {
     }
 }
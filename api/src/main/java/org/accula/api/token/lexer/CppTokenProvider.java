@@ -0,0 +1,119 @@
+package org.accula.api.token.lexer;
+
+import org.accula.api.code.lines.LineOffsets;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the function definitions out of the other functions: an opening brace preceded by a parameter list
+ * (possibly followed by qualifiers, a trailing return type or a member initializer list) opens a function body,
+ * the name of the function preceding the parameter list. A parameter list preceded by a capture list is a lambda.
+ * The bodies of the namespaces and classes are searched for the functions as the top level is.
+ * The preprocessor directives are skipped like the comments are.
+ *
+ * @author Anton Lamtev
+ */
+public final class CppTokenProvider<Ref> extends LexerTokenProvider<Ref> {
+    private static final Lexer.Spec SPEC = new Lexer.Spec(
+        List.of("//", "#"),
+        "/*",
+        "*/",
+        List.of(new Lexer.Quote("\"", false, true), new Lexer.Quote("'", false, true)),
+        List.of("->*", "<<=", ">>=", "...", "<=>", "->", "::", ".*", "++", "--", "<<", ">>", "<=", ">=", "==", "!=", "&&", "||",
+            "+=", "-=", "*=", "/=", "%=", "&=", "|=", "^="),
+        Set.of("alignas", "alignof", "asm", "break", "case", "catch", "class", "co_await", "co_return", "co_yield",
+            "concept", "const", "const_cast", "consteval", "constexpr", "constinit", "continue", "decltype", "default",
+            "delete", "do", "dynamic_cast", "else", "enum", "explicit", "export", "extern", "false", "final", "for", "friend",
+            "goto", "if", "inline", "mutable", "namespace", "new", "noexcept", "nullptr", "operator", "override", "private",
+            "protected", "public", "register", "reinterpret_cast", "requires", "return", "sizeof", "static", "static_assert",
+            "static_cast", "struct", "switch", "template", "this", "thread_local", "throw", "true", "try", "typedef", "typeid",
+            "typename", "union", "using", "virtual", "volatile", "while"),
+        Set.of("auto", "bool", "char", "char8_t", "char16_t", "char32_t", "double", "float", "int", "long", "short",
+            "signed", "size_t", "unsigned", "void", "wchar_t")
+    );
+    /**
+     * Lexemes allowed between the parameter list and the body
+     */
+    private static final Set<String> QUALIFIERS = Set.of("const", "noexcept", "override", "final", "volatile", "mutable",
+        "->", "::", "<", ">", "*", "&", "&&", ",");
+    private static final Set<String> DECLARATION_BOUNDARIES = Set.of(";", "{", "}");
+
+    public CppTokenProvider() {
+        super("cpp", List.of(".cpp", ".cc", ".cxx", ".c++", ".hpp", ".hh", ".hxx", ".h"), SPEC);
+    }
+
+    @Override
+    protected List<Function> functions(final Lexemes lexemes, final LineOffsets lineOffsets) {
+        final var functions = new ArrayList<Function>();
+        var i = 0;
+        while (i < lexemes.size()) {
+            if (!lexemes.is(i, "{")) {
+                ++i;
+                continue;
+            }
+            final var nameIndex = nameIndex(lexemes, i);
+            if (nameIndex == null) {
+                ++i;
+                continue;
+            }
+            final var close = lexemes.matchingForward(i);
+            final var last = Math.min(close, lexemes.size() - 1);
+            final var name = lexemes.is(nameIndex, "]") ? LAMBDA : lexemes.text(nameIndex);
+            functions.add(new Function(name, declarationStart(lexemes, nameIndex), i + 1, close, last));
+            // The lambdas and local classes are tokenized along with the function
+            i = close + 1;
+        }
+        return functions;
+    }
+
+    /**
+     * @return index of the name of the function the body of which the brace opens,
+     *     or of the closing bracket of the capture list for a lambda, {@code null} if it is not a function body
+     */
+    @Nullable
+    private static Integer nameIndex(final Lexemes lexemes, final int brace) {
+        var close = brace - 1;
+        while (close >= 0 && !lexemes.is(close, ")")) {
+            final var kind = lexemes.kind(close);
+            if (kind != Lexemes.Kind.IDENTIFIER && kind != Lexemes.Kind.TYPE && !QUALIFIERS.contains(lexemes.text(close))) {
+                return null;
+            }
+            --close;
+        }
+        while (close >= 0) {
+            final var open = lexemes.matchingBackward(close);
+            final var name = open - 1;
+            if (lexemes.is(name, "]")) {
+                return name;
+            }
+            if (!lexemes.isIdentifier(name)) {
+                return null;
+            }
+            // Member initializer list of a constructor: A(int a) : a_(a), b_(0) {
+            final var separator = name - 1;
+            if ((lexemes.is(separator, ":") || lexemes.is(separator, ",")) && lexemes.is(separator - 1, ")")) {
+                close = separator - 1;
+                continue;
+            }
+            return name;
+        }
+        return null;
+    }
+
+    private static int declarationStart(final Lexemes lexemes, final int nameIndex) {
+        var start = nameIndex;
+        while (start > 0 && !DECLARATION_BOUNDARIES.contains(lexemes.text(start - 1)) && !isAccessSpecifier(lexemes, start - 1)) {
+            --start;
+        }
+        return start;
+    }
+
+    private static boolean isAccessSpecifier(final Lexemes lexemes, final int colon) {
+        final var specifier = colon - 1;
+        return lexemes.is(colon, ":")
+               && (lexemes.is(specifier, "public") || lexemes.is(specifier, "protected") || lexemes.is(specifier, "private"));
+    }
+}
@@ -0,0 +1,102 @@
+package org.accula.api.token.lexer;
+
+import org.accula.api.code.lines.LineOffsets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the functions, the methods and the function literals out of the other functions by the {@code func} keyword:
+ * the body is the first brace after the parameter list not belonging to a {@code struct} or {@code interface} result type.
+ * A parameter list followed by a name and another parameter list is the receiver of a method.
+ *
+ * @author Anton Lamtev
+ */
+public final class GoTokenProvider<Ref> extends LexerTokenProvider<Ref> {
+    private static final Lexer.Spec SPEC = new Lexer.Spec(
+        List.of("//"),
+        "/*",
+        "*/",
+        List.of(new Lexer.Quote("\"", false, true), new Lexer.Quote("'", false, true), new Lexer.Quote("`", true, false)),
+        List.of("<<=", ">>=", "&^=", "...", "&&", "||", "<-", "++", "--", "==", "!=", "<=", ">=", ":=", "+=", "-=", "*=", "/=",
+            "%=", "&=", "|=", "^=", "<<", ">>", "&^"),
+        Set.of("break", "case", "chan", "const", "continue", "default", "defer", "else", "fallthrough", "for", "func", "go",
+            "goto", "if", "import", "interface", "map", "package", "range", "return", "select", "struct", "switch", "type",
+            "var", "true", "false", "nil"),
+        Set.of("any", "bool", "byte", "complex64", "complex128", "error", "float32", "float64", "int", "int8", "int16",
+            "int32", "int64", "rune", "string", "uint", "uint8", "uint16", "uint32", "uint64", "uintptr")
+    );
+
+    public GoTokenProvider() {
+        super("go", List.of(".go"), SPEC);
+    }
+
+    @Override
+    protected List<Function> functions(final Lexemes lexemes, final LineOffsets lineOffsets) {
+        final var functions = new ArrayList<Function>();
+        var i = 0;
+        while (i < lexemes.size()) {
+            if (!lexemes.is(i, "func")) {
+                ++i;
+                continue;
+            }
+            var name = LAMBDA;
+            var parameters = i + 1;
+            if (lexemes.isIdentifier(parameters)) {
+                name = lexemes.text(parameters);
+                ++parameters;
+            } else if (lexemes.is(parameters, "(")) {
+                final var receiverEnd = lexemes.matchingForward(parameters);
+                if (lexemes.isIdentifier(receiverEnd + 1) && lexemes.is(receiverEnd + 2, "(")) {
+                    name = lexemes.text(receiverEnd + 1);
+                    parameters = receiverEnd + 2;
+                }
+            }
+            // Type parameters of a generic function
+            if (lexemes.is(parameters, "[")) {
+                parameters = lexemes.matchingForward(parameters) + 1;
+            }
+            if (!lexemes.is(parameters, "(")) {
+                ++i;
+                continue;
+            }
+            final var body = body(lexemes, lexemes.matchingForward(parameters) + 1);
+            if (body < 0) {
+                // A function type or a declaration without a body
+                ++i;
+                continue;
+            }
+            final var close = lexemes.matchingForward(body);
+            functions.add(new Function(name, i, body + 1, close, Math.min(close, lexemes.size() - 1)));
+            i = close + 1;
+        }
+        return functions;
+    }
+
+    /**
+     * @return index of the brace opening the body, {@code -1} if the result type is followed by no body
+     */
+    private static int body(final Lexemes lexemes, final int resultStart) {
+        var i = resultStart;
+        while (i < lexemes.size()) {
+            if (lexemes.is(i, "(") || lexemes.is(i, "[")) {
+                i = lexemes.matchingForward(i) + 1;
+            } else if (lexemes.is(i, "{")) {
+                if (!lexemes.is(i - 1, "struct") && !lexemes.is(i - 1, "interface")) {
+                    return i;
+                }
+                i = lexemes.matchingForward(i) + 1;
+            } else if (lexemes.kind(i) == Lexemes.Kind.OPERATOR && !lexemes.is(i, "*") && !lexemes.is(i, ".")
+                       && !lexemes.is(i, "]") && !lexemes.is(i, "<-")) {
+                return -1;
+            } else if (lexemes.kind(i) == Lexemes.Kind.KEYWORD && !lexemes.is(i, "struct") && !lexemes.is(i, "interface")
+                       && !lexemes.is(i, "map") && !lexemes.is(i, "chan") && !lexemes.is(i, "func")) {
+                return -1;
+            } else {
+                ++i;
+            }
+        }
+        return -1;
+    }
+}
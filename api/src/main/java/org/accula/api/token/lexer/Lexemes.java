@@ -0,0 +1,142 @@
+package org.accula.api.token.lexer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lexemes of a text in the order they follow, stored in parallel arrays
+ *
+ * @author Anton Lamtev
+ */
+public final class Lexemes {
+    private static final Kind[] KINDS = Kind.values();
+    private static final String LITERAL = "_LITERAL";
+    private final IntArrayList kinds = new IntArrayList();
+    private final IntArrayList starts = new IntArrayList();
+    private final IntArrayList ends = new IntArrayList();
+    private final List<String> texts = new ArrayList<>();
+
+    void add(final Kind kind, final String text, final int start, final int end) {
+        kinds.add(kind.ordinal());
+        texts.add(kind == Kind.LITERAL ? LITERAL : text);
+        starts.add(start);
+        ends.add(end);
+    }
+
+    public int size() {
+        return kinds.size();
+    }
+
+    public Kind kind(final int index) {
+        return KINDS[kinds.getInt(index)];
+    }
+
+    /**
+     * @return text of the lexeme, or a placeholder for the literals
+     */
+    public String text(final int index) {
+        return texts.get(index);
+    }
+
+    public int start(final int index) {
+        return starts.getInt(index);
+    }
+
+    /**
+     * @return offset right after the lexeme
+     */
+    public int end(final int index) {
+        return ends.getInt(index);
+    }
+
+    /**
+     * @return whether there is a lexeme at the index having the text
+     */
+    public boolean is(final int index, final String text) {
+        return index >= 0 && index < size() && texts.get(index).equals(text);
+    }
+
+    public boolean isIdentifier(final int index) {
+        return index >= 0 && index < size() && kind(index) == Kind.IDENTIFIER;
+    }
+
+    /**
+     * Normalized token string: identifiers, literals and type keywords are indistinguishable among themselves
+     */
+    public String tokenString(final int index) {
+        return switch (kind(index)) {
+            case IDENTIFIER -> "IDENTIFIER";
+            case TYPE -> "_TYPE";
+            case LITERAL, KEYWORD, OPERATOR -> texts.get(index);
+        };
+    }
+
+    /**
+     * @param open index of an opening bracket
+     * @return index of the bracket closing it, or {@link #size()} if there is none
+     */
+    public int matchingForward(final int open) {
+        final var opening = text(open);
+        final var closing = closing(opening);
+        var depth = 0;
+        for (int i = open; i < size(); ++i) {
+            final var text = text(i);
+            if (text.equals(opening)) {
+                ++depth;
+            } else if (text.equals(closing) && --depth == 0) {
+                return i;
+            }
+        }
+        return size();
+    }
+
+    /**
+     * @param close index of a closing bracket
+     * @return index of the bracket opening it, or {@code -1} if there is none
+     */
+    public int matchingBackward(final int close) {
+        final var closing = text(close);
+        final var opening = opening(closing);
+        var depth = 0;
+        for (int i = close; i >= 0; --i) {
+            final var text = text(i);
+            if (text.equals(closing)) {
+                ++depth;
+            } else if (text.equals(opening) && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String closing(final String opening) {
+        return switch (opening) {
+            case "(" -> ")";
+            case "[" -> "]";
+            case "{" -> "}";
+            default -> throw new IllegalArgumentException("Not an opening bracket: " + opening);
+        };
+    }
+
+    private static String opening(final String closing) {
+        return switch (closing) {
+            case ")" -> "(";
+            case "]" -> "[";
+            case "}" -> "{";
+            default -> throw new IllegalArgumentException("Not a closing bracket: " + closing);
+        };
+    }
+
+    public enum Kind {
+        IDENTIFIER,
+        KEYWORD,
+        /**
+         * Keyword or predeclared identifier naming a primitive type
+         */
+        TYPE,
+        LITERAL,
+        OPERATOR,
+    }
+}
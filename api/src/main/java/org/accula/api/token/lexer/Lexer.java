@@ -0,0 +1,225 @@
+package org.accula.api.token.lexer;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hand-written lexer of the C-like and Python-like languages configured by their comments, quotes, operators and keywords.
+ * Whitespaces and comments are skipped, the rest of the text is split into the identifiers, keywords, literals and operators.
+ * The characters not forming any multi-character operator of the language are single-character operators.
+ *
+ * @author Anton Lamtev
+ */
+public final class Lexer {
+    private static final String[] ASCII = new String[128];
+    private static final String STRING_PREFIX_CHARS = "rRbBfFuUL8";
+    private static final int MAX_STRING_PREFIX_LENGTH = 2;
+
+    static {
+        for (char c = 0; c < ASCII.length; ++c) {
+            ASCII[c] = String.valueOf(c);
+        }
+    }
+
+    private final Spec spec;
+    private final List<String> operators;
+
+    public Lexer(final Spec spec) {
+        this.spec = spec;
+        this.operators = spec.operators()
+            .stream()
+            .sorted(Comparator.comparingInt(String::length).reversed())
+            .toList();
+    }
+
+    public Lexemes lex(final CharSequence text) {
+        final var lexemes = new Lexemes();
+        final var length = text.length();
+        var i = 0;
+        while (i < length) {
+            final var c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                ++i;
+                continue;
+            }
+            final var commentEnd = commentEnd(text, i);
+            if (commentEnd > i) {
+                i = commentEnd;
+                continue;
+            }
+            final var stringEnd = stringEnd(text, i);
+            if (stringEnd > i) {
+                lexemes.add(Lexemes.Kind.LITERAL, "", i, stringEnd);
+                i = stringEnd;
+                continue;
+            }
+            if (Character.isJavaIdentifierStart(c)) {
+                i = word(text, i, lexemes);
+                continue;
+            }
+            if (Character.isDigit(c) || c == '.' && i + 1 < length && Character.isDigit(text.charAt(i + 1))) {
+                final var numberEnd = numberEnd(text, i);
+                lexemes.add(Lexemes.Kind.LITERAL, "", i, numberEnd);
+                i = numberEnd;
+                continue;
+            }
+            final var operator = operator(text, i);
+            lexemes.add(Lexemes.Kind.OPERATOR, operator, i, i + operator.length());
+            i += operator.length();
+        }
+        return lexemes;
+    }
+
+    private int word(final CharSequence text, final int start, final Lexemes lexemes) {
+        var end = start + 1;
+        while (end < text.length() && Character.isJavaIdentifierPart(text.charAt(end))) {
+            ++end;
+        }
+        // String prefixes like f"..." in Python or u8"..." in C++
+        if (isStringPrefix(text, start, end)) {
+            final var stringEnd = stringEnd(text, end);
+            if (stringEnd > end) {
+                lexemes.add(Lexemes.Kind.LITERAL, "", start, stringEnd);
+                return stringEnd;
+            }
+        }
+        final var word = text.subSequence(start, end).toString();
+        final Lexemes.Kind kind;
+        if (spec.typeKeywords().contains(word)) {
+            kind = Lexemes.Kind.TYPE;
+        } else if (spec.keywords().contains(word)) {
+            kind = Lexemes.Kind.KEYWORD;
+        } else {
+            kind = Lexemes.Kind.IDENTIFIER;
+        }
+        lexemes.add(kind, word, start, end);
+        return end;
+    }
+
+    private int commentEnd(final CharSequence text, final int start) {
+        for (final var lineComment : spec.lineComments()) {
+            if (startsWith(text, start, lineComment)) {
+                var end = start + lineComment.length();
+                while (end < text.length() && text.charAt(end) != '\n') {
+                    ++end;
+                }
+                return end;
+            }
+        }
+        final var blockCommentStart = spec.blockCommentStart();
+        final var blockCommentEnd = spec.blockCommentEnd();
+        if (blockCommentStart != null && blockCommentEnd != null && startsWith(text, start, blockCommentStart)) {
+            for (int end = start + blockCommentStart.length(); end < text.length(); ++end) {
+                if (startsWith(text, end, blockCommentEnd)) {
+                    return end + blockCommentEnd.length();
+                }
+            }
+            return text.length();
+        }
+        return start;
+    }
+
+    private int stringEnd(final CharSequence text, final int start) {
+        for (final var quote : spec.quotes()) {
+            final var delimiter = quote.delimiter();
+            if (!startsWith(text, start, delimiter)) {
+                continue;
+            }
+            var end = start + delimiter.length();
+            while (end < text.length()) {
+                final var c = text.charAt(end);
+                if (quote.escapes() && c == '\\') {
+                    end += 2;
+                } else if (!quote.multiline() && c == '\n') {
+                    // Unterminated string, which must not swallow the rest of the text
+                    return end;
+                } else if (startsWith(text, end, delimiter)) {
+                    return end + delimiter.length();
+                } else {
+                    ++end;
+                }
+            }
+            return text.length();
+        }
+        return start;
+    }
+
+    private static int numberEnd(final CharSequence text, final int start) {
+        var end = start + 1;
+        while (end < text.length()) {
+            final var c = text.charAt(end);
+            final var previous = text.charAt(end - 1);
+            final var exponentSign = (c == '+' || c == '-') && "eEpP".indexOf(previous) >= 0;
+            // Digit separators like 1'000'000 in C++
+            final var separator = c == '\'' && end + 1 < text.length() && Character.isDigit(text.charAt(end + 1));
+            if (Character.isLetterOrDigit(c) || c == '_' || c == '.' || exponentSign || separator) {
+                ++end;
+            } else {
+                break;
+            }
+        }
+        return end;
+    }
+
+    private String operator(final CharSequence text, final int start) {
+        for (final var operator : operators) {
+            if (startsWith(text, start, operator)) {
+                return operator;
+            }
+        }
+        final var c = text.charAt(start);
+        return c < ASCII.length ? ASCII[c] : String.valueOf(c);
+    }
+
+    private static boolean isStringPrefix(final CharSequence text, final int start, final int end) {
+        if (end - start > MAX_STRING_PREFIX_LENGTH || end >= text.length()) {
+            return false;
+        }
+        for (int i = start; i < end; ++i) {
+            if (STRING_PREFIX_CHARS.indexOf(text.charAt(i)) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(final CharSequence text, final int start, final String prefix) {
+        if (start + prefix.length() > text.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); ++i) {
+            if (text.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param lineComments      prefixes of the comments lasting until the end of the line
+     * @param blockCommentStart opening of the block comments, {@code null} if there are none
+     * @param blockCommentEnd   closing of the block comments, {@code null} if there are none
+     * @param quotes            delimiters of the string and character literals, the longer ones first
+     * @param operators         operators of more than one character
+     * @param keywords          reserved words
+     * @param typeKeywords      words naming the primitive types, which are normalized as the same token
+     */
+    public record Spec(List<String> lineComments,
+                       @Nullable String blockCommentStart,
+                       @Nullable String blockCommentEnd,
+                       List<Quote> quotes,
+                       List<String> operators,
+                       Set<String> keywords,
+                       Set<String> typeKeywords) {
+    }
+
+    /**
+     * @param multiline whether the literal may span several lines
+     * @param escapes   whether a backslash escapes the next character
+     */
+    public record Quote(String delimiter, boolean multiline, boolean escapes) {
+    }
+}
@@ -0,0 +1,127 @@
+package org.accula.api.token.lexer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineOffsets;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.FileTokens;
+import org.accula.api.token.LanguageTokenProvider;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenTypes;
+import org.accula.api.util.Checks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Token provider of a language without a parser: the file is split into the lexemes,
+ * and the function bodies are found among them by the heuristics of the language.
+ * It takes neither a PSI nor a compiler environment, so a language is added at the cost of its lexer.
+ * The brackets and semicolons are not valuable tokens, as they follow from the rest.
+ *
+ * @author Anton Lamtev
+ */
+public abstract class LexerTokenProvider<Ref> implements LanguageTokenProvider<Ref> {
+    protected static final String ANONYMOUS = "<anonymous>";
+    protected static final String LAMBDA = "<lambda>";
+    private static final int NORMALIZATION_VERSION = 3;
+    private static final Set<String> SKIPPED = Set.of("{", "}", "(", ")", ";");
+    private final String language;
+    private final List<String> extensions;
+    private final Lexer lexer;
+
+    /**
+     * @param extensions file name suffixes the files of the language have, e.g. {@code .go}
+     */
+    protected LexerTokenProvider(final String language, final List<String> extensions, final Lexer.Spec spec) {
+        this.language = language;
+        this.extensions = extensions;
+        this.lexer = new Lexer(spec);
+    }
+
+    @Override
+    public boolean supportsFile(final FileEntity<Ref> file) {
+        final var name = file.name();
+        for (final var extension : extensions) {
+            if (name.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Only the functions the file lines intersect are tokenized
+     */
+    @Override
+    public Stream<List<Token<Ref>>> tokensByMethods(final FileEntity<Ref> file) {
+        return FileTokens.tokensByMethods(methods(file, file.lines()::containsAny), file);
+    }
+
+    @Override
+    public FileTokens tokenize(final FileEntity<Ref> file) {
+        return new FileTokens(methods(file, lines -> true).toList());
+    }
+
+    @Override
+    public String language() {
+        return language;
+    }
+
+    @Override
+    public int normalizationVersion() {
+        return NORMALIZATION_VERSION;
+    }
+
+    /**
+     * @return functions in the order they start, the nested ones are tokenized along with the enclosing ones
+     */
+    protected abstract List<Function> functions(Lexemes lexemes, LineOffsets lineOffsets);
+
+    private Stream<FileTokens.Method> methods(final FileEntity<?> file, final Predicate<LineRange> methodFilter) {
+        final var content = Checks.notNull(file.content(), "FileEntity content");
+        final var lineOffsets = LineOffsets.of(content);
+        final var lexemes = lexer.lex(content);
+        return functions(lexemes, lineOffsets)
+            .stream()
+            .filter(function -> methodFilter.test(lines(function, lexemes, lineOffsets)))
+            .map(function -> method(function, lexemes, lineOffsets));
+    }
+
+    private static LineRange lines(final Function function, final Lexemes lexemes, final LineOffsets lineOffsets) {
+        return lineOffsets.lineRange(lexemes.start(function.first()), lexemes.end(function.last()));
+    }
+
+    private static FileTokens.Method method(final Function function, final Lexemes lexemes, final LineOffsets lineOffsets) {
+        final var types = new IntArrayList(function.bodyTo() - function.bodyFrom());
+        final var tokenLines = new ArrayList<LineRange>(function.bodyTo() - function.bodyFrom());
+        for (int i = function.bodyFrom(); i < function.bodyTo(); ++i) {
+            if (SKIPPED.contains(lexemes.text(i))) {
+                continue;
+            }
+            types.add(TokenTypes.id(lexemes.tokenString(i)));
+            tokenLines.add(lineOffsets.lineRange(lexemes.start(i), lexemes.end(i)));
+        }
+        return new FileTokens.Method(
+            function.name(),
+            lines(function, lexemes, lineOffsets),
+            types.toIntArray(),
+            tokenLines.toArray(LineRange[]::new),
+            List.of()
+        );
+    }
+
+    /**
+     * Lexeme indexes of a function
+     *
+     * @param first    first lexeme of the declaration
+     * @param bodyFrom first lexeme of the body
+     * @param bodyTo   lexeme right after the body
+     * @param last     last lexeme of the declaration, e.g. the closing brace
+     */
+    protected record Function(String name, int first, int bodyFrom, int bodyTo, int last) {
+    }
+}
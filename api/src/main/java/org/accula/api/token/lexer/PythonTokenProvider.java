@@ -0,0 +1,161 @@
+package org.accula.api.token.lexer;
+
+import org.accula.api.code.lines.LineOffsets;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Finds the functions by the {@code def} keyword: the body follows the colon ending the signature
+ * and lasts until the first line indented no deeper than the line of the {@code def}.
+ * The lines continued inside the brackets do not end the body regardless of their indentation.
+ * The lambdas out of the functions are found by the {@code lambda} keyword: the body is the expression
+ * following the colon until a comma, a closing bracket or a comprehension clause out of its own brackets, or the line end.
+ * The nested functions and lambdas are tokenized along with the enclosing one, while the methods of the classes are found,
+ * as a class is not a function.
+ *
+ * @author Anton Lamtev
+ */
+public final class PythonTokenProvider<Ref> extends LexerTokenProvider<Ref> {
+    private static final Lexer.Spec SPEC = new Lexer.Spec(
+        List.of("#"),
+        null,
+        null,
+        List.of(
+            new Lexer.Quote("\"\"\"", true, true),
+            new Lexer.Quote("'''", true, true),
+            new Lexer.Quote("\"", false, true),
+            new Lexer.Quote("'", false, true)
+        ),
+        List.of("**=", "//=", ">>=", "<<=", "...", "**", "//", "<<", ">>", "<=", ">=", "==", "!=", "->", "+=", "-=", "*=", "/=",
+            "%=", "&=", "|=", "^=", "@=", ":="),
+        Set.of("False", "None", "True", "and", "as", "assert", "async", "await", "break", "class", "continue", "def", "del",
+            "elif", "else", "except", "finally", "for", "from", "global", "if", "import", "in", "is", "lambda", "nonlocal",
+            "not", "or", "pass", "raise", "return", "try", "while", "with", "yield"),
+        Set.of()
+    );
+
+    public PythonTokenProvider() {
+        super("python", List.of(".py"), SPEC);
+    }
+
+    @Override
+    protected List<Function> functions(final Lexemes lexemes, final LineOffsets lineOffsets) {
+        final var functions = new ArrayList<Function>();
+        var i = 0;
+        while (i < lexemes.size()) {
+            final Function function;
+            if (lexemes.is(i, "def")) {
+                function = function(lexemes, lineOffsets, i);
+            } else if (lexemes.is(i, "lambda")) {
+                function = lambda(lexemes, lineOffsets, i);
+            } else {
+                function = null;
+            }
+            if (function == null) {
+                ++i;
+                continue;
+            }
+            functions.add(function);
+            i = function.bodyTo();
+        }
+        return functions;
+    }
+
+    @Nullable
+    private static Function function(final Lexemes lexemes, final LineOffsets lineOffsets, final int def) {
+        final var colon = signatureEnd(lexemes, def + 1);
+        if (colon < 0) {
+            return null;
+        }
+        final var first = firstOnLine(lexemes, lineOffsets, def);
+        final var indent = indent(lexemes, lineOffsets, first);
+        final var bodyTo = bodyEnd(lexemes, lineOffsets, colon + 1, indent);
+        if (bodyTo == colon + 1) {
+            return null;
+        }
+        final var name = lexemes.isIdentifier(def + 1) ? lexemes.text(def + 1) : ANONYMOUS;
+        return new Function(name, first, colon + 1, bodyTo, bodyTo - 1);
+    }
+
+    @Nullable
+    private static Function lambda(final Lexemes lexemes, final LineOffsets lineOffsets, final int lambda) {
+        final var colon = signatureEnd(lexemes, lambda + 1);
+        if (colon < 0) {
+            return null;
+        }
+        final var bodyTo = lambdaEnd(lexemes, lineOffsets, colon + 1);
+        if (bodyTo == colon + 1) {
+            return null;
+        }
+        return new Function(LAMBDA, lambda, colon + 1, bodyTo, bodyTo - 1);
+    }
+
+    /**
+     * @return index of the colon ending the signature, {@code -1} if there is none
+     */
+    private static int signatureEnd(final Lexemes lexemes, final int start) {
+        var depth = 0;
+        for (int i = start; i < lexemes.size(); ++i) {
+            depth += depthChange(lexemes, i);
+            if (depth == 0 && lexemes.is(i, ":")) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int bodyEnd(final Lexemes lexemes, final LineOffsets lineOffsets, final int bodyStart, final int indent) {
+        var depth = 0;
+        for (int i = bodyStart; i < lexemes.size(); ++i) {
+            if (depth == 0 && line(lexemes, lineOffsets, i) != line(lexemes, lineOffsets, i - 1)
+                && indent(lexemes, lineOffsets, i) <= indent) {
+                return i;
+            }
+            depth += depthChange(lexemes, i);
+        }
+        return lexemes.size();
+    }
+
+    private static int lambdaEnd(final Lexemes lexemes, final LineOffsets lineOffsets, final int bodyStart) {
+        var depth = 0;
+        for (int i = bodyStart; i < lexemes.size(); ++i) {
+            if (depth == 0 && (lexemes.is(i, ",") || lexemes.is(i, ";") || lexemes.is(i, "for")
+                               || i > bodyStart && line(lexemes, lineOffsets, i) != line(lexemes, lineOffsets, i - 1))) {
+                return i;
+            }
+            depth += depthChange(lexemes, i);
+            if (depth < 0) {
+                return i;
+            }
+        }
+        return lexemes.size();
+    }
+
+    private static int firstOnLine(final Lexemes lexemes, final LineOffsets lineOffsets, final int index) {
+        final var line = line(lexemes, lineOffsets, index);
+        var first = index;
+        while (first > 0 && line(lexemes, lineOffsets, first - 1) == line) {
+            --first;
+        }
+        return first;
+    }
+
+    private static int indent(final Lexemes lexemes, final LineOffsets lineOffsets, final int index) {
+        return lexemes.start(index) - lineOffsets.lineStart(line(lexemes, lineOffsets, index));
+    }
+
+    private static int line(final Lexemes lexemes, final LineOffsets lineOffsets, final int index) {
+        return lineOffsets.line(lexemes.start(index));
+    }
+
+    private static int depthChange(final Lexemes lexemes, final int index) {
+        return switch (lexemes.text(index)) {
+            case "(", "[", "{" -> 1;
+            case ")", "]", "}" -> -1;
+            default -> 0;
+        };
+    }
+}
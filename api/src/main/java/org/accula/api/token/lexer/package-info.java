@@ -0,0 +1,4 @@
+@NonNullApi
+package org.accula.api.token.lexer;
+
+import org.accula.api.annotation.NonNullApi;
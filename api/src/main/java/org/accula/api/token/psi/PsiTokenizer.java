@@ -0,0 +1,153 @@
+package org.accula.api.token.psi;
+
+import com.intellij.psi.PsiElement;
+import it.unimi.dsi.fastutil.HashCommon;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.accula.api.code.lines.LineOffsets;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.FileTokens;
+import org.accula.api.token.MethodTokens;
+import org.accula.api.token.TokenTypes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single pass over the method tree collecting the valuable tokens in pre-order
+ * and computing the structural hashes of the subtrees bottom-up.
+ * <p>
+ * The hash of a subtree combines the hash of its token string with the hashes of its children having valuable tokens:
+ * in order for the ordinary elements and as a sum for the unordered ones (e.g. code blocks),
+ * so the code blocks with the same statements in any order hash equally.
+ * The token strings are hashed by {@link TokenTypes#hash} rather than by their ids assigned per process,
+ * since the hashes are persisted along with the tokens and compared with the ones computed after a restart.
+ * The traversal is backed by an explicit stack, so deep trees do not overflow the call stack.
+ * The token lines are looked up in the line offsets of the file computed once for all its methods.
+ * The hashes cost a mix per element, so they are computed only if the blocks are requested.
+ * <p>
+ * A tokenizer is created per file and reuses its token buffers and stack frames for all the methods of the file,
+ * so it must not be shared between threads.
+ *
+ * @author Anton Lamtev
+ */
+public final class PsiTokenizer {
+    private static final long ORDERED_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    private final Grammar grammar;
+    private final LineOffsets lineOffsets;
+    private final boolean hashBlocks;
+    private final IntArrayList types = new IntArrayList();
+    private final List<LineRange> tokenLines = new ArrayList<>();
+    /**
+     * Frames by the depth of the element in the method tree
+     */
+    private final List<Frame> frames = new ArrayList<>();
+
+    /**
+     * @param lineOffsets line offsets of the file the methods of which are tokenized
+     * @param hashBlocks  whether the blocks of the methods are hashed, otherwise the methods carry no blocks
+     */
+    public PsiTokenizer(final Grammar grammar, final LineOffsets lineOffsets, final boolean hashBlocks) {
+        this.grammar = grammar;
+        this.lineOffsets = lineOffsets;
+        this.hashBlocks = hashBlocks;
+    }
+
+    /**
+     * @param name  name of the method
+     * @param lines lines of the method
+     */
+    public FileTokens.Method tokenize(final PsiElement body, final String name, final LineRange lines) {
+        types.clear();
+        tokenLines.clear();
+        final var blocks = new ArrayList<MethodTokens.Block>();
+        var depth = 0;
+        enter(body, depth);
+        while (depth >= 0) {
+            final var frame = frames.get(depth);
+            if (frame.nextChild < frame.children.length) {
+                enter(frame.children[frame.nextChild++], ++depth);
+                continue;
+            }
+            if (!hashBlocks) {
+                --depth;
+                continue;
+            }
+            final var hash = frame.hash();
+            if (depth > 0 && frame.valuableTokenCount > 0) {
+                frames.get(depth - 1).addChild(hash, frame.valuableTokenCount);
+            }
+            if (grammar.isBlock(frame.element) && frame.valuableTokenCount > 0) {
+                blocks.add(new MethodTokens.Block(hash, frame.firstToken, types.size()));
+            }
+            --depth;
+        }
+        return new FileTokens.Method(name, lines, types.toIntArray(), tokenLines.toArray(LineRange[]::new), blocks);
+    }
+
+    private void enter(final PsiElement element, final int depth) {
+        if (depth == frames.size()) {
+            frames.add(new Frame());
+        }
+        final var frame = frames.get(depth);
+        frame.reset(element, hashBlocks && grammar.isUnordered(element), types.size());
+        if (grammar.isValuableToken(element)) {
+            frame.valuableTokenCount = 1;
+            final var type = TokenTypes.id(grammar.tokenString(element));
+            if (hashBlocks) {
+                frame.typeHash = HashCommon.mix(TokenTypes.hash(type));
+            }
+            types.add(type);
+            tokenLines.add(PsiUtils.lineRange(element, lineOffsets));
+        }
+    }
+
+    /**
+     * Language specific rules of the tokenization
+     */
+    public interface Grammar {
+        boolean isValuableToken(PsiElement element);
+
+        String tokenString(PsiElement element);
+
+        /**
+         * Whether the structural hash of the element is recorded as a block of the method
+         */
+        boolean isBlock(PsiElement element);
+
+        /**
+         * Whether the order of the children of the element does not matter for its structural hash
+         */
+        boolean isUnordered(PsiElement element);
+    }
+
+    private static final class Frame {
+        PsiElement element;
+        PsiElement[] children;
+        boolean unordered;
+        int firstToken;
+        int nextChild;
+        int valuableTokenCount;
+        long typeHash;
+        long childrenHash;
+
+        void reset(final PsiElement element, final boolean unordered, final int firstToken) {
+            this.element = element;
+            this.children = element.getChildren();
+            this.unordered = unordered;
+            this.firstToken = firstToken;
+            this.nextChild = 0;
+            this.valuableTokenCount = 0;
+            this.typeHash = 0L;
+            this.childrenHash = 0L;
+        }
+
+        void addChild(final long hash, final int childValuableTokenCount) {
+            valuableTokenCount += childValuableTokenCount;
+            childrenHash = unordered ? childrenHash + hash : childrenHash * ORDERED_MULTIPLIER + hash;
+        }
+
+        long hash() {
+            return HashCommon.mix(typeHash ^ (childrenHash * ORDERED_MULTIPLIER + (unordered ? 1L : 0L)));
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package org.accula.api.token.psi;
 
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiRecursiveElementVisitor;
+import org.accula.api.code.lines.LineOffsets;
 import org.accula.api.code.lines.LineRange;
-import org.accula.api.util.Checks;
+import org.accula.api.token.TraverseUtils;
 
-import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * @author Anton Lamtev
@@ -14,28 +14,18 @@ public final class PsiUtils {
     private PsiUtils() {
     }
 
-    public static <T extends PsiElement> void forEachDescendantOfType(final PsiElement root,
-                                                                      final Class<T> type,
-                                                                      final Consumer<? super T> onEach) {
-        root.accept(new PsiRecursiveElementVisitor() {
-            @SuppressWarnings("unchecked")
-            @Override
-            public void visitElement(final PsiElement element) {
-                super.visitElement(element);
-                if (type.isAssignableFrom(element.getClass())) {
-                    onEach.accept((T) element);
-                }
-            }
-        });
+    /**
+     * Lazily finds the descendants of the type in post-order, so the nested ones precede their ancestors
+     */
+    public static <T extends PsiElement> Stream<T> descendantsOfType(final PsiElement root, final Class<T> type) {
+        return TraverseUtils
+            .postOrder(root, PsiElement::getFirstChild, PsiElement::getNextSibling, PsiElement::getParent)
+            .filter(type::isInstance)
+            .map(type::cast);
     }
 
-    public static LineRange lineRange(final PsiElement element) {
-        final var file = element.getContainingFile();
-        final var doc = Checks.notNull(file.getViewProvider().getDocument(), "Document");
-        final var relativeRange = element.getTextRange();
-        return LineRange.of(
-                doc.getLineNumber(relativeRange.getStartOffset()) + 1,
-                doc.getLineNumber(relativeRange.getEndOffset()) + 1
-        );
+    public static LineRange lineRange(final PsiElement element, final LineOffsets lineOffsets) {
+        final var range = element.getTextRange();
+        return lineOffsets.lineRange(range.getStartOffset(), range.getEndOffset());
     }
 }
@@ -9,9 +9,23 @@ import java.util.function.Supplier;
  * @author Anton Lamtev
  */
 public final class Sync {
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
-    private final Lock readLock = lock.readLock();
-    private final Lock writeLock = lock.writeLock();
+    private final ReadWriteLock lock;
+    private final Lock readLock;
+    private final Lock writeLock;
+
+    public Sync() {
+        this(false);
+    }
+
+    /**
+     * @param fair whether the lock should use a fair ordering policy,
+     *             so neither readers nor writers are starved by the frequent acquisitions of the other side
+     */
+    public Sync(final boolean fair) {
+        lock = new ReentrantReadWriteLock(fair);
+        readLock = lock.readLock();
+        writeLock = lock.writeLock();
+    }
 
     public <T> Supplier<T> reading(final Supplier<T> readOp) {
         return () -> {
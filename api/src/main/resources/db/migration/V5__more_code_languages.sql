@@ -0,0 +1,3 @@
+ALTER TYPE code_language_enum ADD VALUE 'CPP';
+ALTER TYPE code_language_enum ADD VALUE 'PYTHON';
+ALTER TYPE code_language_enum ADD VALUE 'GO';
@@ -0,0 +1,133 @@
+package org.accula.api.clone;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Anton Lamtev
+ */
+class CloneDetectorCacheTest {
+    static final long DETECTOR_SIZE = 100L;
+
+    final Map<Long, Integer> createdCounts = new HashMap<>();
+    final Map<Long, CloneDetector> detectors = new HashMap<>();
+    final List<String> events = new ArrayList<>();
+    CloneDetectorCache cache;
+
+    @BeforeEach
+    void setUp() {
+        createdCounts.clear();
+        detectors.clear();
+        events.clear();
+        cache = new CloneDetectorCache(projectId -> Mono.fromSupplier(() -> {
+            createdCounts.merge(projectId, 1, Integer::sum);
+            events.add("created " + projectId);
+            final var detector = mock(CloneDetector.class);
+            when(detector.estimatedSize()).thenReturn(DETECTOR_SIZE);
+            doAnswer(invocation -> events.add("released " + projectId)).when(detector).release();
+            detectors.put(projectId, detector);
+            return detector;
+        }), () -> 2 * DETECTOR_SIZE);
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsReleased() {
+        use(1L);
+        use(2L);
+        use(1L);
+        use(3L);
+
+        verify(detectors.get(2L)).release();
+        verify(detectors.get(1L), never()).release();
+        verify(detectors.get(3L), never()).release();
+
+        final var released = detectors.get(2L);
+        use(2L);
+        assertEquals(2, createdCounts.get(2L));
+        assertEquals(1, createdCounts.get(1L));
+        verify(released, times(1)).release();
+    }
+
+    @Test
+    void testDetectorInUseIsNotReleased() {
+        final var sink = Sinks.empty();
+        final var inUse = cache.use(1L, detector -> sink.asMono()).subscribe();
+        use(2L);
+        use(3L);
+
+        verify(detectors.get(1L), never()).release();
+        verify(detectors.get(2L)).release();
+
+        sink.tryEmitEmpty();
+        inUse.dispose();
+        use(4L);
+        verify(detectors.get(1L)).release();
+    }
+
+    @Test
+    void testRemove() {
+        use(1L);
+        cache.remove(1L, () -> events.add("removed 1"));
+        assertEquals(List.of("created 1", "released 1", "removed 1"), events);
+        use(1L);
+        assertEquals(2, createdCounts.get(1L));
+
+        cache.remove(2L, () -> events.add("removed 2"));
+        assertEquals("removed 2", events.get(events.size() - 1));
+    }
+
+    @Test
+    void testDetectorInUseIsReleasedBeforeRecreation() {
+        final var sink = Sinks.empty();
+        final var inUse = cache.use(1L, detector -> sink.asMono()).subscribe();
+        final var detector = detectors.get(1L);
+        cache.remove(1L, () -> events.add("removed 1"));
+        cache.remove(1L, () -> events.add("removed again 1"));
+        verify(detector, never()).release();
+
+        // The new detector is not created while the removed one is still in use
+        final var nextUse = cache.use(1L, used -> Flux.just(used)).collectList().toFuture();
+        assertEquals(1, createdCounts.get(1L));
+        assertFalse(nextUse.isDone());
+
+        sink.tryEmitEmpty();
+        inUse.dispose();
+        assertEquals(List.of(detectors.get(1L)), nextUse.join());
+        assertEquals(List.of("created 1", "released 1", "removed 1", "removed again 1", "created 1"), events);
+        verify(detector, times(1)).release();
+        verify(detectors.get(1L), never()).release();
+    }
+
+    @Test
+    void testEvictedDetectorIsReleasedBeforeRecreation() {
+        use(1L);
+        use(2L);
+        use(3L);
+        assertEquals(List.of("created 1", "created 2", "created 3", "released 1"), events);
+        use(1L);
+        assertEquals(List.of("created 1", "created 2", "created 3", "released 1", "created 1", "released 2"), events);
+    }
+
+    void use(final Long projectId) {
+        StepVerifier.create(cache.use(projectId, detector -> Flux.empty()))
+            .verifyComplete();
+    }
+}
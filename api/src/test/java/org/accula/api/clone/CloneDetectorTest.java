@@ -6,6 +6,7 @@ import org.accula.api.code.lines.LineSet;
 import org.accula.api.db.model.CodeLanguage;
 import org.accula.api.db.model.GithubRepo;
 import org.accula.api.db.model.Snapshot;
+import org.accula.api.token.java.JavaTokenProvider;
 import org.accula.api.token.java.JavaTokenProviderTest;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,8 +18,10 @@ import java.util.List;
 import java.util.Set;
 
 import static org.accula.api.util.TestData.accula485b362Snap;
+import static org.accula.api.util.TestData.highload17_61Head;
 import static org.accula.api.util.TestData.highload2019_174Head;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author Vadim Dyachkov
@@ -28,10 +31,59 @@ class CloneDetectorTest {
     public static final Snapshot commitSnapshot1 = highload2019_174Head.withPullInfo(new Snapshot.PullInfo(1L, 2));
     public static final Snapshot commitSnapshot2 = highload2019_174Head.withPullInfo(new Snapshot.PullInfo(1L, 3));
     public static final Snapshot commitSnapshot3 = accula485b362Snap.withPullInfo(new Snapshot.PullInfo(2L, 3));
+    static final Snapshot olderCommitSnapshot = highload17_61Head.withPullInfo(new Snapshot.PullInfo(3L, 61));
     public static final FileEntity<Snapshot> source1 = new FileEntity<>(commitSnapshot1, "owner1/repo1/src/main/java/Cell.java", JavaTokenProviderTest.content1, LineSet.all());
     public static final FileEntity<Snapshot> source2 = new FileEntity<>(commitSnapshot2, "owner1/repo1/src/main/java/Cell.java", JavaTokenProviderTest.content1, LineSet.all());
     public static final FileEntity<Snapshot> target1 = new FileEntity<>(commitSnapshot3, "owner2/repo2/src/main/java/Cell.java", JavaTokenProviderTest.content2, LineSet.all());
     public static final GithubRepo.Identity REPO_ID = GithubRepo.Identity.of("", "");
+    static final String sorter = """
+        public class Sorter {
+            public int[] sort(final int[] array) {
+                for (int i = 0; i < array.length; i++) {
+                    for (int j = i + 1; j < array.length; j++) {
+                        if (array[j] < array[i]) {
+                            final int tmp = array[i];
+                            array[i] = array[j];
+                            array[j] = tmp;
+                        }
+                    }
+                }
+                return array;
+            }
+        }
+        """;
+    static final String sorterWithLogging = """
+        public class Sorter {
+            public int[] sort(final int[] array) {
+                for (int i = 0; i < array.length; i++) {
+                    for (int j = i + 1; j < array.length; j++) {
+                        if (array[j] < array[i]) {
+                            final int tmp = array[i];
+                            System.out.println(tmp);
+                            array[i] = array[j];
+                            array[j] = tmp;
+                        }
+                    }
+                }
+                return array;
+            }
+        }
+        """;
+    static final String swapper = """
+        public class Swapper {
+            public int[] swap(final int[] array, final int[] indexes, final int tmp) {
+                System.out.println("Swapping " + indexes.length + " of " + array.length + " elements");
+                while (indexes.length > 1 && indexes[0] != indexes[1]) {
+                    System.out.println("Swapping " + array[indexes[0]] + " and " + array[indexes[1]]);
+                    System.out.println("Remaining " + (indexes.length - 2) + " of " + array.length);
+                }
+                System.out.println("Swapped " + indexes.length + " of " + array.length + " elements");
+                array[i] = array[j];
+                array[j] = tmp;
+                return array;
+            }
+        }
+        """;
 
     Long excludedSourceAuthor;
     CloneDetector cloneDetector;
@@ -81,6 +133,69 @@ class CloneDetectorTest {
             .verifyComplete();
     }
 
+    @Test
+    void testGappedClones() {
+        final var source = new FileEntity<>(commitSnapshot1, "owner1/repo1/src/main/java/Sorter.java", sorter, LineSet.all());
+        final var target = new FileEntity<>(commitSnapshot3, "owner2/repo2/src/main/java/Sorter.java", sorterWithLogging, LineSet.all());
+        final var tokenCount = new JavaTokenProvider<Snapshot>().tokensByMethods(source).findFirst().orElseThrow().size();
+        // Neither part of the method separated by the inserted statement is long enough on its own
+        final var cloneMinTokenCount = tokenCount - 5;
+
+        // The inserted statement is 17 tokens long
+        final var gappedCloneDetector = gappedCloneDetector(cloneMinTokenCount, 20);
+        StepVerifier.create(gappedCloneDetector.fill(Flux.just(source, target)))
+            .verifyComplete();
+        StepVerifier
+            .create(gappedCloneDetector.readClones(commitSnapshot3).collectList())
+            .expectNextMatches(clones -> {
+                assertTrue(clones
+                    .stream()
+                    .anyMatch(clone -> clone.source().snapshot().equals(commitSnapshot1)
+                                       && clone.target().lines().from() <= 6
+                                       && clone.target().lines().to() >= 8), "Actual clones = " + clones);
+                return true;
+            })
+            .verifyComplete();
+
+        final var exactCloneDetector = gappedCloneDetector(cloneMinTokenCount, 0);
+        StepVerifier.create(exactCloneDetector.fill(Flux.just(source, target)))
+            .verifyComplete();
+        StepVerifier
+            .create(exactCloneDetector.readClones(commitSnapshot3).collectList())
+            .expectNextMatches(clones -> {
+                assertEquals(0, clones.size(), "Actual clones = " + clones);
+                return true;
+            })
+            .verifyComplete();
+    }
+
+    @Test
+    void testGappedCloneFragmentInOlderUnrelatedMethod() {
+        final var unrelated = new FileEntity<>(olderCommitSnapshot, "owner3/repo3/src/main/java/Swapper.java", swapper, LineSet.all());
+        final var source = new FileEntity<>(commitSnapshot1, "owner1/repo1/src/main/java/Sorter.java", sorter, LineSet.all());
+        final var target = new FileEntity<>(commitSnapshot3, "owner2/repo2/src/main/java/Sorter.java", sorterWithLogging, LineSet.all());
+        final var tokenCount = new JavaTokenProvider<Snapshot>().tokensByMethods(source).findFirst().orElseThrow().size();
+
+        // The tail of the sorter is the earliest in the unrelated method, while the head is only in the source one
+        final var gappedCloneDetector = gappedCloneDetector(tokenCount - 5, 20);
+        StepVerifier.create(gappedCloneDetector.fill(Flux.just(unrelated, source, target)))
+            .verifyComplete();
+        StepVerifier
+            .create(gappedCloneDetector.readClones(commitSnapshot3).collectList())
+            .expectNextMatches(clones -> {
+                assertTrue(clones
+                    .stream()
+                    .anyMatch(clone -> clone.source().snapshot().equals(commitSnapshot1)
+                                       && clone.target().lines().from() <= 6
+                                       && clone.target().lines().to() >= 8), "Actual clones = " + clones);
+                assertTrue(clones
+                    .stream()
+                    .noneMatch(clone -> clone.source().snapshot().equals(olderCommitSnapshot)), "Actual clones = " + clones);
+                return true;
+            })
+            .verifyComplete();
+    }
+
     @Test
     void testNoTokenProviders() {
         final var cloneDetector = new CloneDetectorImpl(REPO_ID, () -> Mono.just(CloneDetector.Config.builder()
@@ -96,4 +211,15 @@ class CloneDetectorTest {
             .as(StepVerifier::create)
             .verifyComplete();
     }
+
+    static CloneDetector gappedCloneDetector(final int cloneMinTokenCount, final int maxGap) {
+        return new CloneDetectorImpl(REPO_ID, () -> Mono.just(CloneDetector.Config.builder()
+            .cloneMinTokenCount(cloneMinTokenCount)
+            .filter(FileFilter.ALL)
+            .language(CodeLanguage.JAVA)
+            .excludedSourceAuthors(authorId -> false)
+            .gappedCloneMaxGap(maxGap)
+            .gappedCloneFragmentMinTokenCount(10)
+            .build()));
+    }
 }
@@ -0,0 +1,111 @@
+package org.accula.api.clone.engine;
+
+import org.accula.api.clone.suffixtree.SuffixTreeCloneDetector;
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenProvider;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorTest.signatures;
+import static org.accula.api.token.java.JavaTokenProviderTest.content1;
+import static org.accula.api.token.java.JavaTokenProviderTest.content2;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf1;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf2;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf3;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Anton Lamtev
+ */
+class DeduplicatingCloneEngineTest {
+    final TokenProvider<String> tokenProvider = new TokenProvider<>(List.of(new JavaTokenProvider<>()));
+    SuffixTreeCloneDetector<String> suffixTreeDetector;
+    SuffixTreeCloneDetector<String> deduplicatedDetector;
+    DeduplicatingCloneEngine<String> detector;
+
+    @BeforeEach
+    void setUp() {
+        suffixTreeDetector = new SuffixTreeCloneDetector<>("test");
+        deduplicatedDetector = new SuffixTreeCloneDetector<>("test (deduplicated)");
+        detector = new DeduplicatingCloneEngine<>(deduplicatedDetector);
+    }
+
+    @AfterEach
+    void tearDown() {
+        suffixTreeDetector.dispose();
+        detector.dispose();
+    }
+
+    @Test
+    void testSameAsSuffixTree() {
+        final var methods = methods(Flux.just(
+            jf1,
+            jf2,
+            jf3,
+            // The same methods in the next commits, one of them shifted by a line
+            new FileEntity<>("4", "Cell.java", content1, LineSet.all()),
+            new FileEntity<>("5", "Cell.java", "\n" + content2, LineSet.all())
+        ));
+        suffixTreeDetector.addTokensBatch(methods);
+        detector.addTokensBatch(methods.subList(0, 3));
+        detector.addTokensBatch(methods.subList(3, methods.size()));
+
+        assertEquals(signatures(suffixTreeDetector.cloneClasses(it -> true, it -> true).collectList().block()),
+                     signatures(detector.cloneClasses(it -> true, it -> true).collectList().block()));
+        final var minLength = 5;
+        final Predicate<CloneClass<String>> isLongEnough = cloneClass -> cloneClass.length() >= minLength;
+        for (final var ref : List.of("1", "2", "3", "4", "5")) {
+            assertEquals(signatures(suffixTreeDetector.cloneClasses(ref::equals, isLongEnough, it -> true).collectList().block()),
+                         signatures(detector.cloneClasses(ref::equals, minLength, isLongEnough, it -> true).collectList().block()));
+        }
+        assertTrue(detector.estimatedSize() > deduplicatedDetector.estimatedSize());
+    }
+
+    @Test
+    void testDuplicatesAreInsertedOnce() {
+        final var methods = methods(Flux.just(jf2, new FileEntity<>("4", "Cell.java", "\n" + content2, LineSet.all())));
+        final var half = methods.size() / 2;
+        final var ids = detector.addTokensBatch(methods);
+        assertArrayEquals(Arrays.copyOfRange(ids, 0, half), Arrays.copyOfRange(ids, half, ids.length));
+        // Adding the same files of the same refs again changes nothing
+        assertArrayEquals(ids, detector.addTokensBatch(methods));
+
+        final var insertedCloneClasses = deduplicatedDetector.cloneClasses(it -> true, it -> true).collectList().block();
+        assertNotNull(insertedCloneClasses);
+        assertTrue(insertedCloneClasses
+            .stream()
+            .flatMap(cloneClass -> cloneClass.clones().stream())
+            .allMatch(clone -> clone.ref().equals("2")));
+        final var wholeMethods = signatures(detector.cloneClasses(cloneClass -> cloneClass.cloneCount() == 2, it -> true)
+            .collectList()
+            .block());
+        for (final var method : methods.subList(0, half)) {
+            final var first = method.get(0);
+            final var last = method.get(method.size() - 1);
+            assertTrue(wholeMethods.contains("%d[2:%s:%s, 4:%s:%s]".formatted(
+                method.size(),
+                first.methodName(), LineRange.of(first.lines().from(), last.lines().to()),
+                first.methodName(), LineRange.of(first.lines().from() + 1, last.lines().to() + 1)
+            )), "Actual clone classes = " + wholeMethods);
+        }
+    }
+
+    List<List<Token<String>>> methods(final Flux<FileEntity<String>> files) {
+        final var methods = tokenProvider.tokensByMethods(files).collectList().block();
+        assertNotNull(methods);
+        return methods;
+    }
+}
@@ -0,0 +1,162 @@
+package org.accula.api.clone.fingerprint;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.accula.api.clone.journal.RefCodec;
+import org.accula.api.clone.journal.TokenJournal;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.Token;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.accula.api.clone.fingerprint.FingerprintCloneDetectorTest.KGRAM_LENGTH;
+import static org.accula.api.clone.fingerprint.FingerprintCloneDetectorTest.WINDOW_LENGTH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Anton Lamtev
+ */
+class CrossProjectCloneIndexTest {
+    static final RefCodec<String> STRING_CODEC = new RefCodec<>() {
+        @Override
+        public void write(final DataOutput out, final String ref) throws IOException {
+            out.writeUTF(ref);
+        }
+
+        @Override
+        public String read(final DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+    static final int MIN_SHARED_FINGERPRINTS = 2;
+    final Random random = new Random(42L);
+
+    @Test
+    void testCandidatesOfOtherProjects(@TempDir final Path dir) throws IOException {
+        final var index = new CrossProjectCloneIndex<>(dir, STRING_CODEC, KGRAM_LENGTH, WINDOW_LENGTH, MIN_SHARED_FINGERPRINTS);
+        final var clone = types(30);
+        final var pullMethod = method("pull", concat(types(5), clone));
+        final var copiedMethod = method("copied", concat(clone, types(5)));
+        // Token types of the other methods are all below 4
+        final var unrelatedMethod = method("unrelated", List.of(4, 5, 6, 4, 5, 6, 4, 5, 6, 4, 5, 6));
+
+        try (var journal = TokenJournal.open(index.journalPath(1L), STRING_CODEC)) {
+            journal.appendAll(List.of(pullMethod, method("other", types(20))));
+            journal.checkpoint(Set.of("pull", "other"));
+        }
+        try (var journal = TokenJournal.open(index.journalPath(2L), STRING_CODEC)) {
+            journal.appendAll(List.of(unrelatedMethod, copiedMethod));
+            journal.checkpoint(Set.of("unrelated", "copied"));
+        }
+
+        final var candidates = index.candidates(1L, "pull"::equals, projectId -> true);
+        assertEquals(List.of(pullMethod), candidates.queried());
+        assertEquals(List.of(copiedMethod), candidates.others());
+
+        assertTrue(index.candidates(1L, "pull"::equals, projectId -> projectId != 2L).others().isEmpty());
+    }
+
+    @Test
+    void testRefreshIndexesOnlyCheckpointedMethods(@TempDir final Path dir) throws IOException {
+        final var index = new CrossProjectCloneIndex<>(dir, STRING_CODEC, KGRAM_LENGTH, WINDOW_LENGTH, MIN_SHARED_FINGERPRINTS);
+        final var clone = types(30);
+        final var pullMethod = method("pull", clone);
+        final var copiedMethod = method("copied", clone);
+        try (var journal = TokenJournal.open(index.journalPath(1L), STRING_CODEC)) {
+            journal.append(pullMethod);
+            journal.checkpoint(Set.of("pull"));
+        }
+
+        try (var journal = TokenJournal.open(index.journalPath(2L), STRING_CODEC)) {
+            journal.append(copiedMethod);
+            journal.checkpoint(Set.of());
+            index.refresh(2L);
+            assertTrue(index.candidates(1L, "pull"::equals, projectId -> true).others().isEmpty());
+
+            journal.checkpoint(Set.of("copied"));
+            index.refresh(2L);
+            assertEquals(List.of(copiedMethod), index.candidates(1L, "pull"::equals, projectId -> true).others());
+        }
+    }
+
+    @Test
+    void testMethodSharingSingleFingerprintIsNotCandidate(@TempDir final Path dir) throws IOException {
+        final var pullTypes = types(30);
+        final var pullMethod = method("pull", pullTypes);
+        final var pullFingerprints = LongArrayList.wrap(Fingerprints.of(pullMethod, KGRAM_LENGTH, WINDOW_LENGTH));
+        // A single k-gram of the pull method, which is selected as its fingerprint
+        final var kgramMethod = IntStream
+            .rangeClosed(0, pullTypes.size() - KGRAM_LENGTH)
+            .mapToObj(from -> method("kgram", pullTypes.subList(from, from + KGRAM_LENGTH)))
+            .filter(method -> pullFingerprints.contains(Fingerprints.of(method, KGRAM_LENGTH, WINDOW_LENGTH)[0]))
+            .findFirst()
+            .orElseThrow();
+        try (var journal = TokenJournal.open(dir.resolve("1.tokens"), STRING_CODEC)) {
+            journal.append(pullMethod);
+            journal.checkpoint(Set.of("pull"));
+        }
+        try (var journal = TokenJournal.open(dir.resolve("2.tokens"), STRING_CODEC)) {
+            journal.append(kgramMethod);
+            journal.checkpoint(Set.of("kgram"));
+        }
+
+        final var index = new CrossProjectCloneIndex<>(dir, STRING_CODEC, KGRAM_LENGTH, WINDOW_LENGTH, MIN_SHARED_FINGERPRINTS);
+        assertTrue(index.candidates(1L, "pull"::equals, projectId -> true).others().isEmpty());
+        final var permissiveIndex = new CrossProjectCloneIndex<>(dir, STRING_CODEC, KGRAM_LENGTH, WINDOW_LENGTH, 1);
+        assertEquals(List.of(kgramMethod), permissiveIndex.candidates(1L, "pull"::equals, projectId -> true).others());
+    }
+
+    @Test
+    void testCompactedJournalIsIndexedAnew(@TempDir final Path dir) throws IOException {
+        final var index = new CrossProjectCloneIndex<>(dir, STRING_CODEC, KGRAM_LENGTH, WINDOW_LENGTH, MIN_SHARED_FINGERPRINTS);
+        final var clone = types(30);
+        final var pullMethod = method("pull", clone);
+        final var copiedMethod = method("copied", concat(types(5), clone));
+        try (var journal = TokenJournal.open(index.journalPath(1L), STRING_CODEC)) {
+            journal.append(pullMethod);
+            journal.checkpoint(Set.of("pull"));
+        }
+        try (var journal = TokenJournal.open(index.journalPath(2L), STRING_CODEC)) {
+            journal.append(method("abandoned", types(40)));
+            journal.append(copiedMethod);
+            journal.checkpoint(Set.of("copied"));
+        }
+        index.refresh(2L);
+        assertEquals(List.of(copiedMethod), index.candidates(1L, "pull"::equals, projectId -> true).others());
+
+        // The abandoned method is dropped, so the offset of the copied one changes
+        try (var journal = TokenJournal.open(index.journalPath(2L), STRING_CODEC)) {
+            journal.append(method("unrelated", List.of(4, 5, 6, 4, 5, 6, 4, 5, 6, 4, 5, 6)));
+            journal.checkpoint(Set.of("unrelated"));
+        }
+        index.refresh(2L);
+        assertEquals(List.of(copiedMethod), index.candidates(1L, "pull"::equals, projectId -> true).others());
+    }
+
+    List<Integer> types(final int count) {
+        return random.ints(count, 0, 4).boxed().toList();
+    }
+
+    static List<Integer> concat(final List<Integer> fst, final List<Integer> snd) {
+        final var concatenated = new ArrayList<>(fst);
+        concatenated.addAll(snd);
+        return concatenated;
+    }
+
+    static List<Token<String>> method(final String ref, final List<Integer> types) {
+        return types
+            .stream()
+            .map(type -> Token.of("TOKEN_" + type, "File.java", ref, LineRange.of(1), ref))
+            .toList();
+    }
+}
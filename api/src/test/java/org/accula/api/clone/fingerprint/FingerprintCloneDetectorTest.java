@@ -0,0 +1,134 @@
+package org.accula.api.clone.fingerprint;
+
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.clone.suffixtree.SuffixTreeCloneDetector;
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenProvider;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.accula.api.token.kotlin.KotlinTokenProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorTest.F3;
+import static org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorTest.F4;
+import static org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorTest.signatures;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf1;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf2;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf3;
+import static org.accula.api.token.kotlin.KotlinTokenProviderTest.content1;
+import static org.accula.api.token.kotlin.KotlinTokenProviderTest.content2;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Anton Lamtev
+ */
+class FingerprintCloneDetectorTest {
+    static final int KGRAM_LENGTH = 3;
+    static final int WINDOW_LENGTH = 4;
+    final TokenProvider<String> tokenProvider = new TokenProvider<>(List.of(
+        new JavaTokenProvider<>(),
+        new KotlinTokenProvider<>()
+    ));
+    FingerprintCloneDetector<String> detector;
+    SuffixTreeCloneDetector<String> suffixTreeDetector;
+
+    @BeforeEach
+    void setUp() {
+        detector = new FingerprintCloneDetector<>("test", KGRAM_LENGTH, WINDOW_LENGTH);
+        suffixTreeDetector = new SuffixTreeCloneDetector<>("test");
+    }
+
+    @Test
+    void testSameAsSuffixTree() {
+        final var methods = methods(Flux.just(
+            jf1,
+            jf2,
+            jf3,
+            new FileEntity<>("ref1", "SSTable.java", F3, LineSet.all()),
+            new FileEntity<>("ref2", "SSTable.java", F4, LineSet.all()),
+            new FileEntity<>("4", "Cell.kt", content1, LineSet.inRange(1, 33)),
+            new FileEntity<>("5", "myFile.kt", content2, LineSet.all())
+        ));
+        detector.addTokensBatch(methods);
+        suffixTreeDetector.addTokensBatch(methods);
+
+        assertEquals(signatures(suffixTreeDetector.cloneClasses(it -> true, it -> true).collectList().block()),
+                     signatures(detector.cloneClasses(it -> true, it -> true).collectList().block()));
+        final var minLength = 10;
+        final Predicate<CloneClass<String>> isLongEnough = cloneClass -> cloneClass.length() >= minLength;
+        for (final var ref : List.of("1", "2", "3", "ref1", "ref2", "4", "5")) {
+            final Predicate<String> refFilter = ref::equals;
+            assertEquals(signatures(suffixTreeDetector.cloneClasses(refFilter, minLength, isLongEnough, it -> true).collectList().block()),
+                         signatures(detector.cloneClasses(refFilter, minLength, isLongEnough, it -> true).collectList().block()));
+        }
+    }
+
+    @Test
+    void testMinLengthIsClampedToGuaranteedLength() {
+        final var methods = methods(Flux.just(jf1, jf2, jf3));
+        detector.addTokensBatch(methods);
+        suffixTreeDetector.addTokensBatch(methods);
+
+        final var guaranteedLength = Fingerprints.guaranteedLength(KGRAM_LENGTH, WINDOW_LENGTH);
+        final Predicate<CloneClass<String>> isGuaranteed = cloneClass -> cloneClass.length() >= guaranteedLength;
+        for (final var ref : List.of("1", "2", "3")) {
+            final Predicate<String> refFilter = ref::equals;
+            assertEquals(signatures(suffixTreeDetector.cloneClasses(refFilter, guaranteedLength, isGuaranteed, it -> true)
+                             .collectList()
+                             .block()),
+                         signatures(detector.cloneClasses(refFilter, 1, it -> true, it -> true).collectList().block()));
+        }
+    }
+
+    @Test
+    void testFingerprintsOfCommonSubsequence() {
+        final var random = new Random(42L);
+        final var guaranteedLength = Fingerprints.guaranteedLength(KGRAM_LENGTH, WINDOW_LENGTH);
+        for (int i = 0; i < 1000; ++i) {
+            final var common = tokens(random, guaranteedLength + random.nextInt(10));
+            final var fst = concat(tokens(random, random.nextInt(20)), common, tokens(random, random.nextInt(20)));
+            final var snd = concat(tokens(random, random.nextInt(20)), common, tokens(random, random.nextInt(20)));
+
+            final var fstFingerprints = Fingerprints.of(fst, KGRAM_LENGTH, WINDOW_LENGTH);
+            final var sndFingerprints = Fingerprints.of(snd, KGRAM_LENGTH, WINDOW_LENGTH);
+            assertTrue(Arrays
+                .stream(fstFingerprints)
+                .anyMatch(fingerprint -> Arrays.stream(sndFingerprints).anyMatch(it -> it == fingerprint)));
+        }
+        assertEquals(0, Fingerprints.of(tokens(random, KGRAM_LENGTH - 1), KGRAM_LENGTH, WINDOW_LENGTH).length);
+        assertEquals(1, Fingerprints.of(tokens(random, KGRAM_LENGTH), KGRAM_LENGTH, WINDOW_LENGTH).length);
+    }
+
+    List<List<Token<String>>> methods(final Flux<FileEntity<String>> files) {
+        final var methods = tokenProvider.tokensByMethods(files).collectList().block();
+        assertNotNull(methods);
+        return methods;
+    }
+
+    static List<Token<String>> tokens(final Random random, final int count) {
+        final var origin = Token.Origin.of("File.java", "method", "ref");
+        return random
+            .ints(count, 0, 4)
+            .mapToObj(type -> Token.of(type, LineRange.of(1), origin))
+            .toList();
+    }
+
+    @SafeVarargs
+    static List<Token<String>> concat(final List<Token<String>>... parts) {
+        return Arrays
+            .stream(parts)
+            .flatMap(List::stream)
+            .toList();
+    }
+}
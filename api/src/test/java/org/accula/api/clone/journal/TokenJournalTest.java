@@ -0,0 +1,293 @@
+package org.accula.api.clone.journal;
+
+import org.accula.api.code.lines.LineRange;
+import org.accula.api.token.MethodTokens;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenTypes;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.accula.api.token.java.JavaTokenProviderTest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Anton Lamtev
+ */
+class TokenJournalTest {
+    static final RefCodec<String> STRING_CODEC = new RefCodec<>() {
+        @Override
+        public void write(final DataOutput out, final String ref) throws IOException {
+            out.writeUTF(ref);
+        }
+
+        @Override
+        public String read(final DataInput in) throws IOException {
+            return in.readUTF();
+        }
+    };
+    static final List<Token<String>> method1 = List.of(
+        Token.of("IDENTIFIER", "A.java", "a", LineRange.of(1), "ref1"),
+        Token.of("EQ", "A.java", "a", LineRange.of(1), "ref1"),
+        Token.of("_LITERAL", "A.java", "a", LineRange.of(2, 3), "ref1")
+    );
+    static final List<Token<String>> method2 = List.of(
+        Token.of("RETURN_KEYWORD", "B.java", "b", LineRange.of(10), "ref2"),
+        Token.of("IDENTIFIER", "B.java", "b", LineRange.of(10), "ref2")
+    );
+
+    @Test
+    void testReplayCheckpointedMethods(@TempDir final Path dir) throws IOException {
+        final var path = dir.resolve("1.tokens");
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            assertEquals(0, journal.replay(method -> {
+            }));
+            journal.append(method1);
+            journal.append(method2);
+            journal.checkpoint(Set.of("ref1", "ref2"));
+            assertTrue(journal.isCheckpointed("ref1"));
+        }
+
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            assertTrue(journal.isCheckpointed("ref1"));
+            assertTrue(journal.isCheckpointed("ref2"));
+            assertFalse(journal.isCheckpointed("ref3"));
+            final var methods = replay(journal);
+            assertEquals(List.of(method1, method2), methods);
+            assertEquals(method1.get(2).lines(), methods.get(0).get(2).lines());
+            assertEquals("b", methods.get(1).get(0).methodName());
+            assertEquals("B.java", methods.get(1).get(0).filename());
+            assertEquals("ref2", methods.get(1).get(0).ref());
+        }
+    }
+
+    @Test
+    void testBlocksAreReplayed(@TempDir final Path dir) throws IOException {
+        final var path = dir.resolve("1.tokens");
+        final var blocks = List.of(new MethodTokens.Block(42L, 0, 3), new MethodTokens.Block(-1L, 1, 2));
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            journal.append(new MethodTokens<>(method1, blocks));
+            journal.append(method2);
+            journal.checkpoint(Set.of("ref1", "ref2"));
+        }
+
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            final var methods = replay(journal);
+            assertEquals(List.of(method1, method2), methods);
+            assertEquals(blocks, MethodTokens.blocks(methods.get(0)));
+            assertEquals(List.of(), MethodTokens.blocks(methods.get(1)));
+        }
+    }
+
+    @Test
+    void testUncheckpointedMethodsAreDropped(@TempDir final Path dir) throws IOException {
+        final var path = dir.resolve("1.tokens");
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            journal.append(method1);
+            journal.checkpoint(Set.of("ref1"));
+            journal.append(method2);
+        }
+
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            assertTrue(journal.isCheckpointed("ref1"));
+            assertFalse(journal.isCheckpointed("ref2"));
+            assertEquals(List.of(method1), replay(journal));
+        }
+    }
+
+    @Test
+    void testTruncatedTailIsDropped(@TempDir final Path dir) throws IOException {
+        final var path = dir.resolve("1.tokens");
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            journal.append(method1);
+            journal.checkpoint(Set.of("ref1"));
+        }
+        final var validSize = Files.size(path);
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            journal.append(method2);
+            journal.checkpoint(Set.of("ref2"));
+        }
+        try (var channel = Files.newByteChannel(path, StandardOpenOption.WRITE)) {
+            channel.truncate(Files.size(path) - 1);
+        }
+
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            assertFalse(journal.isCheckpointed("ref2"));
+            assertEquals(List.of(method1), replay(journal));
+        }
+        assertTrue(Files.size(path) >= validSize);
+    }
+
+    @Test
+    void testJournalIsMappedInSegments(@TempDir final Path dir) throws IOException {
+        final var path = dir.resolve("1.tokens");
+        final var blocks = List.of(new MethodTokens.Block(42L, 0, 3));
+        final var segmentSize = 64;
+        try (var journal = TokenJournal.open(path, STRING_CODEC, segmentSize)) {
+            for (int i = 0; i < 10; ++i) {
+                journal.append(new MethodTokens<>(method1, blocks));
+                journal.append(method2);
+            }
+            journal.checkpoint(Set.of("ref1", "ref2"));
+        }
+        assertTrue(Files.size(path) > 4L * segmentSize);
+
+        try (var journal = TokenJournal.open(path, STRING_CODEC, segmentSize)) {
+            final var methods = replay(journal);
+            assertEquals(20, methods.size());
+            for (int i = 0; i < methods.size(); i += 2) {
+                assertEquals(method1, methods.get(i));
+                assertEquals(blocks, MethodTokens.blocks(methods.get(i)));
+                assertEquals(method2, methods.get(i + 1));
+            }
+        }
+
+        final var view = TokenJournal.view(path, STRING_CODEC, segmentSize);
+        assertEquals(Files.size(path), view.length());
+        final var offsets = new ArrayList<Long>();
+        assertEquals(20, view.forEachCheckpointedMethod(0L, (method, offset) -> offsets.add(offset)));
+        assertEquals(method2, view.method(offsets.get(19)));
+        assertNull(view.method(offsets.get(19) + 1));
+    }
+
+    @Test
+    void testViewIsRefreshed(@TempDir final Path dir) throws IOException {
+        final var path = dir.resolve("1.tokens");
+        final var segmentSize = 64;
+        final var methods = new ArrayList<List<Token<String>>>();
+        try (var journal = TokenJournal.open(path, STRING_CODEC, segmentSize)) {
+            journal.append(method1);
+            journal.checkpoint(Set.of("ref1"));
+            final var view = TokenJournal.view(path, STRING_CODEC, segmentSize);
+            assertEquals(List.of(method1), view.methods(ref -> true));
+
+            for (int i = 0; i < 10; ++i) {
+                journal.append(method2);
+            }
+            journal.checkpoint(Set.of("ref2"));
+            assertTrue(view.refresh());
+            assertEquals(Files.size(path), view.length());
+            assertEquals(11, view.forEachCheckpointedMethod(0L, (method, offset) -> methods.add(method)));
+            assertEquals(method1, methods.get(0));
+            assertEquals(method2, methods.get(10));
+
+            journal.append(new MethodTokens<>(method2, List.of(new MethodTokens.Block(42L, 0, 2))));
+            assertTrue(view.refresh());
+            assertEquals(11, view.methods(ref -> true).size());
+            journal.checkpoint(Set.of("ref2"));
+        }
+
+        final var view = TokenJournal.view(path, STRING_CODEC, segmentSize);
+        try (var journal = TokenJournal.open(path, STRING_CODEC, segmentSize)) {
+            journal.append(method1);
+            journal.checkpoint(Set.of("ref1"));
+        }
+        assertTrue(view.refresh());
+        assertEquals(13, view.methods(ref -> true).size());
+        assertEquals(List.of(new MethodTokens.Block(42L, 0, 2)), MethodTokens.blocks(view.methods("ref2"::equals).get(10)));
+
+        Files.delete(path);
+        assertFalse(view.refresh());
+    }
+
+    @Test
+    void testBlockHashesSurviveRestart(@TempDir final Path dir) throws Exception {
+        final var path = dir.resolve("1.tokens");
+        final var methods = new JavaTokenProvider<String>().tokensByMethods(JavaTokenProviderTest.jf2).toList();
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            journal.appendAll(methods);
+            journal.checkpoint(Set.of(JavaTokenProviderTest.jf2.ref()));
+        }
+        final var hashes = blockHashes(methods);
+        assertFalse(hashes.isEmpty());
+
+        // The token types are registered anew in another order by the classes of a fresh loader, like after a restart
+        try (var loader = new URLClassLoader(classPath(), ClassLoader.getPlatformClassLoader())) {
+            final var restarted = loader
+                .loadClass(Restarted.class.getName())
+                .getMethod("blockHashes", Path.class)
+                .invoke(null, path);
+            assertEquals(List.of(hashes, hashes), restarted);
+        }
+    }
+
+    @Test
+    void testIncompatibleJournalIsDiscarded(@TempDir final Path dir) throws IOException {
+        final var path = dir.resolve("1.tokens");
+        Files.write(path, new byte[]{0, 0, 0, 0, 0, 0, 0, TokenJournal.VERSION + 1});
+
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            assertEquals(List.of(), replay(journal));
+            journal.append(method2);
+            journal.checkpoint(Set.of("ref2"));
+        }
+
+        try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+            assertEquals(List.of(method2), replay(journal));
+        }
+    }
+
+    static List<List<Token<String>>> replay(final TokenJournal<String> journal) {
+        final var methods = new ArrayList<List<Token<String>>>();
+        journal.replay(methods::add);
+        return methods;
+    }
+
+    static List<Long> blockHashes(final List<List<Token<String>>> methods) {
+        return methods
+            .stream()
+            .flatMap(method -> MethodTokens.blocks(method).stream())
+            .map(MethodTokens.Block::hash)
+            .toList();
+    }
+
+    static URL[] classPath() throws MalformedURLException {
+        // The test classes are loaded by a loader of their own by some launchers
+        if (TokenJournalTest.class.getClassLoader() instanceof URLClassLoader loader) {
+            return loader.getURLs();
+        }
+        final var paths = System.getProperty("java.class.path").split(File.pathSeparator);
+        final var urls = new URL[paths.length];
+        for (int i = 0; i < paths.length; ++i) {
+            urls[i] = Path.of(paths[i]).toUri().toURL();
+        }
+        return urls;
+    }
+
+    public static final class Restarted {
+        private Restarted() {
+        }
+
+        /**
+         * @return block hashes of the methods replayed from the journal and of the same methods tokenized anew
+         */
+        public static List<List<Long>> blockHashes(final Path path) throws IOException {
+            // Shifts the ids of all the token types
+            TokenTypes.id("RESTARTED");
+            try (var journal = TokenJournal.open(path, STRING_CODEC)) {
+                final var replayed = TokenJournalTest.blockHashes(replay(journal));
+                final var tokenized = TokenJournalTest.blockHashes(
+                    new JavaTokenProvider<String>().tokensByMethods(JavaTokenProviderTest.jf2).toList()
+                );
+                return List.of(replayed, tokenized);
+            }
+        }
+    }
+}
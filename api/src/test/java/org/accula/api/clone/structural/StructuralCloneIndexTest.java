@@ -0,0 +1,67 @@
+package org.accula.api.clone.structural;
+
+import org.accula.api.clone.engine.Clone;
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.code.FileEntity;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenProvider;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.accula.api.token.java.JavaTokenProviderTest.jf1;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf2;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf4;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Anton Lamtev
+ */
+class StructuralCloneIndexTest {
+    final TokenProvider<String> tokenProvider = new TokenProvider<>(List.of(new JavaTokenProvider<>()));
+
+    @Test
+    void testReorderedStatements() {
+        final var index = new StructuralCloneIndex<String>();
+        index.addAll(methods(Flux.just(jf1, jf2, jf4)));
+        assertTrue(index.estimatedSize() > 0L);
+
+        final var cloneClasses = cloneClasses(index, "4"::equals, 5);
+        assertEquals(1, cloneClasses.size());
+        final var cloneClass = cloneClasses.get(0);
+        assertEquals(2, cloneClass.cloneCount());
+        assertEquals(List.of("2", "4"), cloneClass.clones().stream().map(Clone::ref).sorted().toList());
+        assertEquals(List.of("Cell", "Cell"), cloneClass.clones().stream().map(Clone::method).toList());
+        assertEquals(cloneClass.clones().get(0).lines(), cloneClass.clones().get(1).lines());
+
+        assertEquals(List.of(), cloneClasses(index, "4"::equals, cloneClass.length() + 1));
+        assertEquals(List.of(), cloneClasses(index, "1"::equals, 5));
+    }
+
+    @Test
+    void testEqualTokenSequencesAreSkipped() {
+        final var index = new StructuralCloneIndex<String>();
+        index.addAll(methods(Flux.just(jf2, new FileEntity<>("5", jf2.name(), jf2.content(), jf2.lines()))));
+
+        assertEquals(List.of(), cloneClasses(index, "5"::equals, 1));
+    }
+
+    List<CloneClass<String>> cloneClasses(final StructuralCloneIndex<String> index,
+                                          final Predicate<String> refFilter,
+                                          final int minTokenCount) {
+        final var cloneClasses = index.cloneClasses(refFilter, minTokenCount).collectList().block();
+        assertNotNull(cloneClasses);
+        return cloneClasses;
+    }
+
+    List<List<Token<String>>> methods(final Flux<FileEntity<String>> files) {
+        final var methods = tokenProvider.tokensByMethods(files).collectList().block();
+        assertNotNull(methods);
+        return methods;
+    }
+}
@@ -0,0 +1,111 @@
+package org.accula.api.clone.suffixarray;
+
+import org.accula.api.clone.engine.CloneClass;
+import org.accula.api.clone.suffixtree.SuffixTreeCloneDetector;
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.Token;
+import org.accula.api.token.TokenProvider;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.accula.api.token.kotlin.KotlinTokenProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+import static org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorTest.F3;
+import static org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorTest.F4;
+import static org.accula.api.clone.suffixtree.SuffixTreeCloneDetectorTest.signatures;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf1;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf2;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf3;
+import static org.accula.api.token.kotlin.KotlinTokenProviderTest.content1;
+import static org.accula.api.token.kotlin.KotlinTokenProviderTest.content2;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * @author Anton Lamtev
+ */
+class SuffixArrayCloneDetectorTest {
+    final TokenProvider<String> tokenProvider = new TokenProvider<>(List.of(
+        new JavaTokenProvider<>(),
+        new KotlinTokenProvider<>()
+    ));
+    SuffixArrayCloneDetector<String> detector;
+    SuffixTreeCloneDetector<String> suffixTreeDetector;
+
+    @BeforeEach
+    void setUp() {
+        detector = new SuffixArrayCloneDetector<>("test");
+        suffixTreeDetector = new SuffixTreeCloneDetector<>("test");
+    }
+
+    @Test
+    void testSameAsSuffixTree() {
+        final var methods = methods(Flux.just(
+            jf1,
+            jf2,
+            jf3,
+            new FileEntity<>("ref1", "SSTable.java", F3, LineSet.all()),
+            new FileEntity<>("ref2", "SSTable.java", F4, LineSet.all()),
+            new FileEntity<>("4", "Cell.kt", content1, LineSet.inRange(1, 33)),
+            new FileEntity<>("5", "myFile.kt", content2, LineSet.all())
+        ));
+        detector.addTokensBatch(methods);
+        suffixTreeDetector.addTokensBatch(methods);
+
+        assertEquals(signatures(suffixTreeDetector.cloneClasses(it -> true, it -> true).collectList().block()),
+                     signatures(detector.cloneClasses(it -> true, it -> true).collectList().block()));
+        final Predicate<CloneClass<String>> isLongEnough = cloneClass -> cloneClass.length() > 10;
+        for (final var ref : List.of("1", "2", "3", "ref1", "ref2", "4", "5")) {
+            assertEquals(signatures(suffixTreeDetector.cloneClasses(ref::equals, isLongEnough, it -> true).collectList().block()),
+                         signatures(detector.cloneClasses(ref::equals, isLongEnough, it -> true).collectList().block()));
+        }
+    }
+
+    @Test
+    void testIndexIsRebuiltAfterAddition() {
+        final var methods = methods(Flux.just(jf1, jf2));
+        detector.addTokens(methods.get(0));
+        detector.cloneClasses(it -> true).collectList().block();
+        detector.addTokensBatch(methods.subList(1, methods.size()));
+
+        assertEquals(5, detector.cloneClasses(it -> true).collectList().block().size());
+    }
+
+    @Test
+    void testSuffixArray() {
+        final var random = new Random(42L);
+        for (int i = 0; i < 1000; ++i) {
+            final var upper = 1 + random.nextInt(i % 2 == 0 ? 2 : 20);
+            final var text = random.ints(random.nextInt(100), 0, upper + 1).toArray();
+            final var sa = SuffixArrays.suffixArray(text, upper);
+            final var expected = IntStream
+                .range(0, text.length)
+                .boxed()
+                .sorted((fst, snd) -> Arrays.compare(text, fst, text.length, text, snd, text.length))
+                .mapToInt(Integer::intValue)
+                .toArray();
+            assertArrayEquals(expected, sa);
+
+            final var lcp = SuffixArrays.lcp(text, sa, SuffixArrays.rank(sa));
+            for (int rank = 0; rank + 1 < sa.length; ++rank) {
+                final var mismatch = Arrays.mismatch(text, sa[rank], text.length, text, sa[rank + 1], text.length);
+                assertEquals(mismatch, lcp[rank]);
+            }
+        }
+    }
+
+    List<List<Token<String>>> methods(final Flux<FileEntity<String>> files) {
+        final var methods = tokenProvider.tokensByMethods(files).collectList().block();
+        assertNotNull(methods);
+        return methods;
+    }
+}
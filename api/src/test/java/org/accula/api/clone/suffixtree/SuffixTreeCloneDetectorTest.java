@@ -1,8 +1,8 @@
 package org.accula.api.clone.suffixtree;
 
+import org.accula.api.clone.engine.CloneClass;
 import org.accula.api.code.FileEntity;
 import org.accula.api.code.lines.LineSet;
-import org.accula.api.token.Token;
 import org.accula.api.token.TokenProvider;
 import org.accula.api.token.java.JavaTokenProvider;
 import org.accula.api.token.kotlin.KotlinTokenProvider;
@@ -12,9 +12,13 @@ import reactor.core.publisher.Flux;
 import reactor.test.StepVerifier;
 
 import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 import static org.accula.api.token.java.JavaTokenProviderTest.jf1;
 import static org.accula.api.token.java.JavaTokenProviderTest.jf2;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf3;
 import static org.accula.api.token.kotlin.KotlinTokenProviderTest.content1;
 import static org.accula.api.token.kotlin.KotlinTokenProviderTest.content2;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -75,7 +79,7 @@ public class SuffixTreeCloneDetectorTest {
         new JavaTokenProvider<>(),
         new KotlinTokenProvider<>()
     ));
-    SuffixTreeCloneDetector<Token<String>, String> detector;
+    SuffixTreeCloneDetector<String> detector;
 
     @BeforeEach
     void setUp() {
@@ -85,12 +89,12 @@ public class SuffixTreeCloneDetectorTest {
     @Test
     void test1() {
         StepVerifier.create(tokenProvider.tokensByMethods(Flux.just(jf1, jf2))
-                .collectList())
-                .expectNextMatches(methods -> {
+                .collectList()
+                .flatMap(methods -> {
                     methods.forEach(method -> detector.addTokens(method));
-                    assertEquals(5, detector.cloneClasses(cloneClass -> true).size());
-                    return true;
-                })
+                    return detector.cloneClasses(cloneClass -> true).collectList();
+                }))
+                .assertNext(cloneClasses -> assertEquals(5, cloneClasses.size()))
                 .verifyComplete();
     }
 
@@ -100,12 +104,12 @@ public class SuffixTreeCloneDetectorTest {
         final var f2 = new FileEntity<>("ref2", "SSTable.java", F4, LineSet.all());
 
         StepVerifier.create(tokenProvider.tokensByMethods(Flux.just(f1, f2))
-                .collectList())
-                .expectNextMatches(methods -> {
+                .collectList()
+                .flatMap(methods -> {
                     methods.forEach(method -> detector.addTokens(method));
-                    final var cloneClasses = detector.cloneClasses(it -> true);
-                    return cloneClasses.size() == 1 && cloneClasses.get(0).cloneCount() == 2;
-                })
+                    return detector.cloneClasses(it -> true).collectList();
+                }))
+                .expectNextMatches(cloneClasses -> cloneClasses.size() == 1 && cloneClasses.get(0).cloneCount() == 2)
                 .verifyComplete();
     }
 
@@ -122,8 +126,104 @@ public class SuffixTreeCloneDetectorTest {
         for (var m : methods) {
             detector.addTokens(m);
         }
-        final var cloneClasses = detector.cloneClasses(cc -> cc.length() > 10);
+        final var cloneClasses = detector.cloneClasses(cc -> cc.length() > 10).collectList().block();
         assertEquals(1, cloneClasses.size());
         assertEquals(2, cloneClasses.get(0).cloneCount());
     }
+
+    @Test
+    void testBatch() {
+        final var methods = tokenProvider
+            .tokensByMethods(Flux.just(jf1, jf2))
+            .collectList()
+            .block();
+        assertNotNull(methods);
+
+        final var sequenceIds = detector.addTokensBatch(methods);
+        assertEquals(methods.size(), sequenceIds.length);
+        assertEquals(5, detector.cloneClasses(cloneClass -> true).collectList().block().size());
+    }
+
+    @Test
+    void testRefQuery() {
+        final var methods = tokenProvider
+            .tokensByMethods(Flux.just(jf1, jf2, jf3))
+            .collectList()
+            .block();
+        assertNotNull(methods);
+        detector.addTokensBatch(methods);
+
+        for (final var ref : List.of("1", "2", "3")) {
+            final var expected = detector.cloneClasses(it -> true, it -> true).collectList().block()
+                .stream()
+                .filter(cloneClass -> cloneClass.clones().stream().anyMatch(clone -> clone.ref().equals(ref)))
+                .map(SuffixTreeCloneDetectorTest::node)
+                .collect(Collectors.toSet());
+            final var actual = detector.cloneClasses(ref::equals, it -> true, it -> true).collectList().block()
+                .stream()
+                .map(SuffixTreeCloneDetectorTest::node)
+                .collect(Collectors.toSet());
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void testShards() {
+        final var methods = tokenProvider
+            .tokensByMethods(Flux.just(jf1, jf2, jf3))
+            .collectList()
+            .block();
+        assertNotNull(methods);
+        detector.addTokensBatch(methods);
+        final var shardedDetector = new SuffixTreeCloneDetector<String>("test", 3);
+        for (final var method : methods) {
+            shardedDetector.addTokens(method);
+        }
+
+        assertEquals(signatures(detector.cloneClasses(it -> true, it -> true).collectList().block()),
+                     signatures(shardedDetector.cloneClasses(it -> true, it -> true).collectList().block()));
+        final var minLength = 10;
+        final Predicate<CloneClass<String>> isLongEnough = cloneClass -> cloneClass.length() >= minLength;
+        for (final var ref : List.of("1", "2", "3")) {
+            assertEquals(signatures(detector.cloneClasses(ref::equals, isLongEnough, it -> true).collectList().block()),
+                         signatures(shardedDetector.cloneClasses(ref::equals, minLength, isLongEnough, it -> true).collectList().block()));
+        }
+        shardedDetector.dispose();
+    }
+
+    @Test
+    void testCloneClassesAfterAddition() {
+        final var methods = tokenProvider
+            .tokensByMethods(Flux.just(jf1, jf2, jf3))
+            .collectList()
+            .block();
+        assertNotNull(methods);
+        final var half = methods.size() / 2;
+        detector.addTokensBatch(methods.subList(0, half));
+        assertNotNull(detector.cloneClasses(it -> true, it -> true).collectList().block());
+
+        detector.addTokensBatch(methods.subList(half, methods.size()));
+        final var fresh = new SuffixTreeCloneDetector<String>("fresh");
+        fresh.addTokensBatch(methods);
+        assertEquals(signatures(fresh.cloneClasses(it -> true, it -> true).collectList().block()),
+                     signatures(detector.cloneClasses(it -> true, it -> true).collectList().block()));
+        fresh.dispose();
+    }
+
+    static Object node(final CloneClass<String> cloneClass) {
+        return ((SuffixTreeCloneClass<String>) cloneClass).node();
+    }
+
+    public static Set<String> signatures(final List<CloneClass<String>> cloneClasses) {
+        return cloneClasses
+            .stream()
+            .map(cloneClass -> cloneClass.length() + cloneClass
+                .clones()
+                .stream()
+                .map(clone -> clone.ref() + ":" + clone.method() + ":" + clone.lines())
+                .sorted()
+                .toList()
+                .toString())
+            .collect(Collectors.toSet());
+    }
 }
@@ -5,8 +5,10 @@ import org.junit.jupiter.api.Test;
 
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * @author Anton Lamtev
@@ -19,7 +21,7 @@ class LanguagesTest {
 
     @Test
     void testFilterMain() {
-        final var actualFilter = Languages.filter(List.of(CodeLanguage.values()));
+        final var actualFilter = Languages.filter(List.of(CodeLanguage.JAVA, CodeLanguage.KOTLIN));
         assertSame(JvmFileFilter.JVM_MAIN, actualFilter);
     }
 
@@ -34,4 +36,17 @@ class LanguagesTest {
         final var actualFilter = Languages.filter(List.of(CodeLanguage.KOTLIN));
         assertSame(JvmFileFilter.KOTLIN_MAIN, actualFilter);
     }
+
+    @Test
+    void testFilterMixed() {
+        final var actualFilter = Languages.filter(List.of(CodeLanguage.values()));
+        assertTrue(actualFilter.test("src/main/java/Main.java"));
+        assertFalse(actualFilter.test("src/test/java/MainTest.java"));
+        assertTrue(actualFilter.test("src/geometry.cpp"));
+        assertTrue(actualFilter.test("include/geometry.h"));
+        assertTrue(actualFilter.test("solution.py"));
+        assertFalse(actualFilter.test("tests/test_solution.py"));
+        assertTrue(actualFilter.test("cmd/main.go"));
+        assertFalse(actualFilter.test("cmd/main_test.go"));
+    }
 }
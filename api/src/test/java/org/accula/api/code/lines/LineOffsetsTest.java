@@ -0,0 +1,30 @@
+package org.accula.api.code.lines;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Anton Lamtev
+ */
+class LineOffsetsTest {
+    @Test
+    void testLines() {
+        final var text = "a\nbc\r\nd\re\n\nf";
+        final var offsets = LineOffsets.of(text);
+        assertEquals(6, offsets.lineCount());
+        final var expectedLines = new int[]{1, 1, 2, 2, 2, 2, 3, 3, 4, 4, 5, 6, 6};
+        for (int offset = 0; offset <= text.length(); ++offset) {
+            assertEquals(expectedLines[offset], offsets.line(offset), "offset = " + offset);
+        }
+        assertEquals(LineRange.of(2, 4), offsets.lineRange(2, 9));
+        assertEquals(LineRange.of(6), offsets.lineRange(11, 12));
+    }
+
+    @Test
+    void testEmptyText() {
+        final var offsets = LineOffsets.of("");
+        assertEquals(1, offsets.lineCount());
+        assertEquals(1, offsets.line(0));
+    }
+}
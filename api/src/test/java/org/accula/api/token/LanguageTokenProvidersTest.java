@@ -0,0 +1,27 @@
+package org.accula.api.token;
+
+import org.accula.api.db.model.CodeLanguage;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.accula.api.token.lexer.GoTokenProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.Locale;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * @author Anton Lamtev
+ */
+class LanguageTokenProvidersTest {
+    @Test
+    void testEveryLanguageHasProvider() {
+        for (final var language : CodeLanguage.values()) {
+            assertNotNull(LanguageTokenProviders.find(language.name().toLowerCase(Locale.ROOT)), language.name());
+        }
+        assertInstanceOf(JavaTokenProvider.class, LanguageTokenProviders.find("java"));
+        assertInstanceOf(GoTokenProvider.class, LanguageTokenProviders.find("go"));
+        assertNull(LanguageTokenProviders.find("cobol"));
+    }
+}
@@ -0,0 +1,140 @@
+package org.accula.api.token;
+
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.accula.api.token.kotlin.KotlinTokenProvider;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.accula.api.token.java.JavaTokenProviderTest.content1;
+import static org.accula.api.token.java.JavaTokenProviderTest.content2;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * @author Anton Lamtev
+ */
+class TokenCacheTest {
+    final JavaTokenProvider<String> javaTokenProvider = new JavaTokenProvider<>();
+    final FileEntity<String> file = new FileEntity<>("1", "Cell.java", content1, LineSet.all(), "blob1");
+
+    @Test
+    void testSameBlobIsTokenizedOnce() {
+        final var cache = new TokenCache(1L << 20, null, 0L);
+        final var tokenizations = new AtomicInteger();
+        final var otherRef = new FileEntity<>("2", "other/Cell.java", content1, LineSet.inRange(7, 11), "blob1");
+
+        assertTokens(file, cache.get("blob1", javaTokenProvider, true, counting(file, tokenizations)));
+        assertTokens(otherRef, cache.get("blob1", javaTokenProvider, true, counting(otherRef, tokenizations)));
+        assertEquals(1, tokenizations.get());
+        assertEquals(1L, cache.stats().hitCount());
+
+        // The same blob of another language is tokenized anew
+        cache.get("blob1", new KotlinTokenProvider<String>(), true, () -> new FileTokens(List.of()));
+        assertEquals(2L, cache.stats().missCount());
+    }
+
+    @Test
+    void testEvictedTokensAreSpilled(@TempDir final Path dir) {
+        final var tokenizations = new AtomicInteger();
+        final var other = new FileEntity<>("2", "Cell.java", content2, LineSet.all(), "blob2");
+        try (var cache = new TokenCache(1L, dir, 1L << 20)) {
+            assertTokens(file, cache.get("blob1", javaTokenProvider, true, counting(file, tokenizations)));
+            assertTokens(other, cache.get("blob2", javaTokenProvider, true, counting(other, tokenizations)));
+            assertTokens(file, cache.get("blob1", javaTokenProvider, true, counting(file, tokenizations)));
+            assertEquals(2, tokenizations.get());
+        }
+
+        try (var cache = new TokenCache(1L, dir, 1L << 20)) {
+            assertTokens(other, cache.get("blob2", javaTokenProvider, true, counting(other, tokenizations)));
+            assertEquals(2, tokenizations.get());
+            // The tokens without the blocks are cached apart
+            cache.get("blob2", javaTokenProvider, false, counting(other, tokenizations));
+            assertEquals(3, tokenizations.get());
+        }
+    }
+
+    @Test
+    void testSpillDirectoryIsCapped(@TempDir final Path dir) throws IOException {
+        final var tokenizations = new AtomicInteger();
+        final var other = new FileEntity<>("2", "Cell.java", content2, LineSet.all(), "blob2");
+        try (var cache = new TokenCache(1L, dir, 1L)) {
+            cache.get("blob1", javaTokenProvider, true, counting(file, tokenizations));
+            cache.get("blob2", javaTokenProvider, true, counting(other, tokenizations));
+            cache.get("blob1", javaTokenProvider, true, counting(file, tokenizations));
+        }
+        assertEquals(List.of(), list(dir));
+    }
+
+    @Test
+    void testStaleSpilledTokensAreDeleted(@TempDir final Path dir) throws IOException {
+        final var current = "java-%d-blob1".formatted(javaTokenProvider.normalizationVersion());
+        final var stale = List.of(
+            "java-%d-blob1".formatted(javaTokenProvider.normalizationVersion() + 1),
+            "cobol-1-blob1",
+            current + ".tmp"
+        );
+        for (final var filename : concat(stale, current)) {
+            Files.write(dir.resolve(filename), new byte[]{1});
+        }
+
+        new TokenCache(1L, dir, 1L << 20).close();
+        assertEquals(List.of(current), list(dir));
+    }
+
+    static List<String> concat(final List<String> filenames, final String filename) {
+        final var concatenated = new ArrayList<>(filenames);
+        concatenated.add(filename);
+        return concatenated;
+    }
+
+    static List<String> list(final Path dir) throws IOException {
+        try (var paths = Files.list(dir)) {
+            return paths.map(path -> path.getFileName().toString()).toList();
+        }
+    }
+
+    @Test
+    void testTokenProviderUsesCache() {
+        final var cache = new TokenCache(1L << 20, null, 0L);
+        final var tokenProvider = new TokenProvider<>(List.<LanguageTokenProvider<String>>of(javaTokenProvider), cache, null);
+        final var withoutBlobId = new FileEntity<>("2", "Cell.java", content1, LineSet.all());
+
+        final var methods = tokenProvider.tokensByMethods(Flux.just(file, withoutBlobId, file)).collectList().block();
+        assertNotNull(methods);
+        assertEquals(9, methods.size());
+        assertEquals(2L, cache.stats().requestCount());
+    }
+
+    Supplier<FileTokens> counting(final FileEntity<String> file, final AtomicInteger tokenizations) {
+        return () -> {
+            tokenizations.incrementAndGet();
+            return javaTokenProvider.tokenize(file);
+        };
+    }
+
+    void assertTokens(final FileEntity<String> file, final FileTokens tokens) {
+        final var expected = javaTokenProvider.tokensByMethods(file).toList();
+        final var actual = tokens.tokensByMethods(file).toList();
+        assertEquals(expected, actual);
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(MethodTokens.blocks(expected.get(i)), MethodTokens.blocks(actual.get(i)));
+            for (int j = 0; j < expected.get(i).size(); ++j) {
+                final var expectedToken = expected.get(i).get(j);
+                final var actualToken = actual.get(i).get(j);
+                assertEquals(expectedToken.lines(), actualToken.lines());
+                assertEquals(expectedToken.origin(), actualToken.origin());
+            }
+        }
+    }
+}
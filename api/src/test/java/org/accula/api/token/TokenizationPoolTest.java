@@ -0,0 +1,80 @@
+package org.accula.api.token;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.java.JavaTokenProvider;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.accula.api.token.java.JavaTokenProviderTest.jf1;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf2;
+import static org.accula.api.token.java.JavaTokenProviderTest.jf3;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Anton Lamtev
+ */
+class TokenizationPoolTest {
+    final List<LanguageTokenProvider<String>> tokenProviders = List.of(new JavaTokenProvider<>());
+
+    @Test
+    void testSameTokensAsOnParallelScheduler() {
+        final var meterRegistry = new SimpleMeterRegistry();
+        try (var pool = new TokenizationPool(2, 2, meterRegistry)) {
+            final var files = Flux.just(jf1, jf2, jf3, new FileEntity<>("4", "Unsupported.txt", "", LineSet.all()));
+            final var expected = new TokenProvider<>(tokenProviders).tokensByMethods(files).collectList().block();
+            final var actual = new TokenProvider<>(tokenProviders, null, pool).tokensByMethods(files).collectList().block();
+            assertNotNull(expected);
+            assertNotNull(actual);
+            assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+
+            assertEquals(4L, meterRegistry.get("accula.tokenization.file").timer().count());
+            assertEquals(0.0, meterRegistry.get("accula.tokenization.queue").gauge().value());
+        }
+    }
+
+    @Test
+    void testFilesAreTokenizedOnPoolThreads() {
+        try (var pool = new TokenizationPool(1, 1, new SimpleMeterRegistry())) {
+            final var threads = ConcurrentHashMap.<String>newKeySet();
+            final var count = pool
+                .tokenize(Flux.range(0, 100), i -> {
+                    threads.add(Thread.currentThread().getName());
+                    return Stream.of(i);
+                })
+                .count()
+                .block();
+            assertEquals(100L, count);
+            assertEquals(1, threads.size());
+            assertTrue(threads.iterator().next().startsWith("tokenization-"));
+        }
+    }
+
+    @Test
+    void testLazyItemsAreNotDrainedByRequestingThreads() {
+        try (var pool = new TokenizationPool(2, 2, new SimpleMeterRegistry())) {
+            final var threads = ConcurrentHashMap.<String>newKeySet();
+            final var count = pool
+                .tokenize(Flux.range(0, 10), i -> IntStream
+                    .range(0, 1000)
+                    .peek(__ -> threads.add(Thread.currentThread().getName()))
+                    .boxed())
+                // The items are requested one by one from the parallel threads
+                .publishOn(Schedulers.parallel(), 1)
+                .count()
+                .block();
+            assertEquals(10_000L, count);
+            assertTrue(threads.stream().allMatch(thread -> thread.startsWith("tokenization-")), threads::toString);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.accula.api.token;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+/**
+ * @author Anton Lamtev
+ */
+class TokenizerWarmUpTest {
+    @Test
+    void testWarmUp() {
+        final var warmUp = new TokenizerWarmUp();
+        assertEquals(TokenizerWarmUp.Status.NOT_STARTED, warmUp.status());
+        assertThrows(IllegalArgumentException.class, () -> warmUp.start(-1));
+
+        warmUp.start(2);
+        assertTimeoutPreemptively(Duration.ofMinutes(1L), () -> {
+            while (warmUp.status() == TokenizerWarmUp.Status.WARMING_UP) {
+                Thread.sleep(10L);
+            }
+        });
+        assertEquals(TokenizerWarmUp.Status.READY, warmUp.status());
+        assertNotNull(warmUp.duration());
+        assertNull(warmUp.error());
+
+        final var duration = warmUp.duration();
+        warmUp.start(2);
+        assertEquals(duration, warmUp.duration());
+    }
+
+    @Test
+    void testSkippedWarmUp() {
+        final var warmUp = new TokenizerWarmUp();
+        warmUp.start(0);
+        assertEquals(TokenizerWarmUp.Status.READY, warmUp.status());
+        assertEquals(Duration.ZERO, warmUp.duration());
+    }
+}
@@ -0,0 +1,84 @@
+package org.accula.api.token;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * @author Anton Lamtev
+ */
+class TraverseUtilsTest {
+    record Node(int value, Node... children) {
+    }
+
+    static final Node TREE = new Node(1,
+        new Node(2,
+            new Node(3),
+            new Node(4)),
+        new Node(5,
+            new Node(6,
+                new Node(7))),
+        new Node(8));
+
+    @Test
+    void testPreOrder() {
+        final var values = TraverseUtils
+            .dfs(TREE, TraverseUtils.ofArray(Node::children))
+            .map(Node::value)
+            .toList();
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8), values);
+    }
+
+    @Test
+    void testPostOrder() {
+        final var parents = new IdentityHashMap<Node, Node>();
+        TraverseUtils.dfs(TREE, TraverseUtils.ofArray(Node::children)).forEach(node -> {
+            for (final var child : node.children()) {
+                parents.put(child, node);
+            }
+        });
+        final var values = TraverseUtils
+            .postOrder(
+                TREE,
+                node -> node.children().length > 0 ? node.children()[0] : null,
+                node -> {
+                    final var siblings = parents.get(node).children();
+                    final var index = Arrays.asList(siblings).indexOf(node);
+                    return index + 1 < siblings.length ? siblings[index + 1] : null;
+                },
+                parents::get)
+            .map(Node::value)
+            .toList();
+        assertEquals(List.of(3, 4, 2, 7, 6, 5, 8, 1), values);
+    }
+
+    @Test
+    void testEarlyTermination() {
+        final var values = new ArrayList<Integer>();
+        final var completed = TraverseUtils.dfs(TREE, TraverseUtils.ofArray(Node::children), node -> {
+            values.add(node.value());
+            return node.value() != 5;
+        });
+        assertFalse(completed);
+        assertEquals(List.of(1, 2, 3, 4, 5), values);
+    }
+
+    @Test
+    void testDeepTree() {
+        final var depth = 1_000_000;
+        var root = new Node(depth);
+        for (int i = depth - 1; i > 0; --i) {
+            root = new Node(i, root);
+        }
+        final var count = new int[1];
+        assertTrue(TraverseUtils.dfs(root, TraverseUtils.ofArray(Node::children), node -> ++count[0] > 0));
+        assertEquals(depth, count[0]);
+    }
+}
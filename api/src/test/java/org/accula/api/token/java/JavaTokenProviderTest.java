@@ -4,8 +4,19 @@ import org.accula.api.code.FileEntity;
 import org.accula.api.code.lines.LineSet;
 import org.accula.api.token.LanguageTokenProvider;
 import org.accula.api.token.BaseLanguageTokenProviderTest;
+import org.accula.api.token.MethodTokens;
+import org.accula.api.token.Token;
 import org.junit.jupiter.api.Test;
 
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
 /**
  * @author Anton Lamtev
  */
@@ -52,9 +63,20 @@ public class JavaTokenProviderTest extends BaseLanguageTokenProviderTest {
             }
         }
         """;
+    public static final String content4 = """
+        public class Cell {
+            public Cell(@Another ByteBuffer k, final Value v) {
+                Objects.requireNonNull(k);
+                this.k = k;
+                Objects.requireNonNull(v);
+                this.v = v;
+            }
+        }
+        """;
     public static final FileEntity<String> jf1 = new FileEntity<>("1", "Cell.java", content1, LineSet.all());
     public static final FileEntity<String> jf2 = new FileEntity<>("2", "Cell.java", content2, LineSet.all());
     public static final FileEntity<String> jf3 = new FileEntity<>("3", "Cell.java", content3, LineSet.all());
+    public static final FileEntity<String> jf4 = new FileEntity<>("4", "Cell.java", content4, LineSet.all());
 
     private final JavaTokenProvider<Object> tokenProvider = new JavaTokenProvider<>();
 
@@ -73,4 +95,44 @@ public class JavaTokenProviderTest extends BaseLanguageTokenProviderTest {
         testMethodCount(jf2, 3);
         testMethodCount(jf3, 0);
     }
+
+    @Test
+    void testReorderedStatementsHashEqually() {
+        final var method = methods(jf2).findFirst().orElseThrow();
+        final var reordered = methods(jf4).findFirst().orElseThrow();
+        assertNotEquals(method, reordered);
+
+        final var body = largestBlock(method);
+        final var reorderedBody = largestBlock(reordered);
+        assertEquals(0, body.from());
+        assertEquals(method.size(), body.to());
+        assertEquals(body, reorderedBody);
+        assertEquals(hashes(method), hashes(reordered));
+        assertNotEquals(hashes(method), hashes(methods(jf1).findFirst().orElseThrow()));
+    }
+
+    @Test
+    void testBlocksAreNotHashedUnlessRequested() {
+        final var tokenProvider = new JavaTokenProvider<String>();
+        final var methods = tokenProvider.tokensByMethods(jf2).toList();
+        final var plainMethods = tokenProvider.tokensByMethods(jf2, false).toList();
+        assertEquals(methods, plainMethods);
+        assertFalse(MethodTokens.blocks(methods.get(0)).isEmpty());
+        plainMethods.forEach(method -> assertEquals(List.of(), MethodTokens.blocks(method)));
+        tokenProvider.tokenize(jf2, false).methods().forEach(method -> assertEquals(List.of(), method.blocks()));
+    }
+
+    private static <Ref> MethodTokens.Block largestBlock(final List<Token<Ref>> method) {
+        return MethodTokens.blocks(method)
+            .stream()
+            .max(Comparator.comparingInt(MethodTokens.Block::tokenCount))
+            .orElseThrow();
+    }
+
+    private static <Ref> Set<Long> hashes(final List<Token<Ref>> method) {
+        return MethodTokens.blocks(method)
+            .stream()
+            .map(MethodTokens.Block::hash)
+            .collect(Collectors.toSet());
+    }
 }
@@ -6,6 +6,10 @@ import org.accula.api.token.BaseLanguageTokenProviderTest;
 import org.accula.api.token.LanguageTokenProvider;
 import org.junit.jupiter.api.Test;
 
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 /**
  * @author Anton Lamtev
  */
@@ -89,6 +93,43 @@ public class KotlinTokenProviderTest extends BaseLanguageTokenProviderTest {
             }
         }
          """;
+    public static final String content3 = """
+        class Counter(private var count: Int) {
+            init {
+                require(count >= 0) { "count must not be negative" }
+            }
+
+            constructor() : this(0) {
+                println("Counter created")
+            }
+
+            val doubled: Int
+                get() {
+                    return count * 2
+                }
+
+            var value: Int
+                get() = count
+                set(newValue) {
+                    count = newValue
+                }
+
+            fun increment() {
+                listOf(1, 2).forEach { count += it }
+            }
+        }
+
+        val printer: (Counter) -> Unit = { counter ->
+            println(counter.value)
+        }
+         """;
+    public static final String content4 = """
+        class Retry(private val onFailure: (Int) -> Unit = { attempt -> println("Attempt $attempt failed") }) {
+            fun run(action: () -> Boolean, delay: (Int) -> Long = { attempt -> attempt * 100L }) {
+                repeat(3) { attempt -> if (!action()) onFailure(attempt) }
+            }
+        }
+         """;
     public static final FileEntity<String> kf1 = new FileEntity<>("1", "Cell.kt", content1, LineSet.all());
     public static final FileEntity<String> kf2 = new FileEntity<>("1", "NotACell.kt", content2, LineSet.all());
 
@@ -112,4 +153,27 @@ public class KotlinTokenProviderTest extends BaseLanguageTokenProviderTest {
         final var m2 = methods(kf2).findFirst().orElseThrow(AssertionError::new);
         testEqualMethods(m1, m2);
     }
+
+    @Test
+    void testFunctionLikeBodies() {
+        final var file = new FileEntity<>("1", "Counter.kt", content3, LineSet.all());
+        // The lambdas inside the init block and the function are tokenized along with them
+        assertEquals(
+            List.of("<init>", "<init>", "<get-doubled>", "<get-value>", "<set-value>", "increment", "<lambda>"),
+            methods(file).map(method -> method.get(0).methodName()).toList()
+        );
+
+        final var getterOnly = new FileEntity<>("1", "Counter.kt", content3, LineSet.inRange(10, 14));
+        assertEquals(List.of("<get-doubled>"), methods(getterOnly).map(method -> method.get(0).methodName()).toList());
+    }
+
+    @Test
+    void testDefaultValueLambdas() {
+        final var file = new FileEntity<>("1", "Retry.kt", content4, LineSet.all());
+        // The lambda inside the body of the function is tokenized along with it
+        assertEquals(
+            List.of("<lambda>", "<lambda>", "run"),
+            methods(file).map(method -> method.get(0).methodName()).toList()
+        );
+    }
 }
@@ -0,0 +1,80 @@
+package org.accula.api.token.lexer;
+
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.BaseLanguageTokenProviderTest;
+import org.accula.api.token.LanguageTokenProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Anton Lamtev
+ */
+class CppTokenProviderTest extends BaseLanguageTokenProviderTest {
+    static final String content1 = """
+        #include <vector>
+
+        namespace geo {
+        class Point {
+        public:
+            Point(int x, int y) : x_(x), y_(y) {
+                validate();
+            }
+
+            int dist2() const {
+                return x_ * x_ + y_ * y_; /* squared */
+            }
+
+        private:
+            int x_, y_;
+        };
+        }
+
+        std::vector<int> squares(int n) {
+            std::vector<int> result{};
+            auto sq = [](int v) { return v * v; };
+            for (int i = 0; i < n; ++i) { result.push_back(sq(i)); }
+            return result;
+        }
+
+        auto twice = [](double d) { return 2 * d; };
+        """;
+    static final String content2 = """
+        // The same as squares, but renamed
+        std::vector<long> powers(int count) {
+            std::vector<long> out{};
+            auto pow = [](int value) { return value * value; };
+            for (int j = 0; j < count; ++j) {
+                out.push_back(pow(j));
+            }
+            return out;
+        }
+        """;
+
+    private final CppTokenProvider<Object> tokenProvider = new CppTokenProvider<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <Ref> LanguageTokenProvider<Ref> tokenProvider() {
+        return (LanguageTokenProvider<Ref>) tokenProvider;
+    }
+
+    @Test
+    void test() {
+        final var file1 = new FileEntity<>("1", "geo.cpp", content1, LineSet.all());
+        final var file2 = new FileEntity<>("2", "powers.cc", content2, LineSet.all());
+        testSupportsFile(file1);
+        testSupportsFile(new FileEntity<>("1", "geo.hpp", "", LineSet.all()));
+        testDoesNotSupportFile(new FileEntity<>("1", "geo.java", "", LineSet.all()));
+
+        // The lambda inside squares is tokenized along with it
+        assertEquals(
+            List.of("Point", "dist2", "squares", "<lambda>"),
+            methods(file1).map(method -> method.get(0).methodName()).toList()
+        );
+        testEqualMethods(methods(file1).toList().get(2), methods(file2).findFirst().orElseThrow());
+    }
+}
@@ -0,0 +1,73 @@
+package org.accula.api.token.lexer;
+
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.BaseLanguageTokenProviderTest;
+import org.accula.api.token.LanguageTokenProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Anton Lamtev
+ */
+class GoTokenProviderTest extends BaseLanguageTokenProviderTest {
+    static final String content = """
+        package main
+
+        import "fmt"
+
+        type Stack[T any] struct {
+            items []T
+        }
+
+        func (s *Stack[T]) Push(v T) {
+            s.items = append(s.items, v)
+        }
+
+        func Map[T, U any](xs []T, f func(T) U) []U {
+            out := make([]U, 0, len(xs))
+            for _, x := range xs {
+                out = append(out, f(x))
+            }
+            return out
+        }
+
+        func Any() interface{} {
+            return nil
+        }
+
+        var handler = func(msg string) (int, error) {
+            return fmt.Println(`raw
+        string`, msg)
+        }
+
+        func main() {
+            defer func() { recover() }()
+        }
+        """;
+
+    private final GoTokenProvider<Object> tokenProvider = new GoTokenProvider<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <Ref> LanguageTokenProvider<Ref> tokenProvider() {
+        return (LanguageTokenProvider<Ref>) tokenProvider;
+    }
+
+    @Test
+    void test() {
+        final var file = new FileEntity<>("1", "main.go", content, LineSet.all());
+        testSupportsFile(file);
+        testDoesNotSupportFile(new FileEntity<>("1", "main.kt", "", LineSet.all()));
+
+        assertEquals(
+            List.of("Push", "Map", "Any", "<lambda>", "main"),
+            methods(file).map(method -> method.get(0).methodName()).toList()
+        );
+        final var mapOnly = new FileEntity<>("1", "main.go", content, LineSet.inRange(15, 16));
+        assertEquals(List.of("Map"), methods(mapOnly).map(method -> method.get(0).methodName()).toList());
+    }
+}
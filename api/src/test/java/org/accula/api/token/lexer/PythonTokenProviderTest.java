@@ -0,0 +1,97 @@
+package org.accula.api.token.lexer;
+
+import org.accula.api.code.FileEntity;
+import org.accula.api.code.lines.LineSet;
+import org.accula.api.token.BaseLanguageTokenProviderTest;
+import org.accula.api.token.LanguageTokenProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author Anton Lamtev
+ */
+class PythonTokenProviderTest extends BaseLanguageTokenProviderTest {
+    static final String content1 = """
+        @decorator
+        def outer(a, b=(1,
+                2)):
+            \"""Docstring
+            spanning lines\"""
+            def inner(x):
+                return x * 2
+            total = 0
+            for i in range(a):
+                total += inner(i)
+            return total
+
+        class Greeter:
+            async def greet(self, name: str) -> str:
+                return f"Hello, {name}"
+
+        def one(): return 1
+        print(outer(1, 2))
+        """;
+    static final String content2 = """
+        def sum_doubled(count, unused=(1,
+                2)):
+            \"""Renamed copy of outer\"""
+            def double(value):
+                # Renamed inner of outer
+                return value * 2
+            result = 0
+            for j in range(count):
+                result += double(j)
+            return result
+        """;
+
+    static final String content3 = """
+        square = lambda x: x * x
+        handlers = {"add": lambda a, b: a + b, "neg": lambda a: -a}
+
+        def apply(items):
+            return sorted(items, key=lambda item: item[1])
+
+        print(list(map(lambda v: (v,
+                                  v * 2), values)))
+        callbacks = [lambda: i for i in range(3)]
+        """;
+
+    private final PythonTokenProvider<Object> tokenProvider = new PythonTokenProvider<>();
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <Ref> LanguageTokenProvider<Ref> tokenProvider() {
+        return (LanguageTokenProvider<Ref>) tokenProvider;
+    }
+
+    @Test
+    void test() {
+        final var file1 = new FileEntity<>("1", "solution.py", content1, LineSet.all());
+        testSupportsFile(file1);
+        testDoesNotSupportFile(new FileEntity<>("1", "solution.go", "", LineSet.all()));
+
+        assertEquals(
+            // The nested function is tokenized along with the enclosing one
+            List.of("outer", "greet", "one"),
+            methods(file1).map(method -> method.get(0).methodName()).toList()
+        );
+        final var file2 = new FileEntity<>("2", "sum.py", content2, LineSet.all());
+        testEqualMethods(methods(file1).findFirst().orElseThrow(), methods(file2).findFirst().orElseThrow());
+    }
+
+    @Test
+    void testLambdas() {
+        final var file = new FileEntity<>("1", "lambdas.py", content3, LineSet.all());
+        final var methods = methods(file).toList();
+        // The lambda inside the function is tokenized along with it
+        assertEquals(
+            List.of("<lambda>", "<lambda>", "<lambda>", "apply", "<lambda>", "<lambda>"),
+            methods.stream().map(method -> method.get(0).methodName()).toList()
+        );
+        // x * x, a + b, - a, the body of apply, v , v * 2, i
+        assertEquals(List.of(3, 3, 2, 13, 5, 1), methods.stream().map(List::size).toList());
+    }
+}